@@ -0,0 +1,72 @@
+package bench.fluids.fluid2d;
+
+import java.util.Arrays;
+
+import fluids.fluid2d.Fluid2DParameters;
+import fluids.fluid2d.Fluid2DState;
+import util.testing.TestParameters;
+
+/**
+ * Measures how well red-black diffusion and projection scale with the number of threads, by timing
+ * whole fluid steps on 1 to 32 threads and checking that every run ends in the same fluid.
+ *
+ * <p>This is a benchmark rather than a test: it passes or fails nothing, and only prints timings.
+ * Arguments: the side of the grid (1024 by default) and the number of timed steps (10).
+ */
+public final class RedBlackBenchmark {
+
+    private static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+    private static final int   WARMUP  = 3;
+
+    private RedBlackBenchmark() { }
+
+    public static void main(final String[] args) {
+        final int size  = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        final int steps = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.printf("Red-black fluid steps on a %dx%d grid, %d processors%n", size, size, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %12s %9s %11s %10s%n", "threads", "ms / step", "speedup", "efficiency", "identical");
+
+        double    serial    = 0.0;
+        float[][] reference = null;
+
+        for (final int threads : THREADS) {
+            final Fluid2DState state = new Fluid2DState(size, size, parameters(threads));
+
+            for (int k = 0; k < WARMUP; ++k)
+                state.evolve();
+
+            final long start = System.nanoTime();
+
+            for (int k = 0; k < steps; ++k)
+                state.evolve();
+
+            final double milliseconds = (System.nanoTime() - start) / 1e6 / steps;
+
+            if (threads == 1) {
+                serial    = milliseconds;
+                reference = state.getDensity();
+            }
+
+            System.out.printf(
+                "%8d %12.2f %9.2f %10.0f%% %10s%n",
+                threads,
+                milliseconds,
+                serial / milliseconds,
+                100.0 * serial / milliseconds / threads,
+                Arrays.deepEquals(reference, state.getDensity()));
+        }
+    }
+
+    private static Fluid2DParameters parameters(final int threads) {
+        final Fluid2DParameters parameters = new Fluid2DParameters();
+
+        TestParameters.setParameter(parameters.getParameterTree(), "Pressure Solver", 3);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusion Solver", 2);
+        TestParameters.setParameter(parameters.getParameterTree(), "Viscosity", 0.01f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusion", 0.001f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Threads", threads);
+
+        return parameters;
+    }
+}
@@ -0,0 +1,235 @@
+package erosion;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which square tiles of a grid are still changing, so that kernels can skip the settled
+ * ones. Kernels record the largest change they make to each tile of every row they write, and once
+ * a tick is over, tiles that changed by less than a threshold go to sleep. A tile that changed by
+ * more stays awake along with its eight neighbours, so that activity spreads to a settled tile as
+ * soon as the tile next to it changes. The grid wraps around as a torus.
+ *
+ * <p>Kernels only read from awake tiles, but a cell may send material one cell away into a
+ * sleeping tile. Every tile next to an awake one is therefore within reach, and changes must be
+ * applied and recorded over every tile within reach.
+ *
+ * <p>Statistics of a field are only recorded on sampled ticks, so the tiles that were within reach
+ * of a tick since the last sample are kept too. Those out of reach on a sampled tick hold what they
+ * held when they last changed, and only their statistics need to be recorded again.
+ */
+public final class ActiveTiles {
+
+    private final int width;
+    private final int height;
+    private final int size;
+    private final int columns;
+    private final int rows;
+
+    private final boolean[] awake;
+    private final boolean[] reach;
+    private final boolean[] active;
+
+    // Whether each tile was within reach of a tick since the statistics were last sampled
+    private final boolean[] unsampled;
+
+    // The largest change recorded in each tile column of each row, so that every row has one writer
+    private final float[] changes;
+
+    private int awakeCount;
+
+    /**
+     * Constructs tiles that are all awake.
+     *
+     * @param width the number of columns of the grid
+     * @param height the number of rows of the grid
+     * @param size the side of a tile, in cells
+     */
+    public ActiveTiles(final int width, final int height, final int size) {
+        this.width   = width;
+        this.height  = height;
+        this.size    = size;
+        this.columns = (width + size - 1) / size;
+        this.rows    = (height + size - 1) / size;
+
+        this.awake   = new boolean[this.columns * this.rows];
+        this.reach   = new boolean[this.columns * this.rows];
+        this.active  = new boolean[this.columns * this.rows];
+        this.changes = new float[this.columns * height];
+
+        this.unsampled = new boolean[this.columns * this.rows];
+
+        Arrays.fill(this.unsampled, true);
+        wakeAll();
+    }
+
+    public int getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * @param column the tile column
+     * @return the first cell column of the tile column
+     */
+    public int firstCell(final int column) {
+        return column * this.size;
+    }
+
+    /**
+     * @param column the tile column
+     * @return the cell column just past the tile column
+     */
+    public int lastCell(final int column) {
+        return Math.min(this.width, (column + 1) * this.size);
+    }
+
+    /**
+     * @param column the tile column
+     * @param j the cell row, which may lie outside of the grid
+     * @return whether the tile holding the cells of the row in the tile column is awake
+     */
+    public boolean isAwake(final int column, final int j) {
+        return this.awake[tile(column, j)];
+    }
+
+    /**
+     * @param tile the tile, counted row after row
+     * @return whether the tile is awake
+     */
+    public boolean isAwake(final int tile) {
+        return this.awake[tile];
+    }
+
+    /**
+     * @param column the tile column
+     * @param j the cell row, which may lie outside of the grid
+     * @return whether an awake tile may write to the cells of the row in the tile column
+     */
+    public boolean isReached(final int column, final int j) {
+        return this.reach[tile(column, j)];
+    }
+
+    /**
+     * @param column the tile column
+     * @param j the cell row, which may lie outside of the grid
+     * @return whether the tile holding the cells of the row in the tile column was within reach of a
+     *         tick since {@link #markSampled} was last called
+     */
+    public boolean isUnsampled(final int column, final int j) {
+        return this.unsampled[tile(column, j)];
+    }
+
+    /**
+     * Notes that the tiles within reach may change over the tick about to start.
+     */
+    public void markReached() {
+        for (int k = 0; k < this.reach.length; ++k)
+            this.unsampled[k] |= this.reach[k];
+    }
+
+    /**
+     * Notes that the statistics of every tile have just been recorded.
+     */
+    public void markSampled() {
+        Arrays.fill(this.unsampled, false);
+    }
+
+    /**
+     * @return the number of tiles awake
+     */
+    public int getAwakeCount() {
+        return this.awakeCount;
+    }
+
+    /**
+     * @return the number of tiles in the grid
+     */
+    public int getCount() {
+        return this.awake.length;
+    }
+
+    /**
+     * Records a change made to a cell. Only the thread writing row {@code j} may call this for it.
+     *
+     * @param column the tile column of the cell
+     * @param j the row of the cell
+     * @param change the change made to the cell, of either sign
+     */
+    public void record(final int column, final int j, final float change) {
+        final int k = j * this.columns + column;
+        this.changes[k] = Math.max(this.changes[k], Math.abs(change));
+    }
+
+    /**
+     * Wakes every tile and forgets the changes recorded so far.
+     */
+    public void wakeAll() {
+        Arrays.fill(this.awake, true);
+        Arrays.fill(this.reach, true);
+        Arrays.fill(this.changes, 0f);
+
+        this.awakeCount = this.awake.length;
+    }
+
+    /**
+     * Puts to sleep the tiles that changed by less than the threshold since the last call, and
+     * neither of whose neighbours changed by more.
+     *
+     * @param threshold the smallest change that keeps a tile awake
+     */
+    public void settle(final float threshold) {
+        Arrays.fill(this.active, false);
+
+        for (int j = 0; j < this.height; ++j)
+            for (int column = 0; column < this.columns; ++column)
+                if (this.changes[j * this.columns + column] >= threshold)
+                    this.active[tile(column, j)] = true;
+
+        dilate(this.active, this.awake);
+        dilate(this.awake, this.reach);
+        Arrays.fill(this.changes, 0f);
+
+        countAwake();
+    }
+
+    /**
+     * Wakes the given tiles and puts the others to sleep, as if the last call to {@link #settle} had,
+     * for example to resume a run. The statistics of every tile are recorded again at the next sample.
+     *
+     * @param awake whether each tile is awake, counted row after row
+     */
+    public void wake(final boolean[] awake) {
+        System.arraycopy(awake, 0, this.awake, 0, this.awake.length);
+        Arrays.fill(this.unsampled, true);
+
+        dilate(this.awake, this.reach);
+        Arrays.fill(this.changes, 0f);
+
+        countAwake();
+    }
+
+    private void countAwake() {
+        this.awakeCount = 0;
+
+        for (final boolean tile : this.awake)
+            if (tile)
+                ++this.awakeCount;
+    }
+
+    private void dilate(final boolean[] from, final boolean[] to) {
+        Arrays.fill(to, false);
+
+        for (int tj = 0; tj < this.rows; ++tj)
+            for (int ti = 0; ti < this.columns; ++ti) {
+                if (!from[tj * this.columns + ti])
+                    continue;
+
+                for (int dj = -1; dj <= 1; ++dj)
+                    for (int di = -1; di <= 1; ++di)
+                        to[Math.floorMod(tj + dj, this.rows) * this.columns + Math.floorMod(ti + di, this.columns)] = true;
+            }
+    }
+
+    private int tile(final int column, final int j) {
+        return Math.floorMod(j, this.height) / this.size * this.columns + column;
+    }
+}
@@ -0,0 +1,187 @@
+package erosion;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+import util.data.grids.CellHeap;
+import util.data.grids.ScalarField2D;
+
+/**
+ * Finds the depressions of a height field and the level each would fill up to before spilling,
+ * using the Priority-Flood algorithm. The field wraps around as a torus, so it has no edge to drain
+ * to; the flood starts from its lowest cell instead, which acts as the outlet of the whole field.
+ * Cells are flooded in order of rising level, using a heap for cells above the current level and a
+ * plain queue for the cells of the depression being flooded, so each cell is visited once in
+ * O(n log n) overall.
+ *
+ * <p>Every array is laid out like the field it was computed from. Each cell drains into the cell it
+ * was flooded from, so following the receivers from any cell leads to the outlet, over the rim of
+ * every depression on the way.
+ */
+public final class DepressionFill {
+
+    private static final int[] NEIGHBOUR_DI = { -1, 0, 0, 1 };
+    private static final int[] NEIGHBOUR_DJ = { 0, -1, 1, 0 };
+
+    private final int width;
+    private final int height;
+    private final int halo;
+    private final int stride;
+
+    private final float[]   levels;
+    private final int[]     receivers;
+    private final int[]     spills;
+    private final boolean[] closed;
+
+    // Cells in the order they were flooded; the queue of the depression being flooded is a window of it
+    private final int[] order;
+
+    private final CellHeap open;
+
+    /**
+     * @param width the number of columns of the fields to fill
+     * @param height the number of rows of the fields to fill
+     * @param halo the width of the border around the fields to fill
+     */
+    public DepressionFill(final int width, final int height, final int halo) {
+        this.width  = width;
+        this.height = height;
+        this.halo   = halo;
+        this.stride = width + 2 * halo;
+
+        final int cells = this.stride * (height + 2 * halo);
+
+        this.levels    = new float[cells];
+        this.receivers = new int[cells];
+        this.spills    = new int[cells];
+        this.closed    = new boolean[cells];
+        this.order     = new int[width * height];
+        this.open      = new CellHeap(width * height);
+    }
+
+    /**
+     * Floods the given field, replacing the results of any previous call.
+     *
+     * @param heights the field to flood, of the shape this was constructed for
+     */
+    public void compute(final ScalarField2D heights) {
+        // The predicate captures nothing, so checking allocates nothing
+        Preconditions.throwIfSatisfies(
+            fits(heights),
+            fits -> !fits,
+            "Field shape does not match the depression fill.");
+
+        final float[] h = heights.getValues();
+
+        Arrays.fill(this.closed, false);
+        Arrays.fill(this.spills, -1);
+        this.open.clear();
+
+        int outlet = heights.index(0, 0);
+
+        for (int j = 0; j < this.height; ++j)
+            for (int k = heights.index(0, j); k < heights.index(this.width, j); ++k)
+                if (h[k] < h[outlet])
+                    outlet = k;
+
+        this.levels[outlet]    = h[outlet];
+        this.receivers[outlet] = outlet;
+        this.closed[outlet]    = true;
+        this.open.push(outlet, h[outlet]);
+
+        int flooded = 0;
+        int queued  = 0;
+
+        while (flooded < queued || !this.open.isEmpty()) {
+            final int cell;
+
+            if (flooded < queued) {
+                cell = this.order[flooded++];
+            } else {
+                cell = this.open.pop();
+                this.order[flooded++] = cell;
+                queued = flooded;
+            }
+
+            final float level = this.levels[cell];
+
+            for (int k = 0; k < NEIGHBOUR_DI.length; ++k) {
+                final int neighbour = neighbour(cell, k);
+
+                if (this.closed[neighbour])
+                    continue;
+
+                this.closed[neighbour]    = true;
+                this.receivers[neighbour] = cell;
+
+                if (h[neighbour] <= level) {
+                    this.levels[neighbour] = level;
+                    this.order[queued++]   = neighbour;
+                } else {
+                    this.levels[neighbour] = h[neighbour];
+                    this.open.push(neighbour, h[neighbour]);
+                }
+            }
+        }
+
+        // Receivers are flooded before their donors, so every lake cell finds its spill in one sweep
+        for (int n = 1; n < this.order.length; ++n) {
+            final int cell = this.order[n];
+
+            if (this.levels[cell] <= h[cell])
+                continue;
+
+            final int receiver = this.receivers[cell];
+            this.spills[cell] = this.spills[receiver] >= 0 ? this.spills[receiver] : receiver;
+        }
+    }
+
+    /**
+     * @return the level of the surface of the lake over each cell, or its height if it is dry
+     */
+    public float[] getLevels() {
+        return this.levels;
+    }
+
+    /**
+     * @return the cell each cell drains into, the outlet draining into itself
+     */
+    public int[] getReceivers() {
+        return this.receivers;
+    }
+
+    /**
+     * @return the cell over which the lake covering each cell spills, or -1 if the cell is dry
+     */
+    public int[] getSpills() {
+        return this.spills;
+    }
+
+    /**
+     * @return every cell in an order in which each cell comes after the cell it drains into
+     */
+    public int[] getOrder() {
+        return this.order;
+    }
+
+    private boolean fits(final ScalarField2D field) {
+        return field.getWidth() == this.width && field.getHeight() == this.height && field.getHalo() == this.halo;
+    }
+
+    private int neighbour(final int cell, final int k) {
+        int i = cell % this.stride - this.halo + NEIGHBOUR_DI[k];
+        int j = cell / this.stride - this.halo + NEIGHBOUR_DJ[k];
+
+        if (i < 0)
+            i += this.width;
+        else if (i >= this.width)
+            i -= this.width;
+
+        if (j < 0)
+            j += this.height;
+        else if (j >= this.height)
+            j -= this.height;
+
+        return (j + this.halo) * this.stride + i + this.halo;
+    }
+}
@@ -22,7 +22,7 @@ public class Erosion extends Application {
             simulation.setMode((ErosionSimulationMode) mode);
         });
 
-        simulation.addSimulationListeners(List.of(scene));
+        simulation.addSimulationListeners(List.of(scene, image -> scene.setStatus(simulation.getStatus())));
 
         stage.setScene(scene.asScene());
         stage.setResizable(false);
@@ -0,0 +1,520 @@
+package erosion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import util.data.algebraic.Unit;
+import util.data.grids.ScalarField2D;
+
+/**
+ * A copy of everything an {@link ErosionState} needs to carry on evolving as if uninterrupted: its
+ * heights, sediment and water, the flow through its pipes under shallow water, the carries of its
+ * compensated sums, its strata, which of its tiles are awake, its tick, and the seed its random
+ * numbers are drawn from, which together with the tick is the whole state of its generators.
+ * Capturing only copies these, so it is cheap enough for the thread evolving the state, while
+ * writing the copy to disk can be left to another thread.
+ *
+ * <p>Checkpoints are streamed through a {@link FileChannel} using a direct buffer, little-endian.
+ * A header holding a magic number, the format version, the grid size, the tick, the seed and which
+ * of the optional parts follow is followed by each field, row after row, as floats: the heights,
+ * sediment and water, then the four outflow fields and the two carries if kept. Then come a byte
+ * for each tile, set if it is awake, and, if kept, the number of layers of each column, row after
+ * row, followed by every layer, bottom first, as its thickness, age and type. A checkpoint is
+ * written next to its destination and then moved over it, so a crash mid-write leaves the previous
+ * checkpoint intact.
+ */
+public final class ErosionCheckpoint {
+
+    private static final int MAGIC   = 0x45524F53;
+    private static final int VERSION = 3;
+
+    // The optional parts that follow the header
+    private static final int OUTFLOW = 1;
+    private static final int CARRIES = 2;
+    private static final int STRATA  = 4;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final int  width;
+    private final int  height;
+    private final long tick;
+    private final long seed;
+
+    private final float[] heights;
+    private final float[] sediment;
+    private final float[] water;
+
+    // Each is null if the state did not keep it
+    private final float[][] outflow;
+    private final float[]   heightCarry;
+    private final float[]   sedimentCarry;
+    private final Layers    layers;
+
+    private final boolean[] awake;
+
+    /**
+     * The layers of every column, bottom first, one column after another, row after row.
+     */
+    private static final class Layers {
+        private final int[]   counts;
+        private final float[] thicknesses;
+        private final int[]   ages;
+        private final byte[]  types;
+
+        private Layers(final int[] counts, final float[] thicknesses, final int[] ages, final byte[] types) {
+            this.counts      = counts;
+            this.thicknesses = thicknesses;
+            this.ages        = ages;
+            this.types       = types;
+        }
+    }
+
+    private ErosionCheckpoint(
+        final int width,
+        final int height,
+        final long tick,
+        final long seed,
+        final float[] heights,
+        final float[] sediment,
+        final float[] water,
+        final float[][] outflow,
+        final float[] heightCarry,
+        final float[] sedimentCarry,
+        final Layers layers,
+        final boolean[] awake) {
+
+        this.width         = width;
+        this.height        = height;
+        this.tick          = tick;
+        this.seed          = seed;
+        this.heights       = heights;
+        this.sediment      = sediment;
+        this.water         = water;
+        this.outflow       = outflow;
+        this.heightCarry   = heightCarry;
+        this.sedimentCarry = sedimentCarry;
+        this.layers        = layers;
+        this.awake         = awake;
+    }
+
+    /**
+     * Copies the state. Must be called on the thread evolving it, between ticks.
+     *
+     * @param state the state to copy
+     * @return the copy
+     */
+    public static ErosionCheckpoint capture(final ErosionState state) {
+        final ActiveTiles tiles = state.getTiles();
+        final boolean[]   awake = new boolean[tiles.getCount()];
+
+        for (int tile = 0; tile < awake.length; ++tile)
+            awake[tile] = tiles.isAwake(tile);
+
+        return new ErosionCheckpoint(
+            state.getWidth(),
+            state.getHeight(),
+            state.getTick(),
+            state.getSeed(),
+            copy(state.getHeights()),
+            copy(state.getSediment()),
+            copy(state.getWater()),
+            state.getOutflow().asSum().forgetLeft().map(fields -> new float[][] {
+                copy(fields[0]), copy(fields[1]), copy(fields[2]), copy(fields[3])
+            }).orElse(null),
+            state.getHeightCarry().asSum().forgetLeft().map(ErosionCheckpoint::copy).orElse(null),
+            state.getSedimentCarry().asSum().forgetLeft().map(ErosionCheckpoint::copy).orElse(null),
+            state.getStrata().asSum().forgetLeft().map(strata -> copy(strata, state.getWidth() * state.getHeight())).orElse(null),
+            awake);
+    }
+
+    /**
+     * Builds a state from the copy. The state takes its size, tick and seed from the copy and
+     * everything else from the parameters. Parts of the copy the parameters do not keep, such as
+     * strata when the strata depth is zero, are dropped, and parts they keep that the copy lacks
+     * start out as in a new state.
+     *
+     * @param parameters the parameters the state is to evolve by
+     * @return the state
+     */
+    public ErosionState restore(final ErosionParameters parameters) {
+        final ErosionState state = new ErosionState(parameters, this.width, this.height, this.seed);
+
+        paste(this.heights, state.getHeights());
+        state.storeSediment(pasted(this.sediment));
+        state.storeWater(pasted(this.water));
+
+        if (this.outflow != null)
+            state.getOutflow().match(__ -> Unit.unit(), fields -> {
+                for (int k = 0; k < fields.length; ++k)
+                    paste(this.outflow[k], fields[k]);
+                return Unit.unit();
+            });
+
+        if (this.heightCarry != null) {
+            state.getHeightCarry().match(__ -> Unit.unit(), carry -> {
+                paste(this.heightCarry, carry);
+                return Unit.unit();
+            });
+            state.getSedimentCarry().match(__ -> Unit.unit(), carry -> {
+                paste(this.sedimentCarry, carry);
+                return Unit.unit();
+            });
+        }
+
+        if (this.layers != null)
+            state.getStrata().match(__ -> Unit.unit(), strata -> {
+                paste(this.layers, strata);
+                return Unit.unit();
+            });
+
+        if (this.awake.length == state.getTiles().getCount())
+            state.getTiles().wake(this.awake);
+
+        state.setTick(this.tick);
+
+        return state;
+    }
+
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Writes the copy to a file, replacing the file only once the copy is complete.
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final Path path) throws IOException {
+        final Path partial = path.resolveSibling(path.getFileName() + ".part");
+
+        try (final FileChannel channel = FileChannel.open(
+                partial,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            final int parts = (this.outflow != null ? OUTFLOW : 0)
+                | (this.heightCarry != null ? CARRIES : 0)
+                | (this.layers != null ? STRATA : 0);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(this.width).putInt(this.height).putLong(this.tick).putLong(this.seed);
+            buffer.putInt(parts);
+
+            writeFloats(channel, buffer, this.heights);
+            writeFloats(channel, buffer, this.sediment);
+            writeFloats(channel, buffer, this.water);
+
+            if (this.outflow != null)
+                for (final float[] field : this.outflow)
+                    writeFloats(channel, buffer, field);
+
+            if (this.heightCarry != null) {
+                writeFloats(channel, buffer, this.heightCarry);
+                writeFloats(channel, buffer, this.sedimentCarry);
+            }
+
+            final byte[] tiles = new byte[this.awake.length];
+
+            for (int tile = 0; tile < tiles.length; ++tile)
+                tiles[tile] = (byte) (this.awake[tile] ? 1 : 0);
+
+            writeInts(channel, buffer, new int[] { tiles.length });
+            writeBytes(channel, buffer, tiles);
+
+            if (this.layers != null) {
+                writeInts(channel, buffer, this.layers.counts);
+                writeFloats(channel, buffer, this.layers.thicknesses);
+                writeInts(channel, buffer, this.layers.ages);
+                writeBytes(channel, buffer, this.layers.types);
+            }
+
+            flush(channel, buffer);
+            channel.force(true);
+        }
+
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param path the file to read
+     * @return the copy held in the file
+     * @throws IOException if the file cannot be read, is not a checkpoint, or is corrupt or
+     *         truncated
+     */
+    public static ErosionCheckpoint read(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.flip();
+            fill(channel, buffer, 2 * Integer.BYTES);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException("Not an erosion checkpoint of version " + VERSION + ": " + path);
+
+            fill(channel, buffer, 3 * Integer.BYTES + 2 * Long.BYTES);
+
+            final int  width  = buffer.getInt();
+            final int  height = buffer.getInt();
+            final long tick   = buffer.getLong();
+            final long seed   = buffer.getLong();
+            final int  parts  = buffer.getInt();
+
+            if (width <= 0 || height <= 0)
+                throw new IOException("Erosion checkpoint has an empty grid: " + path);
+
+            final int cells;
+
+            try {
+                cells = Math.multiplyExact(width, height);
+            } catch (final ArithmeticException e) {
+                throw new IOException("Erosion checkpoint has too large a grid: " + path);
+            }
+
+            // Every field the parts call for, and the number of tiles, must be there before any is allocated
+            final int fields = 3 + ((parts & OUTFLOW) != 0 ? 4 : 0) + ((parts & CARRIES) != 0 ? 2 : 0);
+
+            expect(channel, buffer, (long) fields * cells * Float.BYTES + Integer.BYTES, path);
+
+            final float[] heights  = readFloats(channel, buffer, cells);
+            final float[] sediment = readFloats(channel, buffer, cells);
+            final float[] water    = readFloats(channel, buffer, cells);
+
+            final float[][] outflow = (parts & OUTFLOW) != 0
+                ? new float[][] {
+                    readFloats(channel, buffer, cells),
+                    readFloats(channel, buffer, cells),
+                    readFloats(channel, buffer, cells),
+                    readFloats(channel, buffer, cells)
+                }
+                : null;
+
+            final float[] heightCarry   = (parts & CARRIES) != 0 ? readFloats(channel, buffer, cells) : null;
+            final float[] sedimentCarry = (parts & CARRIES) != 0 ? readFloats(channel, buffer, cells) : null;
+
+            final int tileCount = readInts(channel, buffer, 1)[0];
+
+            if (tileCount < 0)
+                throw new IOException("Erosion checkpoint has a negative number of tiles: " + path);
+
+            expect(channel, buffer, tileCount + ((parts & STRATA) != 0 ? (long) cells * Integer.BYTES : 0L), path);
+
+            final byte[]    tiles = readBytes(channel, buffer, tileCount);
+            final boolean[] awake = new boolean[tiles.length];
+
+            for (int tile = 0; tile < tiles.length; ++tile)
+                awake[tile] = tiles[tile] != 0;
+
+            Layers layers = null;
+
+            if ((parts & STRATA) != 0) {
+                final int[] counts = readInts(channel, buffer, cells);
+                long total = 0;
+
+                for (final int count : counts) {
+                    if (count < 0)
+                        throw new IOException("Erosion checkpoint has a negative number of layers: " + path);
+
+                    total += count;
+                }
+
+                // Each layer takes a float, an int and a byte
+                expect(channel, buffer, total * (Float.BYTES + Integer.BYTES + Byte.BYTES), path);
+
+                if (total > Integer.MAX_VALUE)
+                    throw new IOException("Erosion checkpoint has too many layers: " + path);
+
+                layers = new Layers(
+                    counts,
+                    readFloats(channel, buffer, (int) total),
+                    readInts(channel, buffer, (int) total),
+                    readBytes(channel, buffer, (int) total));
+            }
+
+            return new ErosionCheckpoint(
+                width, height, tick, seed, heights, sediment, water, outflow, heightCarry, sedimentCarry, layers, awake);
+        }
+    }
+
+    private static void writeFloats(final FileChannel channel, final ByteBuffer buffer, final float[] values) throws IOException {
+        for (int k = 0; k < values.length; ) {
+            if (buffer.remaining() < Float.BYTES)
+                flush(channel, buffer);
+
+            final int count = Math.min(values.length - k, buffer.remaining() / Float.BYTES);
+
+            buffer.asFloatBuffer().put(values, k, count);
+            buffer.position(buffer.position() + count * Float.BYTES);
+            k += count;
+        }
+    }
+
+    private static void writeInts(final FileChannel channel, final ByteBuffer buffer, final int[] values) throws IOException {
+        for (int k = 0; k < values.length; ) {
+            if (buffer.remaining() < Integer.BYTES)
+                flush(channel, buffer);
+
+            final int count = Math.min(values.length - k, buffer.remaining() / Integer.BYTES);
+
+            buffer.asIntBuffer().put(values, k, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            k += count;
+        }
+    }
+
+    private static void writeBytes(final FileChannel channel, final ByteBuffer buffer, final byte[] values) throws IOException {
+        for (int k = 0; k < values.length; ) {
+            if (!buffer.hasRemaining())
+                flush(channel, buffer);
+
+            final int count = Math.min(values.length - k, buffer.remaining());
+
+            buffer.put(values, k, count);
+            k += count;
+        }
+    }
+
+    private static float[] readFloats(final FileChannel channel, final ByteBuffer buffer, final int count) throws IOException {
+        final float[] values = new float[count];
+
+        for (int k = 0; k < count; ) {
+            fill(channel, buffer, Float.BYTES);
+
+            final int read = Math.min(count - k, buffer.remaining() / Float.BYTES);
+
+            buffer.asFloatBuffer().get(values, k, read);
+            buffer.position(buffer.position() + read * Float.BYTES);
+            k += read;
+        }
+
+        return values;
+    }
+
+    private static int[] readInts(final FileChannel channel, final ByteBuffer buffer, final int count) throws IOException {
+        final int[] values = new int[count];
+
+        for (int k = 0; k < count; ) {
+            fill(channel, buffer, Integer.BYTES);
+
+            final int read = Math.min(count - k, buffer.remaining() / Integer.BYTES);
+
+            buffer.asIntBuffer().get(values, k, read);
+            buffer.position(buffer.position() + read * Integer.BYTES);
+            k += read;
+        }
+
+        return values;
+    }
+
+    private static byte[] readBytes(final FileChannel channel, final ByteBuffer buffer, final int count) throws IOException {
+        final byte[] values = new byte[count];
+
+        for (int k = 0; k < count; ) {
+            fill(channel, buffer, Byte.BYTES);
+
+            final int read = Math.min(count - k, buffer.remaining());
+
+            buffer.get(values, k, read);
+            k += read;
+        }
+
+        return values;
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * Throws unless the channel holds at least the given number of bytes past those read so far,
+     * so that a bad header is caught before anything is allocated for it.
+     */
+    private static void expect(final FileChannel channel, final ByteBuffer buffer, final long bytes, final Path path) throws IOException {
+        if (bytes > channel.size() - channel.position() + buffer.remaining())
+            throw new IOException("Erosion checkpoint is shorter than its header says: " + path);
+    }
+
+    /**
+     * Reads from the channel until the buffer holds at least the given number of bytes.
+     */
+    private static void fill(final FileChannel channel, final ByteBuffer buffer, final int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return;
+
+        buffer.compact();
+
+        while (buffer.position() < bytes)
+            if (channel.read(buffer) < 0)
+                throw new IOException("Erosion checkpoint ends early.");
+
+        buffer.flip();
+    }
+
+    private static float[] copy(final ScalarField2D field) {
+        final float[] values = new float[field.getWidth() * field.getHeight()];
+
+        for (int j = 0; j < field.getHeight(); ++j)
+            System.arraycopy(field.getValues(), field.index(0, j), values, j * field.getWidth(), field.getWidth());
+
+        return values;
+    }
+
+    private static void paste(final float[] values, final ScalarField2D field) {
+        for (int j = 0; j < field.getHeight(); ++j)
+            System.arraycopy(values, j * field.getWidth(), field.getValues(), field.index(0, j), field.getWidth());
+    }
+
+    /**
+     * @return a new field holding the values, for the fields a state may store as halves
+     */
+    private ScalarField2D pasted(final float[] values) {
+        final ScalarField2D field = new ScalarField2D(this.width, this.height);
+        paste(values, field);
+        return field;
+    }
+
+    /**
+     * Copies the layers of every one of the given number of columns.
+     */
+    private static Layers copy(final Stratigraphy strata, final int columns) {
+        final int[] counts = new int[columns];
+        int total = 0;
+
+        for (int column = 0; column < columns; ++column) {
+            counts[column] = strata.getLayerCount(column);
+            total += counts[column];
+        }
+
+        final Layers layers = new Layers(counts, new float[total], new int[total], new byte[total]);
+        int offset = 0;
+
+        for (int column = 0; column < columns; ++column)
+            offset += strata.getLayers(column, layers.thicknesses, layers.ages, layers.types, offset);
+
+        return layers;
+    }
+
+    /**
+     * Rebuilds every column of the strata layer by layer.
+     */
+    private static void paste(final Layers layers, final Stratigraphy strata) {
+        int k = 0;
+
+        for (int column = 0; column < layers.counts.length; ++column)
+            for (int n = 0; n < layers.counts[column]; ++n, ++k)
+                strata.push(column, layers.thicknesses[k], layers.types[k], layers.ages[k]);
+    }
+}
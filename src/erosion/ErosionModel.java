@@ -0,0 +1,17 @@
+package erosion;
+
+/**
+ * The laws {@link ErosionState#evolve()} can shape the terrain with.
+ */
+public enum ErosionModel {
+    /** Sediment and eroded material routed downhill by the kernel chosen as the flow engine */
+    FLOW,
+    /** Erosion at a rate set by the upstream drainage area and the slope of each cell */
+    STREAM_POWER,
+    /** Stream power and hillslope diffusion solved implicitly, so that any time step is stable */
+    IMPLICIT_STREAM_POWER,
+    /** Droplets that carry water and sediment down the terrain, eroding and depositing as they go */
+    DROPLETS,
+    /** Rain routed as shallow water through virtual pipes between cells, carrying suspended sediment */
+    SHALLOW_WATER;
+}
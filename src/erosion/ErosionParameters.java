@@ -4,23 +4,80 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import simulation.parameters.BooleanParameter;
 import simulation.parameters.FloatParameter;
+import simulation.parameters.IntegerParameter;
 import simulation.parameters.Parameter;
 import simulation.parameters.SimulationParameterGroup;
 import util.data.trees.DistinguishedTree;
 import util.properties.EnableableValue;
 
-class ErosionParameters {
+public class ErosionParameters {
+    // values() copies the constants on every call, and the state reads both on every tick
+    private static final FlowEngine[]     FLOW_ENGINES     = FlowEngine.values();
+    private static final ErosionModel[]   EROSION_MODELS   = ErosionModel.values();
+    private static final FieldPrecision[] FIELD_PRECISIONS = FieldPrecision.values();
+
     private final AtomicBoolean locked = new AtomicBoolean(false);
 
+    private final int   DEFAULT_WIDTH              = 700;
+    private final int   DEFAULT_HEIGHT             = 500;
+    private final int   MAX_DIMENSION              = 8192;
     private final float DEFAULT_INITIAL_HEIGHT     = 15f;
     private final float DEFAULT_INITIAL_NOISE      = 0.5f;
     private final float DEFAULT_NOISE_STRENGTH     = 0.0f;
     private final float DEFAULT_BLUR_STRENGTH      = 0.0f;
+    private final float DEFAULT_THERMAL_RATE       = 0.25f;
+    private final float DEFAULT_TALUS_SLOPE        = 1.0f;
     private final float DEFAULT_ERODIBILITY        = 0.1f;
     private final float DEFAULT_SEDIMENT_TRANSPORT = 0.9f;
     private final float DEFAULT_CARVING_FACTOR     = 0.5f;
+    private final int   DEFAULT_FLOW_ENGINE        = FlowEngine.STENCIL.ordinal();
+    private final int   DEFAULT_EROSION_MODEL      = ErosionModel.FLOW.ordinal();
+    private final float DEFAULT_AREA_EXPONENT      = 0.5f;
+    private final float DEFAULT_SLOPE_EXPONENT     = 1.0f;
+    private final float DEFAULT_TIME_STEP          = 10.0f;
+    private final float DEFAULT_UPLIFT             = 0.001f;
+    private final float DEFAULT_DIFFUSIVITY        = 0.01f;
+    private final int   DEFAULT_DROPLETS           = 200000;
+    private final int   DEFAULT_DROPLET_LIFETIME   = 30;
+    private final float DEFAULT_INERTIA            = 0.05f;
+    private final float DEFAULT_CAPACITY           = 4.0f;
+    private final float DEFAULT_EVAPORATION        = 0.02f;
+    private final float DEFAULT_RAIN               = 0.01f;
+    private final float DEFAULT_RAIN_DEPENDENCE    = 0.0f;
+    private final float DEFAULT_DRYING             = 0.005f;
+    private final int   DEFAULT_FILL_INTERVAL      = 0;
+    private final int   DEFAULT_STRATA_DEPTH       = 0;
+    private final int   DEFAULT_STRATA_EPOCH       = 100;
+    private final float DEFAULT_DEPOSIT_ERODIBILITY = 2.0f;
+    private final int   DEFAULT_PYRAMID_LEVELS     = 0;
+    private final int   DEFAULT_PYRAMID_TICKS      = 500;
+    private final float DEFAULT_PYRAMID_TOLERANCE  = 1e-4f;
+    private final float DEFAULT_SLEEP_THRESHOLD    = 0.0f;
+    private final int   DEFAULT_CHECKPOINT_INTERVAL = 0;
+    private final boolean DEFAULT_RESUME           = false;
+    private final int   DEFAULT_FIELD_PRECISION    = FieldPrecision.SINGLE.ordinal();
+    private final boolean DEFAULT_COMPENSATED_SUMS = false;
+    private final int   MAX_THREADS                = 64;
+    private final int   DEFAULT_STATS_INTERVAL     = 10;
+    private final int   DEFAULT_SEED               = 0;
+    private final int   DEFAULT_THREADS            = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
 
+    private final IntegerParameter widthParameter = new IntegerParameter(
+        "Width",
+        "Width",
+        "The number of columns of the terrain grid",
+        DEFAULT_WIDTH,
+        2,
+        MAX_DIMENSION);
+    private final IntegerParameter heightParameter = new IntegerParameter(
+        "Height",
+        "Height",
+        "The number of rows of the terrain grid",
+        DEFAULT_HEIGHT,
+        2,
+        MAX_DIMENSION);
     private final FloatParameter initialHeightParameter = new FloatParameter(
         "Initial Height",
         "InitH",
@@ -42,6 +99,13 @@ class ErosionParameters {
         DEFAULT_NOISE_STRENGTH,
         0.0f,
         10.0f);
+    private final IntegerParameter seedParameter = new IntegerParameter(
+        "Seed",
+        "Seed",
+        "The seed from which all noise is generated",
+        DEFAULT_SEED,
+        0,
+        99999);
     private final FloatParameter blurStrengthParameter = new FloatParameter (
         "Blur Strength",
         "BlSt", 
@@ -49,6 +113,20 @@ class ErosionParameters {
         DEFAULT_BLUR_STRENGTH,
         0.0f,
         1.0f);
+    private final FloatParameter thermalRateParameter = new FloatParameter(
+        "Thermal Rate",
+        "ThRate",
+        "How quickly material slumps off slopes steeper than the talus slope (0: off)",
+        DEFAULT_THERMAL_RATE,
+        0.0f,
+        1.0f);
+    private final FloatParameter talusSlopeParameter = new FloatParameter(
+        "Talus Slope",
+        "Talus",
+        "The steepest drop between neighbouring cells that does not slump",
+        DEFAULT_TALUS_SLOPE,
+        0.0f,
+        10.0f);
     private final FloatParameter erodibilityParameter = new FloatParameter(
         "Erodibility",
         "Erd",
@@ -70,33 +148,338 @@ class ErosionParameters {
         DEFAULT_CARVING_FACTOR,
         0.0f,
         1.0f);
+    private final IntegerParameter flowEngineParameter = new IntegerParameter(
+        "Flow Engine",
+        "FlEng",
+        "The kernel used to route sediment (0: reference, 1: stencil, 2: gather)",
+        DEFAULT_FLOW_ENGINE,
+        0,
+        FlowEngine.values().length - 1);
+    private final IntegerParameter erosionModelParameter = new IntegerParameter(
+        "Erosion Model",
+        "ErMdl",
+        "The law the terrain is eroded by (0: flow, 1: stream power, 2: implicit stream power, 3: droplets, 4: shallow water)",
+        DEFAULT_EROSION_MODEL,
+        0,
+        ErosionModel.values().length - 1);
+    private final FloatParameter areaExponentParameter = new FloatParameter(
+        "Area Exponent",
+        "AExp",
+        "How strongly stream power erosion grows with the drainage area",
+        DEFAULT_AREA_EXPONENT,
+        0.0f,
+        2.0f);
+    private final FloatParameter slopeExponentParameter = new FloatParameter(
+        "Slope Exponent",
+        "SExp",
+        "How strongly stream power erosion grows with the slope",
+        DEFAULT_SLOPE_EXPONENT,
+        0.0f,
+        4.0f);
+    private final FloatParameter timeStepParameter = new FloatParameter(
+        "Time Step",
+        "TStep",
+        "The time each tick of implicit stream power erosion covers",
+        DEFAULT_TIME_STEP,
+        0.1f,
+        1000.0f);
+    private final FloatParameter upliftParameter = new FloatParameter(
+        "Uplift",
+        "Upl",
+        "How fast the terrain rises under implicit stream power erosion",
+        DEFAULT_UPLIFT,
+        0.0f,
+        0.1f);
+    private final FloatParameter diffusivityParameter = new FloatParameter(
+        "Diffusivity",
+        "Diff",
+        "How fast hillslopes creep under implicit stream power erosion",
+        DEFAULT_DIFFUSIVITY,
+        0.0f,
+        1.0f);
+    private final IntegerParameter dropletsParameter = new IntegerParameter(
+        "Droplets",
+        "Drops",
+        "The number of droplets released on each tick",
+        DEFAULT_DROPLETS,
+        1,
+        5000000);
+    private final IntegerParameter dropletLifetimeParameter = new IntegerParameter(
+        "Droplet Lifetime",
+        "DrLife",
+        "The number of cells a droplet crosses before it evaporates",
+        DEFAULT_DROPLET_LIFETIME,
+        1,
+        200);
+    private final FloatParameter inertiaParameter = new FloatParameter(
+        "Inertia",
+        "Inert",
+        "How strongly droplets keep their direction rather than turn downhill",
+        DEFAULT_INERTIA,
+        0.0f,
+        1.0f);
+    private final FloatParameter capacityParameter = new FloatParameter(
+        "Capacity",
+        "Cap",
+        "How much sediment fast, full droplets and streams can carry",
+        DEFAULT_CAPACITY,
+        0.0f,
+        32.0f);
+    private final FloatParameter evaporationParameter = new FloatParameter(
+        "Evaporation",
+        "Evap",
+        "The fraction of its water a droplet loses at each cell",
+        DEFAULT_EVAPORATION,
+        0.0f,
+        1.0f);
+    private final FloatParameter rainParameter = new FloatParameter(
+        "Rain",
+        "Rain",
+        "The depth of water falling on each cell on each tick",
+        DEFAULT_RAIN,
+        0.0f,
+        1.0f);
+    private final FloatParameter rainDependenceParameter = new FloatParameter(
+        "Rain Height Dependence",
+        "RnHDep",
+        "How much more rain falls per unit of height",
+        DEFAULT_RAIN_DEPENDENCE,
+        -1.0f,
+        1.0f);
+    private final FloatParameter dryingParameter = new FloatParameter(
+        "Drying",
+        "Dry",
+        "The depth of water evaporating from each cell on each tick",
+        DEFAULT_DRYING,
+        0.0f,
+        1.0f);
+    private final IntegerParameter fillIntervalParameter = new IntegerParameter(
+        "Fill Interval",
+        "FilInt",
+        "The number of ticks between filling depressions with their sediment (0: off)",
+        DEFAULT_FILL_INTERVAL,
+        0,
+        1000);
+    private final IntegerParameter strataDepthParameter = new IntegerParameter(
+        "Strata Depth",
+        "StrDep",
+        "The number of layers of deposits each cell holds before overflowing (0: off)",
+        DEFAULT_STRATA_DEPTH,
+        0,
+        32);
+    private final IntegerParameter strataEpochParameter = new IntegerParameter(
+        "Strata Epoch",
+        "StrEp",
+        "The number of ticks whose deposits form a single layer",
+        DEFAULT_STRATA_EPOCH,
+        1,
+        100000);
+    private final FloatParameter depositErodibilityParameter = new FloatParameter(
+        "Deposit Erodibility",
+        "DepErd",
+        "How easily deposits are eroded, relative to the bedrock",
+        DEFAULT_DEPOSIT_ERODIBILITY,
+        0.0f,
+        10.0f);
+    private final IntegerParameter pyramidLevelsParameter = new IntegerParameter(
+        "Pyramid Levels",
+        "PyLvl",
+        "The number of coarser grids eroded before the full grid (0: off)",
+        DEFAULT_PYRAMID_LEVELS,
+        0,
+        8);
+    private final IntegerParameter pyramidTicksParameter = new IntegerParameter(
+        "Pyramid Ticks",
+        "PyTck",
+        "The most ticks each level of the pyramid is eroded for",
+        DEFAULT_PYRAMID_TICKS,
+        1,
+        100000);
+    private final FloatParameter pyramidToleranceParameter = new FloatParameter(
+        "Pyramid Tolerance",
+        "PyTol",
+        "The mean height change per tick below which a level of the pyramid is refined (0: never early)",
+        DEFAULT_PYRAMID_TOLERANCE,
+        0.0f,
+        0.1f);
+    private final FloatParameter sleepThresholdParameter = new FloatParameter(
+        "Sleep Threshold",
+        "SlpThr",
+        "The change per tick below which a tile of terrain stops being eroded (0: off)",
+        DEFAULT_SLEEP_THRESHOLD,
+        0.0f,
+        0.1f);
+    private final IntegerParameter checkpointIntervalParameter = new IntegerParameter(
+        "Checkpoint Interval",
+        "ChkInt",
+        "The number of ticks between checkpoints written in the background, and whether ending a run writes one (0: off)",
+        DEFAULT_CHECKPOINT_INTERVAL,
+        0,
+        1000000);
+    private final BooleanParameter resumeParameter = new BooleanParameter(
+        "Resume",
+        "Resume",
+        "Whether a new run resumes from the last checkpoint, if there is one",
+        DEFAULT_RESUME,
+        false,
+        true);
+    private final IntegerParameter fieldPrecisionParameter = new IntegerParameter(
+        "Field Precision",
+        "FldPrc",
+        "The precision sediment and water are stored at (0: single, 1: half)",
+        DEFAULT_FIELD_PRECISION,
+        0,
+        FieldPrecision.values().length - 1);
+    private final BooleanParameter compensatedSumsParameter = new BooleanParameter(
+        "Compensated Sums",
+        "CmpSum",
+        "Whether changes to heights and sediment are summed with a carry, losing no precision over long runs",
+        DEFAULT_COMPENSATED_SUMS,
+        false,
+        true);
+    private final IntegerParameter threadsParameter = new IntegerParameter(
+        "Threads",
+        "Thrd",
+        "The number of row bands evolved in parallel",
+        DEFAULT_THREADS,
+        1,
+        MAX_THREADS);
+    private final IntegerParameter statisticsIntervalParameter = new IntegerParameter(
+        "Statistics Interval",
+        "StInt",
+        "The number of ticks between statistics samples (0: off)",
+        DEFAULT_STATS_INTERVAL,
+        0,
+        1000);
     
     private final List<EnableableValue> enableableValues = List.of(
+        widthParameter,
+        heightParameter,
         initialHeightParameter,
         initialNoiseParameter,
         noiseStrengthParameter,
+        seedParameter,
         blurStrengthParameter,
+        thermalRateParameter,
+        talusSlopeParameter,
         erodibilityParameter,
         sedimentTransportParameter,
-        carvingFactorParameter
+        carvingFactorParameter,
+        flowEngineParameter,
+        erosionModelParameter,
+        areaExponentParameter,
+        slopeExponentParameter,
+        timeStepParameter,
+        upliftParameter,
+        diffusivityParameter,
+        dropletsParameter,
+        dropletLifetimeParameter,
+        inertiaParameter,
+        capacityParameter,
+        evaporationParameter,
+        rainParameter,
+        rainDependenceParameter,
+        dryingParameter,
+        fillIntervalParameter,
+        strataDepthParameter,
+        strataEpochParameter,
+        depositErodibilityParameter,
+        pyramidLevelsParameter,
+        pyramidTicksParameter,
+        pyramidToleranceParameter,
+        sleepThresholdParameter,
+        checkpointIntervalParameter,
+        resumeParameter,
+        fieldPrecisionParameter,
+        compensatedSumsParameter,
+        threadsParameter,
+        statisticsIntervalParameter
     );
 
+    private AtomicReference<Integer> width           = new AtomicReference<>(DEFAULT_WIDTH);
+    private AtomicReference<Integer> height          = new AtomicReference<>(DEFAULT_HEIGHT);
     private AtomicReference<Float> initialHeight     = new AtomicReference<>(DEFAULT_INITIAL_HEIGHT);
     private AtomicReference<Float> initialNoise      = new AtomicReference<>(DEFAULT_INITIAL_NOISE);
     private AtomicReference<Float> noiseStrength     = new AtomicReference<>(DEFAULT_NOISE_STRENGTH);
     private AtomicReference<Float> blurStrength      = new AtomicReference<>(DEFAULT_BLUR_STRENGTH);
+    private AtomicReference<Float> thermalRate       = new AtomicReference<>(DEFAULT_THERMAL_RATE);
+    private AtomicReference<Float> talusSlope        = new AtomicReference<>(DEFAULT_TALUS_SLOPE);
     private AtomicReference<Float> erodibility       = new AtomicReference<>(DEFAULT_ERODIBILITY);
     private AtomicReference<Float> sedimentTransport = new AtomicReference<>(DEFAULT_SEDIMENT_TRANSPORT);
     private AtomicReference<Float> carvingFactor     = new AtomicReference<>(DEFAULT_CARVING_FACTOR);
+    private AtomicReference<Integer> flowEngine      = new AtomicReference<>(DEFAULT_FLOW_ENGINE);
+    private AtomicReference<Integer> erosionModel    = new AtomicReference<>(DEFAULT_EROSION_MODEL);
+    private AtomicReference<Float>   areaExponent    = new AtomicReference<>(DEFAULT_AREA_EXPONENT);
+    private AtomicReference<Float>   slopeExponent   = new AtomicReference<>(DEFAULT_SLOPE_EXPONENT);
+    private AtomicReference<Float>   timeStep        = new AtomicReference<>(DEFAULT_TIME_STEP);
+    private AtomicReference<Float>   uplift          = new AtomicReference<>(DEFAULT_UPLIFT);
+    private AtomicReference<Float>   diffusivity     = new AtomicReference<>(DEFAULT_DIFFUSIVITY);
+    private AtomicReference<Integer> droplets        = new AtomicReference<>(DEFAULT_DROPLETS);
+    private AtomicReference<Integer> dropletLifetime = new AtomicReference<>(DEFAULT_DROPLET_LIFETIME);
+    private AtomicReference<Float>   inertia         = new AtomicReference<>(DEFAULT_INERTIA);
+    private AtomicReference<Float>   capacity        = new AtomicReference<>(DEFAULT_CAPACITY);
+    private AtomicReference<Float>   evaporation     = new AtomicReference<>(DEFAULT_EVAPORATION);
+    private AtomicReference<Float>   rain            = new AtomicReference<>(DEFAULT_RAIN);
+    private AtomicReference<Float>   rainDependence  = new AtomicReference<>(DEFAULT_RAIN_DEPENDENCE);
+    private AtomicReference<Float>   drying          = new AtomicReference<>(DEFAULT_DRYING);
+    private AtomicReference<Integer> fillInterval    = new AtomicReference<>(DEFAULT_FILL_INTERVAL);
+    private AtomicReference<Integer> strataDepth     = new AtomicReference<>(DEFAULT_STRATA_DEPTH);
+    private AtomicReference<Integer> strataEpoch     = new AtomicReference<>(DEFAULT_STRATA_EPOCH);
+    private AtomicReference<Float>   depositErodibility = new AtomicReference<>(DEFAULT_DEPOSIT_ERODIBILITY);
+    private AtomicReference<Integer> pyramidLevels   = new AtomicReference<>(DEFAULT_PYRAMID_LEVELS);
+    private AtomicReference<Integer> pyramidTicks    = new AtomicReference<>(DEFAULT_PYRAMID_TICKS);
+    private AtomicReference<Float>   pyramidTolerance = new AtomicReference<>(DEFAULT_PYRAMID_TOLERANCE);
+    private AtomicReference<Float>   sleepThreshold  = new AtomicReference<>(DEFAULT_SLEEP_THRESHOLD);
+    private AtomicReference<Integer> checkpointInterval = new AtomicReference<>(DEFAULT_CHECKPOINT_INTERVAL);
+    private AtomicReference<Boolean> resume          = new AtomicReference<>(DEFAULT_RESUME);
+    private AtomicReference<Integer> fieldPrecision  = new AtomicReference<>(DEFAULT_FIELD_PRECISION);
+    private AtomicReference<Boolean> compensatedSums = new AtomicReference<>(DEFAULT_COMPENSATED_SUMS);
+    private AtomicReference<Integer> threads         = new AtomicReference<>(DEFAULT_THREADS);
+    private AtomicReference<Integer> statsInterval   = new AtomicReference<>(DEFAULT_STATS_INTERVAL);
+    private AtomicReference<Integer> seed            = new AtomicReference<>(DEFAULT_SEED);
 
     public ErosionParameters() {
+        bindParameter(widthParameter, width);
+        bindParameter(heightParameter, height);
         bindParameter(initialHeightParameter, initialHeight);
         bindParameter(initialNoiseParameter, initialNoise);
         bindParameter(noiseStrengthParameter, noiseStrength);
+        bindParameter(seedParameter, seed);
         bindParameter(blurStrengthParameter, blurStrength);
+        bindParameter(thermalRateParameter, thermalRate);
+        bindParameter(talusSlopeParameter, talusSlope);
         bindParameter(erodibilityParameter, erodibility);
         bindParameter(sedimentTransportParameter, sedimentTransport);
         bindParameter(carvingFactorParameter, carvingFactor);
+        bindParameter(flowEngineParameter, flowEngine);
+        bindParameter(erosionModelParameter, erosionModel);
+        bindParameter(areaExponentParameter, areaExponent);
+        bindParameter(slopeExponentParameter, slopeExponent);
+        bindParameter(timeStepParameter, timeStep);
+        bindParameter(upliftParameter, uplift);
+        bindParameter(diffusivityParameter, diffusivity);
+        bindParameter(dropletsParameter, droplets);
+        bindParameter(dropletLifetimeParameter, dropletLifetime);
+        bindParameter(inertiaParameter, inertia);
+        bindParameter(capacityParameter, capacity);
+        bindParameter(evaporationParameter, evaporation);
+        bindParameter(rainParameter, rain);
+        bindParameter(rainDependenceParameter, rainDependence);
+        bindParameter(dryingParameter, drying);
+        bindParameter(fillIntervalParameter, fillInterval);
+        bindParameter(strataDepthParameter, strataDepth);
+        bindParameter(strataEpochParameter, strataEpoch);
+        bindParameter(depositErodibilityParameter, depositErodibility);
+        bindParameter(pyramidLevelsParameter, pyramidLevels);
+        bindParameter(pyramidTicksParameter, pyramidTicks);
+        bindParameter(pyramidToleranceParameter, pyramidTolerance);
+        bindParameter(sleepThresholdParameter, sleepThreshold);
+        bindParameter(checkpointIntervalParameter, checkpointInterval);
+        bindParameter(resumeParameter, resume);
+        bindParameter(fieldPrecisionParameter, fieldPrecision);
+        bindParameter(compensatedSumsParameter, compensatedSums);
+        bindParameter(threadsParameter, threads);
+        bindParameter(statisticsIntervalParameter, statsInterval);
     }
 
     public synchronized void lock() {
@@ -109,6 +492,14 @@ class ErosionParameters {
         this.enableableValues.forEach(v -> v.setEnabled(true));
     }
 
+    public int getWidth() {
+        return this.width.get();
+    }
+
+    public int getHeight() {
+        return this.height.get();
+    }
+
     public float getInitialHeight() {
         return this.initialHeight.get();
     }
@@ -121,10 +512,22 @@ class ErosionParameters {
         return this.noiseStrength.get();
     }
 
+    public int getSeed() {
+        return this.seed.get();
+    }
+
     public float getBlurStrength() {
         return this.blurStrength.get();
     }
 
+    public float getThermalRate() {
+        return this.thermalRate.get();
+    }
+
+    public float getTalusSlope() {
+        return this.talusSlope.get();
+    }
+
     public float getErodibility() {
         return this.erodibility.get();
     }
@@ -137,12 +540,130 @@ class ErosionParameters {
         return this.carvingFactor.get();
     }
 
+    public FlowEngine getFlowEngine() {
+        return FLOW_ENGINES[this.flowEngine.get()];
+    }
+
+    public ErosionModel getErosionModel() {
+        return EROSION_MODELS[this.erosionModel.get()];
+    }
+
+    public float getAreaExponent() {
+        return this.areaExponent.get();
+    }
+
+    public float getSlopeExponent() {
+        return this.slopeExponent.get();
+    }
+
+    public float getTimeStep() {
+        return this.timeStep.get();
+    }
+
+    public float getUplift() {
+        return this.uplift.get();
+    }
+
+    public float getDiffusivity() {
+        return this.diffusivity.get();
+    }
+
+    public int getDroplets() {
+        return this.droplets.get();
+    }
+
+    public int getDropletLifetime() {
+        return this.dropletLifetime.get();
+    }
+
+    public float getInertia() {
+        return this.inertia.get();
+    }
+
+    public float getCapacity() {
+        return this.capacity.get();
+    }
+
+    public float getEvaporation() {
+        return this.evaporation.get();
+    }
+
+    public float getRain() {
+        return this.rain.get();
+    }
+
+    public float getRainDependence() {
+        return this.rainDependence.get();
+    }
+
+    public float getDrying() {
+        return this.drying.get();
+    }
+
+    public int getFillInterval() {
+        return this.fillInterval.get();
+    }
+
+    public int getStrataDepth() {
+        return this.strataDepth.get();
+    }
+
+    public int getStrataEpoch() {
+        return this.strataEpoch.get();
+    }
+
+    public float getDepositErodibility() {
+        return this.depositErodibility.get();
+    }
+
+    public int getPyramidLevels() {
+        return this.pyramidLevels.get();
+    }
+
+    public int getPyramidTicks() {
+        return this.pyramidTicks.get();
+    }
+
+    public float getPyramidTolerance() {
+        return this.pyramidTolerance.get();
+    }
+
+    public float getSleepThreshold() {
+        return this.sleepThreshold.get();
+    }
+
+    public int getCheckpointInterval() {
+        return this.checkpointInterval.get();
+    }
+
+    public boolean getResume() {
+        return this.resume.get();
+    }
+
+    public FieldPrecision getFieldPrecision() {
+        return FIELD_PRECISIONS[this.fieldPrecision.get()];
+    }
+
+    public boolean getCompensatedSums() {
+        return this.compensatedSums.get();
+    }
+
+    public int getThreads() {
+        return this.threads.get();
+    }
+
+    public int getStatisticsInterval() {
+        return this.statsInterval.get();
+    }
+
     public DistinguishedTree<String, SimulationParameterGroup> getParameterTree() {
         return new DistinguishedTree<>(
             "Erosion",
             List.of(
                 new DistinguishedTree<>(
                     new SimulationParameterGroup.Builder()
+                        .addIntegerParameter(widthParameter)
+                        .addIntegerParameter(heightParameter)
                         .addFloatParameter(initialHeightParameter)
                         .build()),
                 new DistinguishedTree<>(
@@ -152,6 +673,7 @@ class ErosionParameters {
                             new SimulationParameterGroup.Builder()
                                 .addFloatParameter(initialNoiseParameter)
                                 .addFloatParameter(noiseStrengthParameter)
+                                .addIntegerParameter(seedParameter)
                                 .build()
                         ))),
                 new DistinguishedTree<>(
@@ -160,6 +682,8 @@ class ErosionParameters {
                         new DistinguishedTree<>(
                             new SimulationParameterGroup.Builder()
                                 .addFloatParameter(blurStrengthParameter)
+                                .addFloatParameter(thermalRateParameter)
+                                .addFloatParameter(talusSlopeParameter)
                                 .build()))),
                 new DistinguishedTree<>(
                     "Fluvial",
@@ -169,6 +693,65 @@ class ErosionParameters {
                                 .addFloatParameter(erodibilityParameter)
                                 .addFloatParameter(sedimentTransportParameter)
                                 .addFloatParameter(carvingFactorParameter)
+                                .addIntegerParameter(flowEngineParameter)
+                                .addIntegerParameter(erosionModelParameter)
+                                .addIntegerParameter(fillIntervalParameter)
+                                .build()))),
+                new DistinguishedTree<>(
+                    "Stream Power",
+                    List.of(
+                        new DistinguishedTree<>(
+                            new SimulationParameterGroup.Builder()
+                                .addFloatParameter(areaExponentParameter)
+                                .addFloatParameter(slopeExponentParameter)
+                                .addFloatParameter(timeStepParameter)
+                                .addFloatParameter(upliftParameter)
+                                .addFloatParameter(diffusivityParameter)
+                                .build()))),
+                new DistinguishedTree<>(
+                    "Droplets",
+                    List.of(
+                        new DistinguishedTree<>(
+                            new SimulationParameterGroup.Builder()
+                                .addIntegerParameter(dropletsParameter)
+                                .addIntegerParameter(dropletLifetimeParameter)
+                                .addFloatParameter(inertiaParameter)
+                                .addFloatParameter(capacityParameter)
+                                .addFloatParameter(evaporationParameter)
+                                .build()))),
+                new DistinguishedTree<>(
+                    "Hydrology",
+                    List.of(
+                        new DistinguishedTree<>(
+                            new SimulationParameterGroup.Builder()
+                                .addFloatParameter(rainParameter)
+                                .addFloatParameter(rainDependenceParameter)
+                                .addFloatParameter(dryingParameter)
+                                .build()))),
+                new DistinguishedTree<>(
+                    "Strata",
+                    List.of(
+                        new DistinguishedTree<>(
+                            new SimulationParameterGroup.Builder()
+                                .addIntegerParameter(strataDepthParameter)
+                                .addIntegerParameter(strataEpochParameter)
+                                .addFloatParameter(depositErodibilityParameter)
+                                .build()))),
+                new DistinguishedTree<>(
+                    "Execution",
+                    List.of(
+                        new DistinguishedTree<>(
+                            new SimulationParameterGroup.Builder()
+                                .addIntegerParameter(pyramidLevelsParameter)
+                                .addIntegerParameter(pyramidTicksParameter)
+                                .addFloatParameter(pyramidToleranceParameter)
+                                .addFloatParameter(sleepThresholdParameter)
+                                .addIntegerParameter(checkpointIntervalParameter)
+                                .addBooleanParameter(resumeParameter)
+                                .addIntegerParameter(fieldPrecisionParameter)
+                                .addBooleanParameter(compensatedSumsParameter)
+                                .addIntegerParameter(threadsParameter)
+                                .addIntegerParameter(statisticsIntervalParameter)
                                 .build())))));
     }
 
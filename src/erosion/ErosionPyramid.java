@@ -0,0 +1,236 @@
+package erosion;
+
+import util.data.grids.Resampling;
+import util.data.grids.ScalarField2D;
+
+/**
+ * Erodes a terrain coarse to fine, for maps too large to bring close to equilibrium at full
+ * resolution. The initial heights are averaged down into a pyramid of grids, each half the size of
+ * the one above. The coarsest grid is evolved first; the change it went through is then interpolated
+ * up onto the initial heights of the next finer grid, which is evolved in turn, and so on down to
+ * the full resolution. Every level evolves with the same parameters and so the same kernels, its
+ * rates scaled to the size of its cells, and large features form at the coarse levels, where each
+ * tick is cheap and moves material far. The coarser levels run on the threads of the full
+ * resolution state.
+ *
+ * A level is refined once it nears equilibrium, when the mean change of its heights over a tick
+ * falls below a tolerance, or after a largest number of ticks if it never does.
+ *
+ * A pyramid is refined a step at a time, each about as costly as one tick of the full resolution, so
+ * that a simulation can show a frame between steps.
+ */
+public final class ErosionPyramid {
+
+    private final ErosionState state;
+    private final ErosionParameters parameters;
+    private final int ticks;
+    private final float tolerance;
+
+    private final ScalarField2D[] initial;
+
+    // The level being evolved, zero being the full resolution, the ticks it has evolved by and the
+    // mean change of its heights over the last of them
+    private ErosionState current;
+    private int level;
+    private int tick = 0;
+    private float change = Float.POSITIVE_INFINITY;
+
+    // The heights of the current level before its last tick
+    private float[] before;
+
+    /**
+     * @param state the full resolution state, evolved from its current heights
+     * @param parameters the parameters every level evolves by
+     * @param levels the number of levels coarser than the full resolution
+     * @param ticks the most ticks to evolve every level by, the full resolution included
+     * @param tolerance the mean height change over a tick below which a level is refined
+     */
+    public ErosionPyramid(
+        final ErosionState state,
+        final ErosionParameters parameters,
+        final int levels,
+        final int ticks,
+        final float tolerance) {
+
+        this.state      = state;
+        this.parameters = parameters;
+        this.ticks      = ticks;
+        this.tolerance  = tolerance;
+        this.initial    = new ScalarField2D[levels + 1];
+
+        initial[0] = copy(state.getHeights(), new ScalarField2D(state.getHeights().getWidth(), state.getHeights().getHeight()));
+
+        for (int k = 1; k <= levels; ++k) {
+            initial[k] = new ScalarField2D(
+                (initial[k - 1].getWidth() + 1) / 2,
+                (initial[k - 1].getHeight() + 1) / 2);
+
+            Resampling.downsample(initial[k - 1], initial[k]);
+        }
+
+        this.level   = levels;
+        this.current = levelState(levels);
+
+        copy(initial[levels], current.getHeights());
+    }
+
+    /**
+     * Refines the whole pyramid at once.
+     *
+     * @param state the full resolution state, evolved from its current heights
+     * @param parameters the parameters every level evolves by
+     * @param levels the number of levels coarser than the full resolution
+     * @param ticks the most ticks to evolve every level by, the full resolution included
+     * @param tolerance the mean height change over a tick below which a level is refined
+     */
+    public static void refine(
+        final ErosionState state,
+        final ErosionParameters parameters,
+        final int levels,
+        final int ticks,
+        final float tolerance) {
+
+        final ErosionPyramid pyramid = new ErosionPyramid(state, parameters, levels, ticks, tolerance);
+
+        while (!pyramid.isDone())
+            pyramid.step();
+    }
+
+    /**
+     * Evolves the levels by ticks until as many cells have evolved as the full resolution holds, or
+     * the pyramid is done. A level is carried down to the next finer one once it has settled.
+     */
+    public void step() {
+        final long budget = (long) state.getWidth() * state.getHeight();
+        long evolved = 0;
+
+        while (!isDone() && evolved < budget) {
+            if (!isSettled()) {
+                evolve();
+                evolved += (long) current.getWidth() * current.getHeight();
+            } else {
+                descend();
+            }
+        }
+    }
+
+    /**
+     * @return whether the full resolution has settled
+     */
+    public boolean isDone() {
+        return level == 0 && isSettled();
+    }
+
+    /**
+     * @return whether the current level changed by less than the tolerance over its last tick, or
+     *         has evolved by the most ticks allowed
+     */
+    private boolean isSettled() {
+        return change < tolerance || tick >= ticks;
+    }
+
+    /**
+     * @return the level being evolved, zero being the full resolution
+     */
+    public int getLevel() {
+        return this.level;
+    }
+
+    /**
+     * @return the number of levels coarser than the full resolution
+     */
+    public int getLevels() {
+        return this.initial.length - 1;
+    }
+
+    /**
+     * @return the number of ticks the current level has evolved by
+     */
+    public int getTick() {
+        return this.tick;
+    }
+
+    /**
+     * @return the most ticks every level evolves by
+     */
+    public int getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * @return the mean change of the heights of the current level over its last tick
+     */
+    public float getChange() {
+        return this.change;
+    }
+
+    private void evolve() {
+        final int width  = current.getWidth();
+        final int height = current.getHeight();
+
+        if (before == null || before.length != width * height)
+            before = new float[width * height];
+
+        for (int j = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i)
+                before[j * width + i] = current.getHeights().get(i, j);
+
+        current.evolve();
+        ++tick;
+
+        // The heights may be a different field after the tick
+        final ScalarField2D heights = current.getHeights();
+        double total = 0.0;
+
+        for (int j = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i)
+                total += Math.abs(heights.get(i, j) - before[j * width + i]);
+
+        change = (float) (total / before.length);
+    }
+
+    private void descend() {
+        final ScalarField2D below  = initial[level];
+        final ScalarField2D eroded = new ScalarField2D(below.getWidth(), below.getHeight());
+
+        for (int j = 0; j < below.getHeight(); ++j)
+            for (int i = 0; i < below.getWidth(); ++i)
+                eroded.set(i, j, current.getHeights().get(i, j) - below.get(i, j));
+
+        --level;
+
+        final ErosionState finer = levelState(level);
+
+        copy(initial[level], finer.getHeights());
+        Resampling.addUpsampled(eroded, finer.getHeights());
+
+        final ScalarField2D sediment = new ScalarField2D(finer.getWidth(), finer.getHeight());
+        Resampling.addUpsampled(current.getSediment(), sediment);
+        finer.storeSediment(sediment);
+
+        current = finer;
+        tick    = 0;
+        change  = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the full resolution state for level zero, or else a new state whose cells are
+     *         {@code 2^k} cells of the full resolution wide
+     */
+    private ErosionState levelState(final int k) {
+        if (k == 0)
+            return state;
+
+        final ErosionState coarse = new ErosionState(parameters, initial[k].getWidth(), initial[k].getHeight(), state.getBands());
+        coarse.setCellSize(1 << k);
+        return coarse;
+    }
+
+    private static ScalarField2D copy(final ScalarField2D from, final ScalarField2D to) {
+        for (int j = 0; j < from.getHeight(); ++j)
+            for (int i = 0; i < from.getWidth(); ++i)
+                to.set(i, j, from.get(i, j));
+
+        return to;
+    }
+}
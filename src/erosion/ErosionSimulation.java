@@ -1,9 +1,17 @@
 package erosion;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javafx.scene.image.PixelBuffer;
@@ -18,13 +26,14 @@ import util.counting.Cardinals.Two;
 import util.data.algebraic.HomTuple;
 import util.data.algebraic.Maybe;
 import util.data.algebraic.Unit;
+import util.data.grids.ScalarField2D;
 import util.data.trees.DistinguishedTree;
 import util.math.instances.doubles.vectors.Vec2D;
 
 public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
 
-    public static final int WIDTH  = 700;
-    public static final int HEIGHT = 500;
+    // Checkpoints are kept in the directory the simulation was started from
+    private static final Path CHECKPOINT_PATH = Paths.get("erosion.checkpoint");
 
     private final ErosionParameters parameters = new ErosionParameters();
 
@@ -33,34 +42,96 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
 
     private Maybe<ErosionState> state = Maybe.nothing();
 
+    // A new state is refined coarse to fine over its first frames, if a pyramid is asked for
+    private Maybe<ErosionPyramid> pyramid = Maybe.nothing();
+
+    private volatile String status = "";
+
+    // The statistics the state last sampled, shown after the tick in the status line
+    private volatile String statistics = "";
+
     private ErosionSimulationMode mode = ErosionSimulationMode.HEIGHT;
 
     private List<SimulationListener> listeners = new ArrayList<>();
 
     private ErosionThread thread = new ErosionThread();
 
+    // Checkpoints are written one at a time off the simulation thread
+    private final ExecutorService checkpointWriter = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread writer = new Thread(runnable, "Erosion Checkpoint Writer");
+        writer.setDaemon(true);
+        return writer;
+    });
+    private Future<?> checkpointing = CompletableFuture.completedFuture(null);
+
     public ErosionSimulation() {
+        allocatePixels(this.parameters.getWidth(), this.parameters.getHeight());
+    }
+
+    /**
+     * Replaces the pixel buffer with an opaque one of the given size.
+     */
+    private void allocatePixels(final int width, final int height) {
         final PixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraPreInstance();
 
-        byteBuffer = ByteBuffer.allocateDirect(4 * WIDTH * HEIGHT);
-        pixelBuffer = new PixelBuffer<ByteBuffer>(WIDTH, HEIGHT, byteBuffer, pixelFormat);
+        byteBuffer = ByteBuffer.allocateDirect(4 * width * height);
+        pixelBuffer = new PixelBuffer<ByteBuffer>(width, height, byteBuffer, pixelFormat);
 
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j) {
-                int offset = 4 * (WIDTH * j + i);
+        for (int i = 0; i < width; ++i)
+            for (int j = 0; j < height; ++j) {
+                int offset = 4 * (width * j + i);
                 byteBuffer.put(offset + 3, (byte) 0xFF); // Set opaque
             }
     }
 
+    /**
+     * Resumes from the last checkpoint if asked to and there is one, and starts afresh otherwise.
+     */
+    private ErosionState newState() {
+        ErosionState state = null;
+
+        if (this.parameters.getResume() && Files.exists(CHECKPOINT_PATH)) {
+            try {
+                state = ErosionCheckpoint.read(CHECKPOINT_PATH).restore(this.parameters);
+            } catch (final IOException e) {
+                System.out.println(e);
+            }
+        }
+
+        if (state == null)
+            state = getState();
+
+        this.statistics = "";
+        state.addStatisticsListener(sample -> this.statistics = describeStatistics(sample));
+
+        this.pyramid = state.getTick() == 0 && this.parameters.getPyramidLevels() > 0
+            ? Maybe.just(new ErosionPyramid(
+                state,
+                this.parameters,
+                this.parameters.getPyramidLevels(),
+                this.parameters.getPyramidTicks(),
+                this.parameters.getPyramidTolerance()))
+            : Maybe.nothing();
+
+        // The grid size is only fixed once the parameters are locked, or by the checkpoint
+        if (pixelBuffer.getWidth() != state.getWidth() || pixelBuffer.getHeight() != state.getHeight())
+            allocatePixels(state.getWidth(), state.getHeight());
+
+        return state;
+    }
+
     private ErosionState getState() {
+        final float halfWidth  = this.parameters.getWidth() / 2f;
+        final float halfHeight = this.parameters.getHeight() / 2f;
+
         final ErosionState state = 
             ErosionState.fromHeightFunction(
                 this.parameters,
                 row -> col -> 
-                    Functional.let(Math.abs(350f - col), x ->
-                    Functional.let(Math.abs(250f - row), y ->
-                    Functional.let((float)x / 350f, normX -> 
-                    Functional.let((float)y / 250f, normY ->
+                    Functional.let(Math.abs(halfWidth - col), x ->
+                    Functional.let(Math.abs(halfHeight - row), y ->
+                    Functional.let((float)x / halfWidth, normX -> 
+                    Functional.let((float)y / halfHeight, normY ->
 
                     normX < 0.5 ? 15f : 1f
                     //15f * (1.0f - (float)Math.sqrt(normX * normX + normY * normY))
@@ -72,18 +143,46 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
         return state;
     }
 
+    /**
+     * @return how far the simulation has got, as of the latest frame
+     */
+    public String getStatus() {
+        return this.status;
+    }
+
     @Override
     public DistinguishedTree<String, SimulationParameterGroup> getParameters() {
         return parameters.getParameterTree();
     }
 
+    /**
+     * Copies the state and has the copy written in the background. Must be called between ticks.
+     *
+     * @param state the state to checkpoint
+     * @param force whether to queue the checkpoint behind one still being written rather than skip it
+     */
+    private synchronized void checkpoint(final ErosionState state, final boolean force) {
+        if (!force && !this.checkpointing.isDone())
+            return;
+
+        final ErosionCheckpoint checkpoint = ErosionCheckpoint.capture(state);
+
+        this.checkpointing = this.checkpointWriter.submit(() -> {
+            try {
+                checkpoint.write(CHECKPOINT_PATH);
+            } catch (final IOException e) {
+                System.out.println(e);
+            }
+        });
+    }
+
     @Override
     public void play() {
         this.parameters.lock();
         
         this.state.match(
             __ -> {
-                this.state = Maybe.just(getState());
+                this.state = Maybe.just(newState());
                 return Unit.unit();
             },
             s -> Unit.unit());
@@ -99,9 +198,20 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
 
     @Override
     public void end() {
+        // The state is checkpointed and its threads stopped once its last tick is done, by the
+        // thread evolving it if any
+        Maybe.bind(this.state, s -> {
+            if (this.parameters.getCheckpointInterval() > 0 && !thread.checkpointOnStop(s))
+                checkpoint(s, true);
+            if (!thread.closeOnStop(s))
+                s.close();
+            return Maybe.just(Unit.unit());
+        });
+
         thread.pause();
         this.parameters.unlock();
-        this.state = Maybe.nothing();
+        this.state   = Maybe.nothing();
+        this.pyramid = Maybe.nothing();
         thread.postImage();
     }
 
@@ -110,7 +220,7 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
         this.parameters.lock();
         this.state.match(
             __ -> {
-                this.state = Maybe.just(getState());
+                this.state = Maybe.just(newState());
                 return Unit.unit();
             },
             s -> Unit.unit());
@@ -132,6 +242,11 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
 
         private AtomicBoolean unlocked = new AtomicBoolean(false);
 
+        private boolean started = false;
+        private boolean stopped = false;
+        private Maybe<ErosionState> lastCheckpoint = Maybe.nothing();
+        private Maybe<ErosionState> lastClose      = Maybe.nothing();
+
         public ErosionThread() { }
 
         public void run() {
@@ -142,6 +257,25 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
                 generateNextFrame();
                 ++count;
             }
+
+            final Maybe<ErosionState> last;
+            final Maybe<ErosionState> closing;
+
+            synchronized (this) {
+                stopped = true;
+                last    = lastCheckpoint;
+                closing = lastClose;
+            }
+
+            Maybe.bind(last, s -> {
+                checkpoint(s, true);
+                return Maybe.just(Unit.unit());
+            });
+
+            Maybe.bind(closing, s -> {
+                s.close();
+                return Maybe.just(Unit.unit());
+            });
         }
 
         public synchronized void pause() {
@@ -150,60 +284,133 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
 
         public synchronized void play() {
             unlocked.set(true);
+            started = true;
             this.start();
         }
 
+        /**
+         * Asks the thread to checkpoint the state once it stops.
+         *
+         * @param state the state to checkpoint
+         * @return whether the thread will, or false if it is not running
+         */
+        public synchronized boolean checkpointOnStop(final ErosionState state) {
+            if (!started || stopped)
+                return false;
+
+            lastCheckpoint = Maybe.just(state);
+            return true;
+        }
+
+        /**
+         * Asks the thread to stop the threads of the state once it stops.
+         *
+         * @param state the state to close
+         * @return whether the thread will, or false if it is not running
+         */
+        public synchronized boolean closeOnStop(final ErosionState state) {
+            if (!started || stopped)
+                return false;
+
+            lastClose = Maybe.just(state);
+            return true;
+        }
+
         public void generateNextFrame() {
-            Maybe.bind(state, s -> { s.evolve(); return Maybe.just(Unit.unit()); });
+            Maybe.bind(state, s -> {
+                status = pyramid.match(
+                    __ -> {
+                        s.evolve();
+
+                        final int interval = parameters.getCheckpointInterval();
+
+                        if (interval > 0 && s.getTick() % interval == 0)
+                            checkpoint(s, false);
+
+                        return "Tick " + s.getTick() + "    " + statistics;
+                    },
+                    p -> {
+                        p.step();
+
+                        if (p.isDone())
+                            pyramid = Maybe.nothing();
+
+                        return String.format(
+                            "Pyramid level %d of %d, tick %d of at most %d, change %.3g per tick",
+                            p.getLevels() - p.getLevel() + 1,
+                            p.getLevels() + 1,
+                            p.getTick(),
+                            p.getTicks(),
+                            p.getChange());
+                    });
+
+                return Maybe.just(Unit.unit());
+            });
             postImage();
         }
 
         public void postImage() {
             Maybe.bind(state, s -> {
 
-                final float[][] heights = s.getHeights();
+                final ScalarField2D heightField = s.getHeights();
+                final float[] heights = heightField.getValues();
+
+                final int width  = s.getWidth();
+                final int height = s.getHeight();
 
                 switch(mode) {
                     case HEIGHT:
-                        for (int i = 0; i < WIDTH; ++i)
-                            for (int j = 0; j < HEIGHT; ++j) {
-                                int offset = 4 * (WIDTH * j + i);
+                        for (int j = 0; j < height; ++j) {
+                            final int row = heightField.index(0, j);
+
+                            for (int i = 0; i < width; ++i) {
+                                int offset = 4 * (width * j + i);
                                 byte value = (byte)
-                                    (squeeze(heights[i][j] / 4f)
+                                    (squeeze(heights[row + i] / 4f)
                                     * 0xFF);
 
                                 byteBuffer.put(offset + 0, value);
                                 byteBuffer.put(offset + 1, value);
                                 byteBuffer.put(offset + 2, value);
                             }
+                        }
                         break;
 
                 case SEDIMENT:
-                    final float[][] sediment = s.getSediment();
+                    final ScalarField2D sedimentField = s.getSediment();
+                    final float[] sediment = sedimentField.getValues();
+
+                    for (int j = 0; j < height; ++j) {
+                        final int row = sedimentField.index(0, j);
 
-                    for (int i = 0; i < WIDTH; ++i)
-                        for (int j = 0; j < HEIGHT; ++j) {
-                            int offset = 4 * (WIDTH * j + i);
+                        for (int i = 0; i < width; ++i) {
+                            int offset = 4 * (width * j + i);
                             byte value = (byte)
-                                (squeeze(5f * sediment[i][j])
+                                (squeeze(5f * sediment[row + i])
                                 * 0xFF);
 
                             byteBuffer.put(offset + 0, value);
                             byteBuffer.put(offset + 1, value);
                             byteBuffer.put(offset + 2, value);
                         }
+                    }
                     break;
                 
                 case SLOPE:
-                    for (int i = 1; i < WIDTH - 1; ++i) {
-                        for (int j = 1; j < HEIGHT - 1; ++j) {
-                            final float ref = heights[i][j];
+                    final int stride = heightField.getStride();
+
+                    for (int j = 1; j < height - 1; ++j) {
+                        final int row = heightField.index(0, j);
 
-                            final float diffX2 = heights[i + 1][j] - ref;
-                            final float diffX1 = heights[i - 1][j] - ref;
+                        for (int i = 1; i < width - 1; ++i) {
+                            final int   cell = row + i;
+                            final float ref  = heights[cell];
 
-                            final float diffY1 = heights[i][j + 1] - ref;
-                            final float diffY2 = heights[i][j - 1] - ref;
+                            final float diffX2 = heights[cell + 1] - ref;
+                            final float diffX1 = heights[cell - 1] - ref;
+
+                            final float diffY1 = heights[cell + stride] - ref;
+                            final float diffY2 = heights[cell - stride] - ref;
 
                             final float diffX = diffX2 - diffX1;
                             final float diffY = diffY2 - diffY1;
@@ -218,7 +425,7 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
 
                             final Color color = Color.hsb(360 * angle, 0.5f + 0.5f * squeeze(net), 0.5f + 0.5f * squeeze(mag));
 
-                            final int offset = 4 * (WIDTH * j + i);
+                            final int offset = 4 * (width * j + i);
 
                             byteBuffer.put(offset + 0, (byte) (color.getBlue() * 0xFF));
                             byteBuffer.put(offset + 1, (byte) (color.getGreen() * 0xFF));
@@ -238,6 +445,17 @@ public class ErosionSimulation implements Simulation<ErosionSimulationMode> {
         }
     }
 
+    private static String describeStatistics(final ErosionStatistics statistics) {
+        return String.format(
+            "Height: total %.6g, %.3f to %.3f    Sediment: total %.6g, %.3f to %.3f",
+            statistics.getHeightSum(),
+            statistics.getMinHeight(),
+            statistics.getMaxHeight(),
+            statistics.getSedimentSum(),
+            statistics.getMinSediment(),
+            statistics.getMaxSediment());
+    }
+
     private static float squeeze(float value) {
         return 1.0f - 2.0f / ((float)Math.pow(2.0, value) + 1f);
     }
@@ -1,24 +1,312 @@
 package erosion;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
+import util.concurrent.RowBandScheduler;
+import util.data.algebraic.Maybe;
 import util.data.algebraic.Prod;
 import util.data.algebraic.Unit;
+import util.data.grids.HalfField2D;
+import util.data.grids.HalfFloat;
+import util.data.grids.RowStatistics;
+import util.data.grids.ScalarField2D;
+import util.data.grids.ScalarFieldPool;
+import util.math.CounterRandom;
 
 public class ErosionState {
 
-    private static final int WIDTH = ErosionSimulation.WIDTH;
-    private static final int HEIGHT = ErosionSimulation.HEIGHT;
+    // Neighbour offsets in the order the reference kernel visits them
+    private static final int[] NEIGHBOUR_DI = { -1,  0, 0, 1 };
+    private static final int[] NEIGHBOUR_DJ = {  0, -1, 1, 0 };
+
+    // Width of the border around every field, which wraps onto the opposite edge
+    private static final int HALO = 1;
+
+    // The side of the tiles that sleep once they settle
+    private static final int TILE_SIZE = 32;
+
+    // Newton iterations allowed per cell when the slope exponent is not one
+    private static final int   NEWTON_ITERATIONS = 10;
+    private static final float NEWTON_TOLERANCE  = 1e-5f;
+
+    // Red-black Gauss-Seidel sweeps solving each step of hillslope diffusion
+    private static final int DIFFUSION_SWEEPS = 8;
+
+    // Droplets are split into this many batches whatever the number of threads, so that merging the
+    // deltas of the batches in order gives the same result on every run. The batches go to the pool
+    // even when there are fewer than twice as many as threads, as each is worth a thread.
+    private static final int DROPLET_BATCHES = 16;
+
+    private static final float DROPLET_GRAVITY      = 4f;
+    private static final float DROPLET_MIN_CAPACITY = 0.01f;
+    private static final long  DROPLET_STREAM       = 1L;
+
+    // The time step of the virtual pipes, and the gravity times the cross section over the length of a pipe
+    private static final float PIPE_TIME_STEP   = 0.1f;
+    private static final float PIPE_CONDUCTANCE = 9.81f;
+    // Streams keep some capacity over flat ground
+    private static final float PIPE_MIN_TILT    = 0.01f;
+    // Water pools rather than scours as it nears this depth, so pits stop deepening under their lakes
+    private static final float PIPE_SCOUR_DEPTH = 1f;
 
     private final ErosionParameters parameters;
 
-    private float[][] heights  = new float[WIDTH][HEIGHT];
-    private float[][] sediment = new float[WIDTH][HEIGHT];
-    private float[][] water    = new float[WIDTH][HEIGHT];
-    
-    private ErosionState(final ErosionParameters parameters, final boolean initialize) {
+    private final int width;
+    private final int height;
+
+    // Swapped with scratch fields by kernels that cannot update them in place
+    private ScalarField2D heights;
+    private ScalarField2D sediment;
+    private ScalarField2D water;
+
+    // The sediment and water stored as halves in place of the floats above, which are null
+    // meanwhile. A kernel that cannot read halves stores them as floats for good when first run.
+    private HalfField2D sedimentHalves;
+    private HalfField2D waterHalves;
+
+    // The flow of water from each cell to each of its neighbours through the virtual pipes
+    private ScalarField2D[] outflow;
+
+    private final ScalarFieldPool scratch = new ScalarFieldPool();
+    private final RowBandScheduler bands;
+    private final CounterRandom random;
+    private final CounterRandom dropletRandom;
+
+    // Every field shares this layout, so one set of offsets serves them all
+    private final int[] offsets;
+
+    // Like the other subsystems only some kernels use, both are built on first use
+    private DepressionFill depressions;
+    private FlowAccumulation drainage;
+
+    // Kernels skip sleeping tiles, and record the changes they make while tracking
+    private final ActiveTiles tiles;
+    private boolean tracking = false;
+
+    // The low bits lost by the latest changes to the heights and sediment, or null until first kept
+    private ScalarField2D heightCarry;
+    private ScalarField2D sedimentCarry;
+
+    // The deposits laid over the bedrock, a column for each cell numbered row after row without the
+    // halo, or null until first kept
+    private Stratigraphy strata;
+
+    private final ScalarField2D[] batchHeights = new ScalarField2D[DROPLET_BATCHES];
+    private final ScalarField2D[] batchWater   = new ScalarField2D[DROPLET_BATCHES];
+
+    // Where each droplet of the current tick evaporated, and the sediment it left there
+    private int[]   dropletCells = new int[0];
+    private float[] dropletLoads = new float[0];
+
+    // Bit k is set when a cell sends material to its neighbour k, laid out like the fields
+    private byte[] routes;
+
+    private final float[][] blurMask = new float[][] {
+        new float[]{ 0.10f, 0.15f, 0.10f },
+        new float[]{ 0.15f, 0.00f, 0.15f },
+        new float[]{ 0.10f, 0.15f, 0.10f }
+    };
+
+    private long tick = 0;
+
+    // The width of a cell in cells of the full resolution, above one on the coarse levels of a pyramid
+    private int cellSize = 1;
+
+    // Statistics are recorded by the kernels as they write each row, on sampled ticks only
+    private final RowStatistics heightStatistics;
+    private final RowStatistics sedimentStatistics;
+
+    private boolean sampling         = false;
+    private boolean heightsRecorded  = false;
+    private boolean sedimentRecorded = false;
+
+    // Samples are written in turn into one of two frames, so that taking one allocates nothing; a
+    // sample stays as it is until the sample after next
+    private final ErosionStatistics[] frames = new ErosionStatistics[] {
+        new ErosionStatistics(0L, 0.0, 0.0, 0f, 0f, 0f, 0f),
+        new ErosionStatistics(0L, 0.0, 0.0, 0f, 0f, 0f, 0f)
+    };
+    private final List<Maybe<ErosionStatistics>> samples = List.of(Maybe.just(frames[0]), Maybe.just(frames[1]));
+    private int frame = 0;
+
+    private volatile Maybe<ErosionStatistics> statistics = Maybe.nothing();
+    private final List<Consumer<ErosionStatistics>> statisticsListeners = new CopyOnWriteArrayList<>();
+
+    // The pass under way, read by kernels built once so that passes allocate nothing. Every pass sets
+    // the fields named after its kernel just before running it.
+    private final RowBandScheduler.BandKernel perturbBand = this::perturbBand;
+
+    private float         perturbation;
+    private RowStatistics perturbStatistics;
+
+    private final RowBandScheduler.BandKernel erodeBand = this::erodeBand;
+
+    private ScalarField2D erodeEroded;
+    private float         erodeErodibility;
+    private float         erodeAreaExponent;
+    private float         erodeSlopeExponent;
+
+    private final RowBandScheduler.BandKernel diffuseBand = this::diffuseBand;
+
+    private ScalarField2D diffuseSource;
+    private float         diffuseRate;
+    private int           diffuseOutlet;
+    private int           diffuseColour;
+
+    private final RowBandScheduler.BandKernel rollBand  = this::rollBand;
+    private final RowBandScheduler.BandKernel mergeBand = this::mergeBand;
+
+    private int   rollCount;
+    private int   rollLifetime;
+    private float rollInertia;
+    private float rollCapacity;
+    private float rollErosion;
+    private float rollDeposition;
+    private float rollEvaporation;
+
+    private final RowBandScheduler.BandKernel stencilBand = this::stencilBand;
+
+    private ScalarField2D stencilDeltaH;
+    private ScalarField2D stencilDeltaS;
+    private float         stencilErodibility;
+    private float         stencilTransport;
+    private float         stencilCarving;
+    private float         stencilThermalRate;
+    private float         stencilTalus;
+    private boolean       stencilFlowing;
+
+    private final RowBandScheduler.BandKernel routeBand  = this::routeBand;
+    private final RowBandScheduler.BandKernel gatherBand = this::gatherBand;
+
+    private ScalarField2D routeKeepH;
+    private ScalarField2D routeKeepS;
+    private ScalarField2D routeSendH;
+    private ScalarField2D routeSendS;
+    private float         routeErodibility;
+    private float         routeTransport;
+    private float         routeCarving;
+    private RowStatistics gatherHeightStatistics;
+    private RowStatistics gatherSedimentStatistics;
+
+    private final RowBandScheduler.BandKernel blurRowsBand    = this::blurRowsBand;
+    private final RowBandScheduler.BandKernel blurColumnsBand = this::blurColumnsBand;
+    private final RowBandScheduler.BandKernel blurBand        = this::blurBand;
+
+    private ScalarField2D blurSource;
+    private ScalarField2D blurRows;
+    private ScalarField2D blurBlurred;
+    private float[][]     blurWeights;
+    private RowStatistics blurStatistics;
+
+    private final RowBandScheduler.BandKernel precipitateBand = this::precipitateBand;
+
+    private float precipitateAmount;
+    private float precipitateDependence;
+
+    private final RowBandScheduler.BandKernel pipeFlowBand      = this::pipeFlowBand;
+    private final RowBandScheduler.BandKernel pipeTransportBand = this::pipeTransportBand;
+    private final RowBandScheduler.BandKernel settleBand        = this::settleBand;
+
+    private ScalarField2D pipeMoved;
+    private ScalarField2D pipeCarried;
+    private ScalarField2D pipeCapacities;
+    private float         pipeCapacity;
+    private float         settleErosion;
+    private float         settleDeposition;
+    private RowStatistics settleHeightStatistics;
+    private RowStatistics settleSedimentStatistics;
+
+    private final RowBandScheduler.BandKernel applyBand = this::applyBand;
+
+    private ScalarField2D applyDelta;
+    private ScalarField2D applyValue;
+    private HalfField2D   applyHalves;
+    private ScalarField2D applyCarry;
+    private RowStatistics applyStatistics;
+
+    private final RowBandScheduler.BandKernel snapshotBand = this::snapshotBand;
+
+    private ScalarField2D snapshotField;
+    private ScalarField2D snapshotCopy;
+
+    private final RowBandScheduler.BandKernel layerBand = this::layerBand;
+
+    private Stratigraphy  layerStrata;
+    private ScalarField2D layerBefore;
+    private float         layerUplift;
+    private int           layerOutlet;
+    private int           layerAge;
+
+    /**
+     * Constructs a flat state of any size evolving on the given threads, for example one level of
+     * an {@link ErosionPyramid} sharing the threads of the full resolution state.
+     *
+     * @param parameters the parameters to evolve by
+     * @param width the number of columns of the grid
+     * @param height the number of rows of the grid
+     * @param bands the threads to evolve on, which the state does not close
+     */
+    ErosionState(final ErosionParameters parameters, final int width, final int height, final RowBandScheduler bands) {
+        this(parameters, width, height, parameters.getSeed(), bands);
+    }
+
+    /**
+     * Constructs a flat state of any size drawing random numbers from the given seed, for example
+     * one restored from an {@link ErosionCheckpoint}.
+     *
+     * @param parameters the parameters to evolve by
+     * @param width the number of columns of the grid
+     * @param height the number of rows of the grid
+     * @param seed the seed to draw random numbers from
+     */
+    ErosionState(final ErosionParameters parameters, final int width, final int height, final long seed) {
+        this(parameters, width, height, seed, new RowBandScheduler(parameters.getThreads()));
+    }
+
+    /**
+     * Constructs a flat state holding only the fields every kernel uses. The pipes, routes, drainage,
+     * depression fill, carries and strata are built by the first kernel that needs them, and the
+     * tiles are split finer than the grid only if tiles can sleep.
+     */
+    private ErosionState(
+        final ErosionParameters parameters,
+        final int width,
+        final int height,
+        final long seed,
+        final RowBandScheduler bands) {
+
         this.parameters = parameters;
+        this.width      = width;
+        this.height     = height;
+
+        this.heights = new ScalarField2D(width, height, HALO);
+
+        if (parameters.getFieldPrecision() == FieldPrecision.HALF) {
+            this.sedimentHalves = new HalfField2D(width, height, HALO);
+            this.waterHalves    = new HalfField2D(width, height, HALO);
+        } else {
+            this.sediment = new ScalarField2D(width, height, HALO);
+            this.water    = new ScalarField2D(width, height, HALO);
+        }
+
+        // Tiles that may sleep are split finer than the grid, and statistics are kept per tile
+        final int tileSize = parameters.getSleepThreshold() > 0f ? TILE_SIZE : Math.max(width, height);
+
+        this.offsets            = neighbourOffsets(width + 2 * HALO);
+        this.heightStatistics   = new RowStatistics(height, width, tileSize);
+        this.sedimentStatistics = new RowStatistics(height, width, tileSize);
+
+        this.bands         = bands;
+        this.random        = new CounterRandom(seed);
+        this.dropletRandom = random.split(DROPLET_STREAM);
+        this.tiles         = new ActiveTiles(width, height, tileSize);
+    }
+
+    private ErosionState(final ErosionParameters parameters, final boolean initialize) {
+        this(parameters, parameters.getWidth(), parameters.getHeight(), parameters.getSeed());
 
         if (initialize)
             setAllHeights(0f);
@@ -26,120 +314,1094 @@ public class ErosionState {
     }
 
     private ErosionState(final ErosionParameters parameters, final float initialHeight) {
-        this.parameters = parameters;
+        this(parameters, parameters.getWidth(), parameters.getHeight(), parameters.getSeed());
         setAllHeights(initialHeight);
         setSediment(0f);
     }
 
     private void setSediment(final float value) {
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j)
-                sediment[i][j] = value;
+        if (sedimentHalves != null)
+            sedimentHalves.fill(value);
+        else
+            sediment.fill(value);
+    }
+
+    /**
+     * Stores the sediment and water as floats from now on, for the kernels that cannot read halves.
+     */
+    private void storeInFloats() {
+        if (sedimentHalves == null)
+            return;
+
+        sediment = loaded(sedimentHalves);
+        water    = loaded(waterHalves);
+
+        sedimentHalves = null;
+        waterHalves    = null;
+    }
+
+    private ScalarField2D loaded(final HalfField2D halves) {
+        final ScalarField2D field = new ScalarField2D(width, height, HALO);
+        halves.load(field);
+        return field;
+    }
+
+    private ScalarField2D[] outflow() {
+        if (outflow == null)
+            outflow = new ScalarField2D[] {
+                new ScalarField2D(width, height, HALO),
+                new ScalarField2D(width, height, HALO),
+                new ScalarField2D(width, height, HALO),
+                new ScalarField2D(width, height, HALO)
+            };
+
+        return outflow;
+    }
+
+    private DepressionFill depressions() {
+        if (depressions == null)
+            depressions = new DepressionFill(width, height, HALO);
+
+        return depressions;
+    }
+
+    private FlowAccumulation drainage() {
+        if (drainage == null)
+            drainage = new FlowAccumulation(width, height, HALO, bands);
+
+        return drainage;
+    }
+
+    private ScalarField2D heightCarry() {
+        if (heightCarry == null)
+            heightCarry = new ScalarField2D(width, height, HALO);
+
+        return heightCarry;
+    }
+
+    private ScalarField2D sedimentCarry() {
+        if (sedimentCarry == null)
+            sedimentCarry = new ScalarField2D(width, height, HALO);
+
+        return sedimentCarry;
+    }
+
+    private Stratigraphy strata() {
+        if (strata == null)
+            strata = new Stratigraphy(
+                width * height,
+                parameters.getStrataDepth(),
+                parameters.getStrataEpoch(),
+                new float[] { 1f, parameters.getDepositErodibility() });
+
+        return strata;
+    }
+
+    /**
+     * @param column the column of the strata, numbered row after row
+     * @return the relative erodibility of the top of the column, that of the bedrock until strata
+     *         are first kept
+     */
+    private float erodibilityAt(final int column) {
+        return strata == null ? 1f : strata.getErodibility(column);
+    }
+
+    /**
+     * @param cell the position of a cell in the fields, outside of the halo
+     * @return the column of the strata under the cell
+     */
+    private int columnOf(final int cell) {
+        return (cell / heights.getStride() - HALO) * width + cell % heights.getStride() - HALO;
+    }
+
+    /**
+     * Makes every cell stand for a square of cells of the full resolution, as on the coarse levels of
+     * an {@link ErosionPyramid}, and scales the rates given per cell of the full resolution to match.
+     * A drop between neighbours spans that many more cells, so the talus slope grows with the size;
+     * the blur and hillslope diffusion spread over cells that much wider, so they fall with its
+     * square; stream power sees drainage areas counted in cells that many times larger and slopes
+     * that many times steeper, so its erodibility goes as the size to {@code 2m - n}; and the
+     * droplets, a number sized for the full grid, fall with the number of cells.
+     *
+     * @param cellSize the width of a cell in cells of the full resolution
+     */
+    void setCellSize(final int cellSize) {
+        this.cellSize = cellSize;
     }
 
     public void evolve() {
+        final float area         = (float) cellSize * cellSize;
         final float erodibility  = parameters.getErodibility();
         final float transport    = parameters.getSedimentTransport();
-        final float blurS        = parameters.getBlurStrength();
+        final float blurS        = parameters.getBlurStrength() / area;
         final float perturbation = parameters.getNoiseStrength();
         final float carving      = parameters.getCarvingFactor();
+        final int   interval     = parameters.getStatisticsInterval();
+        final int   fillInterval = parameters.getFillInterval();
+        final float threshold    = parameters.getSleepThreshold();
+        final float thermalRate  = parameters.getThermalRate();
+        final float talus        = parameters.getTalusSlope() * cellSize;
+
+        // Stream power erodibility per cell of this state rather than of the full resolution
+        final float streamErodibility = erodibility
+            * (float) Math.pow(cellSize, 2f * parameters.getAreaExponent() - parameters.getSlopeExponent());
+
+        ++tick;
+
+        sampling         = interval > 0 && tick % interval == 0;
+        heightsRecorded  = false;
+        sedimentRecorded = false;
+
+        final boolean filling = fillInterval > 0 && tick % fillInterval == 0;
+
+        // Only the stencil kernel skips sleeping tiles; every other kernel may change any cell
+        tracking = threshold > 0f
+            && !filling
+            && perturbation == 0f
+            && parameters.getErosionModel() == ErosionModel.FLOW
+            && parameters.getFlowEngine() == FlowEngine.STENCIL;
+
+        if (!tracking)
+            tiles.wakeAll();
+
+        tiles.markReached();
+
+        // The strata take the net change of every pass over the tick, whichever way it reached the heights
+        final ScalarField2D layered = parameters.getStrataDepth() > 0 ? snapshot(heights) : null;
 
         try {
-            if (erodibility != 0f || transport != 0f)
-                flow(erodibility, transport, carving);
+            if (filling)
+                fillDepressions();
+
+            switch (parameters.getErosionModel()) {
+                case FLOW:
+                    if (erodibility != 0f || transport != 0f)
+                        routeFlow(parameters.getFlowEngine(), erodibility, transport, carving, thermalRate, talus);
+                    else if (thermalRate != 0f)
+                        thermalErosion(thermalRate, talus);
+                    break;
+
+                case STREAM_POWER:
+                    streamPower(streamErodibility, transport, parameters.getAreaExponent(), parameters.getSlopeExponent());
+                    break;
+
+                case IMPLICIT_STREAM_POWER:
+                    implicitStreamPower(
+                        streamErodibility,
+                        parameters.getAreaExponent(),
+                        parameters.getSlopeExponent(),
+                        parameters.getTimeStep(),
+                        parameters.getUplift(),
+                        parameters.getDiffusivity() / area);
+                    break;
+
+                case DROPLETS:
+                    droplets(
+                        Math.max(1, Math.round(parameters.getDroplets() / area)),
+                        parameters.getDropletLifetime(),
+                        parameters.getInertia(),
+                        parameters.getCapacity(),
+                        erodibility,
+                        1f - transport,
+                        parameters.getEvaporation());
+                    break;
+
+                case SHALLOW_WATER:
+                    shallowWater(
+                        parameters.getRain(),
+                        parameters.getRainDependence(),
+                        parameters.getDrying(),
+                        parameters.getCapacity(),
+                        erodibility,
+                        1f - transport);
+                    break;
+            }
 
-            if (blurS != 0f)
-                blur(new float[][] {
-                    new float[]{ 0.10f, 0.15f, 0.10f },
-                    new float[]{ 0.15f, blurS, 0.15f },
-                    new float[]{ 0.10f, 0.15f, 0.10f }
-                });
+            // The flow model slumps in the same sweep as it routes
+            if (parameters.getErosionModel() != ErosionModel.FLOW && thermalRate != 0f)
+                thermalErosion(thermalRate, talus);
+
+            if (blurS != 0f) {
+                blurMask[1][1] = blurS;
+                blur(blurMask);
+            }
 
             if (perturbation != 0f)
                 perturb(perturbation);
-    
-            double heightSum   = 0.0f;
-            double sedimentSum = 0.0f;
 
-            float minHeight = heights[0][0];
-            float maxHeight = heights[0][0];
+            if (layered != null)
+                layerChanges(layered, parameters.getErosionModel() == ErosionModel.IMPLICIT_STREAM_POWER
+                    ? parameters.getUplift() * parameters.getTimeStep()
+                    : 0f);
 
-            float minSediment = sediment[0][0];
-            float maxSediment = sediment[0][0];
+            // Published before the tiles settle, while they are still within the reach of this tick
+            if (sampling)
+                publishStatistics();
 
-            for (int i = 0; i < WIDTH; ++i)
-                for (int j = 0; j < HEIGHT; ++j) {
-                    heightSum += heights[i][j];
-                    sedimentSum += sediment[i][j];
+            if (tracking)
+                tiles.settle(threshold);
 
-                    if (minHeight > heights[i][j])
-                        minHeight = heights[i][j];
-                    
-                    if (maxHeight < heights[i][j])
-                        maxHeight = heights[i][j];
+        } catch (final Exception e) {
+            System.out.println(e);
+        } finally {
+            if (layered != null)
+                scratch.release(layered);
 
-                    if (minSediment > sediment[i][j])
-                        minSediment = sediment[i][j];
-                    
-                    if (maxSediment < sediment[i][j])
-                        maxSediment = sediment[i][j];
-                }
+            sampling = false;
+            tracking = false;
+        }
+    }
 
-            System.out.print("| height: " + heightSum + ", sediment: " + sedimentSum + ", total: " + (heightSum + sedimentSum) 
-                + ", min/max height: (" + minHeight + ", " + maxHeight + ")"
-                + ", min/max sediment: (" + minSediment + ", " + maxSediment + ")");
-    
+    private void routeFlow(
+        final FlowEngine engine,
+        final float erodibility,
+        final float transport,
+        final float carving,
+        final float thermalRate,
+        final float talus) {
 
-        } catch (final Exception e) {
-            System.out.println(e);
+        switch (engine) {
+            case REFERENCE:
+                flow(erodibility, transport, carving);
+
+                if (thermalRate != 0f)
+                    thermalErosion(thermalRate, talus);
+                break;
+
+            case STENCIL:
+                stencil(erodibility, transport, carving, thermalRate, talus, true);
+                break;
+
+            case GATHER:
+                gatherFlow(erodibility, transport, carving);
+
+                if (thermalRate != 0f)
+                    thermalErosion(thermalRate, talus);
+                break;
+        }
+    }
+
+    /**
+     * @return the number of columns of the grid
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return the number of rows of the grid
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return the deposits laid over the bedrock, if they are kept, with a column for each cell
+     *         numbered row after row, {@code j * width + i}
+     */
+    public Maybe<Stratigraphy> getStrata() {
+        return parameters.getStrataDepth() > 0 ? Maybe.just(strata()) : Maybe.nothing();
+    }
+
+    /**
+     * @return the flow through the virtual pipes to each of the four neighbours, if shallow water
+     *         keeps it from one tick to the next
+     */
+    Maybe<ScalarField2D[]> getOutflow() {
+        return parameters.getErosionModel() == ErosionModel.SHALLOW_WATER ? Maybe.just(outflow()) : Maybe.nothing();
+    }
+
+    /**
+     * @return the low bits lost by the latest changes to the heights, if compensated sums are on
+     */
+    Maybe<ScalarField2D> getHeightCarry() {
+        return parameters.getCompensatedSums() ? Maybe.just(heightCarry()) : Maybe.nothing();
+    }
+
+    /**
+     * @return the low bits lost by the latest changes to the sediment, if compensated sums are on
+     */
+    Maybe<ScalarField2D> getSedimentCarry() {
+        return parameters.getCompensatedSums() ? Maybe.just(sedimentCarry()) : Maybe.nothing();
+    }
+
+    /**
+     * @return the tiles of the grid, and which of them are awake
+     */
+    public ActiveTiles getTiles() {
+        return this.tiles;
+    }
+
+    /**
+     * @return the number of times this state has evolved
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * @param tick the number of times this state is to count as having evolved
+     */
+    void setTick(final long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * @return the seed this state draws its random numbers from
+     */
+    public long getSeed() {
+        return this.random.getSeed();
+    }
+
+    /**
+     * @return the threads this state evolves on
+     */
+    RowBandScheduler getBands() {
+        return this.bands;
+    }
+
+    /**
+     * Stops the threads this state evolves on. The state may not evolve after.
+     */
+    public void close() {
+        this.bands.close();
+    }
+
+    /**
+     * @return the statistics of the most recently sampled tick, if any, which stay as they are until
+     *         the sample after next
+     */
+    public Maybe<ErosionStatistics> getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Adds a listener to be given the statistics of every sampled tick. Listeners are called on the
+     * thread evolving the state, and copy whatever they keep past the sample after next.
+     *
+     * @param listener the listener to add
+     */
+    public void addStatisticsListener(final Consumer<ErosionStatistics> listener) {
+        this.statisticsListeners.add(listener);
+    }
+
+    private void publishStatistics() {
+        recordUnsampled(heightStatistics, heights, heightsRecorded);
+        if (sedimentHalves != null)
+            recordUnsampled(sedimentStatistics, sedimentHalves, sedimentRecorded);
+        else
+            recordUnsampled(sedimentStatistics, sediment, sedimentRecorded);
+        tiles.markSampled();
+
+        final ErosionStatistics snapshot = frames[frame];
+
+        snapshot.set(
+            tick,
+            heightStatistics.getSum(),
+            sedimentStatistics.getSum(),
+            heightStatistics.getMin(),
+            heightStatistics.getMax(),
+            sedimentStatistics.getMin(),
+            sedimentStatistics.getMax());
+
+        this.statistics = samples.get(frame);
+        this.frame      = 1 - frame;
+
+        // Indexed, as an iterator would be allocated on every sample
+        for (int k = 0; k < statisticsListeners.size(); ++k)
+            statisticsListeners.get(k).accept(snapshot);
+    }
+
+    /**
+     * Records the tiles of a field that changed since the last sample but whose statistics were not
+     * recorded this tick, either because they were out of reach or because no kernel wrote the field.
+     * Every other tile holds what it held when last recorded.
+     */
+    private void recordUnsampled(final RowStatistics statistics, final ScalarField2D field, final boolean recorded) {
+        for (int j = 0; j < height; ++j) {
+            final int row = field.index(0, j);
+
+            for (int column = 0; column < tiles.getColumns(); ++column)
+                if (tiles.isUnsampled(column, j) && !(recorded && tiles.isReached(column, j)))
+                    statistics.record(j, field.getValues(), row, tiles.firstCell(column), tiles.lastCell(column));
+        }
+    }
+
+    private void recordUnsampled(final RowStatistics statistics, final HalfField2D field, final boolean recorded) {
+        for (int j = 0; j < height; ++j) {
+            final int row = field.index(0, j);
+
+            for (int column = 0; column < tiles.getColumns(); ++column)
+                if (tiles.isUnsampled(column, j) && !(recorded && tiles.isReached(column, j)))
+                    statistics.record(j, field.getValues(), row, tiles.firstCell(column), tiles.lastCell(column));
+        }
+    }
+
+    /**
+     * Records a row a kernel has just written, only over the tiles within reach while tracking.
+     */
+    private void recordRow(final RowStatistics statistics, final int j, final float[] values, final int row) {
+        if (!tracking) {
+            statistics.record(j, values, row, width);
+            return;
+        }
+
+        for (int column = 0; column < tiles.getColumns(); ++column)
+            if (tiles.isReached(column, j))
+                statistics.record(j, values, row, tiles.firstCell(column), tiles.lastCell(column));
+    }
+
+    private void recordRow(final RowStatistics statistics, final int j, final short[] halves, final int row) {
+        if (!tracking) {
+            statistics.record(j, halves, row, 0, width);
+            return;
         }
+
+        for (int column = 0; column < tiles.getColumns(); ++column)
+            if (tiles.isReached(column, j))
+                statistics.record(j, halves, row, tiles.firstCell(column), tiles.lastCell(column));
+    }
+
+    /**
+     * @param field the field about to be written
+     * @return the statistics the write should record, or null if it should record none
+     */
+    private RowStatistics statisticsFor(final ScalarField2D field) {
+        if (!sampling)
+            return null;
+
+        if (field == heights) {
+            heightsRecorded = true;
+            return heightStatistics;
+        }
+
+        if (field == sediment)
+            return statisticsForSediment();
+
+        return null;
+    }
+
+    /**
+     * @return the statistics a write to the sediment should record, however it is stored, or null if
+     *         it should record none
+     */
+    private RowStatistics statisticsForSediment() {
+        if (!sampling)
+            return null;
+
+        sedimentRecorded = true;
+        return sedimentStatistics;
     }
 
-    public float[][] getHeights() {
+    public ScalarField2D getHeights() {
         return heights;
     }
 
-    public float[][] getSediment() {
-        return this.sediment;
+    /**
+     * @return the sediment, or a copy of it in floats if it is stored as halves, writes to which
+     *         change nothing
+     */
+    public ScalarField2D getSediment() {
+        return this.sedimentHalves != null ? loaded(this.sedimentHalves) : this.sediment;
+    }
+
+    /**
+     * @return the water, or a copy of it in floats if it is stored as halves, writes to which change
+     *         nothing
+     */
+    public ScalarField2D getWater() {
+        return this.waterHalves != null ? loaded(this.waterHalves) : this.water;
+    }
+
+    /**
+     * Sets the sediment, rounded to halves if it is stored as halves.
+     *
+     * @param field the new sediment, of the size of the grid
+     */
+    void storeSediment(final ScalarField2D field) {
+        for (int j = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i)
+                if (sedimentHalves != null)
+                    sedimentHalves.set(i, j, field.get(i, j));
+                else
+                    sediment.set(i, j, field.get(i, j));
     }
 
-    public float[][] getWater() {
-        return this.water;
+    /**
+     * Sets the water, rounded to halves if it is stored as halves.
+     *
+     * @param field the new water, of the size of the grid
+     */
+    void storeWater(final ScalarField2D field) {
+        for (int j = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i)
+                if (waterHalves != null)
+                    waterHalves.set(i, j, field.get(i, j));
+                else
+                    water.set(i, j, field.get(i, j));
     }
 
     public void setAllHeights(float value) {
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j)
-                heights[i][j] = value;
+        heights.fill(value);
     }
 
+    /**
+     * Adds uniform noise to every height. The noise for a cell depends only on the seed, the tick and
+     * the cell's position, so it is the same whatever the number of threads.
+     *
+     * @param perturbation the largest change in height
+     */
     public void perturb(float perturbation) {
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j)
-                heights[i][j] += perturbation * (float) (2.0 * Math.random() - 1.0);
+        this.perturbation      = perturbation;
+        this.perturbStatistics = statisticsFor(heights);
+
+        bands.forEachBand(height, perturbBand);
     }
 
-    public void flow(final float erodibility, final float transportFactor, final float carvingFactor) {
-        float[][] deltaH = new float[WIDTH + 2][HEIGHT + 2];
-        float[][] deltaS = new float[WIDTH + 2][HEIGHT + 2];
-        float[][] deltaW = new float[WIDTH + 2][HEIGHT + 2];
-
-        for (int i = 0; i < WIDTH + 2; ++i)
-            for (int j = 0; j < HEIGHT + 2; ++j) {
-                deltaH[i][j] = 0f;
-                deltaS[i][j] = 0f;
-                deltaW[i][j] = 0f;
+    private void perturbBand(final int first, final int last) {
+        final float[] h = heights.getValues();
+        final RowStatistics statistics = perturbStatistics;
+
+        for (int j = first; j < last; ++j) {
+            final int row = heights.index(0, j);
+
+            for (int i = 0; i < width; ++i)
+                h[row + i] += perturbation * random.symmetric(tick, (long) j * width + i);
+
+            if (statistics != null)
+                statistics.record(j, h, row, width);
+        }
+    }
+
+    /**
+     * Settles the sediment over each depression onto its floor in one step, rather than leaving the
+     * flow kernels to fill it a cell per tick. The sediment of a lake raises every cell under it by
+     * the same fraction of its depth, and whatever would overfill the lake is passed on to the cell
+     * over which it spills.
+     */
+    public void fillDepressions() {
+        depressions().compute(heights);
+
+        final float[] h      = heights.getValues();
+        final float[] levels = depressions().getLevels();
+        final int[]   spills = depressions().getSpills();
+
+        // The sediment is read and written in floats or halves, whichever it is stored as
+        final float[] s  = sediment == null ? null : sediment.getValues();
+        final short[] sh = sedimentHalves == null ? null : sedimentHalves.getValues();
+
+        // Both are indexed by the spill of each lake
+        final ScalarField2D load = scratch.acquire(width, height, HALO);
+        final ScalarField2D room = scratch.acquire(width, height, HALO);
+
+        final float[] l = load.getValues();
+        final float[] r = room.getValues();
+
+        for (final int cell : depressions().getOrder()) {
+            final int spill = spills[cell];
+
+            if (spill < 0)
+                continue;
+
+            l[spill] += s != null ? s[cell] : HalfFloat.toFloat(sh[cell]);
+            r[spill] += levels[cell] - h[cell];
+
+            if (s != null)
+                s[cell] = 0f;
+            else
+                sh[cell] = 0;
+        }
+
+        for (final int cell : depressions().getOrder()) {
+            final int spill = spills[cell];
+
+            if (spill < 0)
+                continue;
+
+            h[cell] += Math.min(1f, l[spill] / r[spill]) * (levels[cell] - h[cell]);
+        }
+
+        for (final int cell : depressions().getOrder())
+            if (l[cell] > r[cell]) {
+                if (s != null)
+                    s[cell] += l[cell] - r[cell];
+                else
+                    sh[cell] = HalfFloat.toHalf(HalfFloat.toFloat(sh[cell]) + l[cell] - r[cell]);
             }
 
-        for (int i = 1; i < WIDTH + 1; ++i) {
-            for (int j = 1; j < HEIGHT + 1; ++j) {
-                final int ci = i - 1;
-                final int cj = j - 1;
+        scratch.release(load);
+        scratch.release(room);
+    }
 
-                if (ci == 0 || ci == WIDTH - 1 || cj == 0 || cj == HEIGHT - 1)
+    /**
+     * Erodes every cell at the rate {@code erodibility * A^m * S^n} of the stream power law, where
+     * {@code A} is its drainage area and {@code S} the slope down to the cell it drains into. The step
+     * is explicit, so it is capped at half the drop to the receiver to keep a cell from cutting below
+     * it. The eroded material joins the sediment the cell sends on to its receiver, of which a
+     * fraction {@code 1 - transport} settles on the way; pits keep everything they receive.
+     *
+     * @param erodibility the erosion rate of a unit slope draining a single cell
+     * @param transportFactor the fraction of the sediment carried on each tick
+     * @param areaExponent the exponent {@code m} of the drainage area
+     * @param slopeExponent the exponent {@code n} of the slope
+     */
+    public void streamPower(
+        final float erodibility,
+        final float transportFactor,
+        final float areaExponent,
+        final float slopeExponent) {
+
+        drainage().update(heights);
+
+        final ScalarField2D eroded = scratch.acquire(width, height, HALO);
+        final ScalarField2D deltaH = scratch.acquire(width, height, HALO);
+        final ScalarField2D deltaS = scratch.acquire(width, height, HALO);
+
+        final float[] h  = heights.getValues();
+        final float[] s  = sediment == null ? null : sediment.getValues();
+        final short[] sh = sedimentHalves == null ? null : sedimentHalves.getValues();
+        final float[] e  = eroded.getValues();
+        final float[] dH = deltaH.getValues();
+        final float[] dS = deltaS.getValues();
+
+        final int[] receivers = drainage().getReceivers();
+
+        this.erodeEroded        = eroded;
+        this.erodeErodibility   = erodibility;
+        this.erodeAreaExponent  = areaExponent;
+        this.erodeSlopeExponent = slopeExponent;
+
+        bands.forEachBand(height, erodeBand);
+
+        // Receivers may lie across the wrapped edges of a band, so the scatter runs in one sweep
+        for (int j = 0; j < height; ++j)
+            for (int cell = heights.index(0, j); cell < heights.index(width, j); ++cell) {
+                final int   receiver = receivers[cell];
+                final float load     = s != null ? s[cell] : HalfFloat.toFloat(sh[cell]);
+
+                dS[cell] -= load;
+
+                if (receiver == cell) {
+                    dH[cell] += load;
                     continue;
+                }
+
+                final float carried = transportFactor * load;
+
+                dH[cell]     += load - carried - e[cell];
+                dS[receiver] += carried + e[cell];
+            }
+
+        applyChanges(deltaH, heights);
+        applySediment(deltaS);
+
+        scratch.release(eroded);
+        scratch.releaseZeroed(deltaH);
+        scratch.releaseZeroed(deltaS);
+    }
+
+    private void erodeBand(final int first, final int last) {
+        final float[] h = heights.getValues();
+        final float[] e = erodeEroded.getValues();
+
+        final int[]   receivers = drainage().getReceivers();
+        final int[]   areas     = drainage().getAreas();
+        final float[] slopes    = drainage().getSlopes();
+
+        for (int j = first; j < last; ++j)
+            for (int i = 0; i < width; ++i) {
+                final int cell     = heights.index(i, j);
+                final int receiver = receivers[cell];
+
+                if (receiver == cell)
+                    continue;
+
+                final float rate = erodeErodibility
+                    * erodibilityAt(j * width + i)
+                    * (float) (Math.pow(areas[cell], erodeAreaExponent) * Math.pow(slopes[cell], erodeSlopeExponent));
+
+                e[cell] = Math.min(rate, 0.5f * (h[cell] - h[receiver]));
+            }
+    }
+
+    /**
+     * Advances stream power erosion and hillslope diffusion by a step of any length, using the
+     * implicit O(n) scheme of Braun and Willett (2013). The drainage is that of the depression fill,
+     * so every cell drains over the rims of the lakes it lies in towards the lowest cell of the
+     * terrain, which is held fixed as the base level. Visiting the cells from the base level upwards,
+     * each cell's new height is solved for given the already-updated height of its receiver, in
+     * closed form for a slope exponent of one and by Newton's method otherwise. Cells lying below
+     * their receiver, at the bottom of a lake, are only uplifted. Diffusion then solves
+     * {@code (1 - dt * D * laplacian) h' = h} with a few red-black Gauss-Seidel sweeps.
+     *
+     * @param erodibility the erosion rate {@code K} of a unit slope draining a single cell
+     * @param areaExponent the exponent {@code m} of the drainage area
+     * @param slopeExponent the exponent {@code n} of the slope
+     * @param timeStep the time {@code dt} the step covers
+     * @param uplift the rate {@code U} at which the terrain rises
+     * @param diffusivity the rate {@code D} at which hillslopes creep
+     */
+    public void implicitStreamPower(
+        final float erodibility,
+        final float areaExponent,
+        final float slopeExponent,
+        final float timeStep,
+        final float uplift,
+        final float diffusivity) {
+
+        depressions().compute(heights);
+
+        final int[] order     = depressions().getOrder();
+        final int[] receivers = depressions().getReceivers();
+        final int   outlet    = order[0];
+
+        final ScalarField2D area = scratch.acquire(width, height, HALO);
+        final float[] a = area.getValues();
+        final float[] h = heights.getValues();
+
+        for (int n = order.length - 1; n > 0; --n) {
+            final int cell = order[n];
+
+            a[cell]            += 1f;
+            a[receivers[cell]] += a[cell];
+        }
+
+        a[outlet] += 1f;
+
+        // Receivers come before their donors in the flood order, so each sees its receiver's new height
+        for (int n = 1; n < order.length; ++n) {
+            final int   cell     = order[n];
+            final float base     = h[receivers[cell]];
+            final float uplifted = h[cell] + uplift * timeStep;
+
+            if (uplifted <= base) {
+                h[cell] = uplifted;
+                continue;
+            }
+
+            final float factor = erodibility * erodibilityAt(columnOf(cell)) * timeStep * (float) Math.pow(a[cell], areaExponent);
+
+            h[cell] = slopeExponent == 1f
+                ? (uplifted + factor * base) / (1f + factor)
+                : solveStreamPower(uplifted, base, factor, slopeExponent);
+        }
+
+        scratch.release(area);
+
+        if (diffusivity != 0f)
+            diffuse(diffusivity * timeStep, outlet);
+    }
+
+    /**
+     * Solves {@code x = uplifted - factor * (x - base)^n} for {@code x} between the base and the
+     * uplifted height by Newton's method.
+     */
+    private static float solveStreamPower(final float uplifted, final float base, final float factor, final float n) {
+        float x = uplifted;
+
+        for (int k = 0; k < NEWTON_ITERATIONS; ++k) {
+            final float drop = x - base;
+            final float f    = x - uplifted + factor * (float) Math.pow(drop, n);
+            final float df   = 1f + n * factor * (float) Math.pow(drop, n - 1f);
+            final float next = Math.max(base, x - f / df);
+
+            if (Math.abs(next - x) < NEWTON_TOLERANCE)
+                return next;
+
+            x = next;
+        }
+
+        return x;
+    }
+
+    /**
+     * Solves one implicit step of hillslope diffusion, {@code (1 - rate * laplacian) h' = h}, keeping
+     * the base level fixed. Each half sweep updates the cells of one colour of a checkerboard, whose
+     * neighbours are all of the other colour, so the rows can be split between threads. Neighbours
+     * across the wrapped edges are read from the halo, refreshed before every half sweep.
+     */
+    private void diffuse(final float rate, final int outlet) {
+        final ScalarField2D source = scratch.acquire(width, height, HALO);
+
+        final float[] h = heights.getValues();
+
+        System.arraycopy(h, 0, source.getValues(), 0, h.length);
+
+        this.diffuseSource = source;
+        this.diffuseRate   = rate;
+        this.diffuseOutlet = outlet;
+
+        for (int sweep = 0; sweep < 2 * DIFFUSION_SWEEPS; ++sweep) {
+            this.diffuseColour = sweep % 2;
+
+            heights.wrapHalo();
+
+            bands.forEachBand(height, diffuseBand);
+        }
+
+        scratch.release(source);
+    }
+
+    private void diffuseBand(final int first, final int last) {
+        final float[] h = heights.getValues();
+        final float[] b = diffuseSource.getValues();
+
+        final float rate  = diffuseRate;
+        final float scale = 1f / (1f + 4f * rate);
+
+        for (int j = first; j < last; ++j) {
+            final int row = heights.index(0, j);
+
+            for (int i = (j + diffuseColour) % 2; i < width; i += 2) {
+                final int cell = row + i;
+
+                if (cell == diffuseOutlet)
+                    continue;
+
+                h[cell] = scale * (b[cell] + rate * (
+                    h[cell + offsets[0]] + h[cell + offsets[1]] + h[cell + offsets[2]] + h[cell + offsets[3]]));
+            }
+        }
+    }
+
+    /**
+     * Releases droplets at random positions and lets each roll downhill for its lifetime, eroding
+     * while it can carry more sediment than it holds and depositing otherwise. A droplet can carry
+     * more the faster it moves, the more water it has left and the steeper it descends. Whatever it
+     * still carries when it evaporates is left in the sediment field, and the water field is set to
+     * the water that passed over each cell during the tick.
+     *
+     * <p>Every droplet reads the heights as they were at the start of the tick, so droplets are
+     * independent and are run in batches on the worker threads. Each batch adds its changes to
+     * deltas of its own, which are merged in batch order, and each droplet's starting position
+     * depends only on the seed, the tick and its number, so the result does not depend on the
+     * number of threads.
+     *
+     * @param count the number of droplets to release
+     * @param lifetime the number of steps each droplet takes
+     * @param inertia how strongly droplets keep their direction rather than turn downhill
+     * @param capacity the sediment a droplet can carry per unit of speed, water and drop
+     * @param erosion the fraction of its spare capacity a droplet erodes at each step
+     * @param deposition the fraction of its excess sediment a droplet deposits at each step
+     * @param evaporation the fraction of its water a droplet loses at each step
+     */
+    public void droplets(
+        final int count,
+        final int lifetime,
+        final float inertia,
+        final float capacity,
+        final float erosion,
+        final float deposition,
+        final float evaporation) {
+
+        if (dropletCells.length < count) {
+            dropletCells = new int[count];
+            dropletLoads = new float[count];
+        }
+
+        for (int b = 0; b < DROPLET_BATCHES; ++b) {
+            batchHeights[b] = scratch.acquire(width, height, HALO);
+            batchWater[b]   = scratch.acquire(width, height, HALO);
+        }
+
+        heights.wrapHalo();
+
+        this.rollCount       = count;
+        this.rollLifetime    = lifetime;
+        this.rollInertia     = inertia;
+        this.rollCapacity    = capacity;
+        this.rollErosion     = erosion;
+        this.rollDeposition  = deposition;
+        this.rollEvaporation = evaporation;
+
+        bands.forEachBatch(DROPLET_BATCHES, rollBand);
+        bands.forEachBand(height + 2 * HALO, mergeBand);
+
+        final ScalarField2D deltaS = scratch.acquire(width, height, HALO);
+        final float[] dS = deltaS.getValues();
+
+        for (int d = 0; d < count; ++d)
+            dS[dropletCells[d]] += dropletLoads[d];
+
+        applyChanges(batchHeights[0], heights);
+        applySediment(deltaS);
+
+        if (waterHalves != null)
+            waterHalves.fill(0f);
+        else
+            water.fill(0f);
+
+        applyWater(batchWater[0]);
+
+        // The first batch took the changes of the others, and applying them left it zeroed
+        scratch.releaseZeroed(batchHeights[0]);
+        scratch.releaseZeroed(batchWater[0]);
+
+        for (int b = 1; b < DROPLET_BATCHES; ++b) {
+            scratch.release(batchHeights[b]);
+            scratch.release(batchWater[b]);
+        }
+
+        scratch.releaseZeroed(deltaS);
+    }
+
+    private void rollBand(final int first, final int last) {
+        for (int b = first; b < last; ++b) {
+            final float[] dH = batchHeights[b].getValues();
+            final float[] dW = batchWater[b].getValues();
+
+            for (int d = (int) ((long) rollCount * b / DROPLET_BATCHES); d < (long) rollCount * (b + 1) / DROPLET_BATCHES; ++d)
+                roll(d, dH, dW, rollLifetime, rollInertia, rollCapacity, rollErosion, rollDeposition, rollEvaporation);
+        }
+    }
+
+    /**
+     * Adds the deltas of every batch but the first to those of the first, over the rows
+     * {@code [first, last)} of the fields and their halo.
+     */
+    private void mergeBand(final int first, final int last) {
+        final float[] dH     = batchHeights[0].getValues();
+        final float[] dW     = batchWater[0].getValues();
+        final int     stride = heights.getStride();
+
+        for (int b = 1; b < DROPLET_BATCHES; ++b) {
+            final float[] batchH = batchHeights[b].getValues();
+            final float[] batchW = batchWater[b].getValues();
+
+            for (int k = first * stride; k < last * stride; ++k) {
+                dH[k] += batchH[k];
+                dW[k] += batchW[k];
+            }
+        }
+    }
 
-                final float refHeight = heights[ci][cj];
+    private void roll(
+        final int droplet,
+        final float[] dH,
+        final float[] dW,
+        final int lifetime,
+        final float inertia,
+        final float capacity,
+        final float erosion,
+        final float deposition,
+        final float evaporation) {
+
+        final float[] h      = heights.getValues();
+        final int     stride = heights.getStride();
+
+        float x = width  * dropletRandom.uniform(tick, 2L * droplet);
+        float y = height * dropletRandom.uniform(tick, 2L * droplet + 1);
+
+        float dirX  = 0f;
+        float dirY  = 0f;
+        float speed = 1f;
+        float load  = 0f;
+        float wet   = 1f;
+
+        for (int step = 0; step < lifetime; ++step) {
+            final int   i    = (int) x;
+            final int   j    = (int) y;
+            final float fx   = x - i;
+            final float fy   = y - j;
+            final int   cell = heights.index(i, j);
+
+            final float nw = h[cell];
+            final float ne = h[cell + 1];
+            final float sw = h[cell + stride];
+            final float se = h[cell + stride + 1];
+
+            final float gradX  = (ne - nw) * (1f - fy) + (se - sw) * fy;
+            final float gradY  = (sw - nw) * (1f - fx) + (se - ne) * fx;
+            final float level = (nw * (1f - fx) + ne * fx) * (1f - fy) + (sw * (1f - fx) + se * fx) * fy;
+
+            dirX = dirX * inertia - gradX * (1f - inertia);
+            dirY = dirY * inertia - gradY * (1f - inertia);
+
+            final float length = (float) Math.sqrt(dirX * dirX + dirY * dirY);
+
+            if (length == 0f)
+                break;
+
+            dirX /= length;
+            dirY /= length;
+
+            x = wrap(x + dirX, width);
+            y = wrap(y + dirY, height);
+
+            final float drop     = sample(h, x, y) - level;
+            final float carrying = Math.max(-drop * speed * wet * capacity, DROPLET_MIN_CAPACITY);
+
+            if (drop > 0f || load > carrying) {
+                final float amount = drop > 0f ? Math.min(drop, load) : (load - carrying) * deposition;
+
+                load -= amount;
+                spread(dH, cell, stride, fx, fy, amount);
+            } else {
+                final float amount = Math.min((carrying - load) * erosion * erodibilityAt(j * width + i), -drop);
+
+                load += amount;
+                spread(dH, cell, stride, fx, fy, -amount);
+            }
+
+            dW[cell] += wet;
+
+            speed = (float) Math.sqrt(Math.max(0f, speed * speed - drop * DROPLET_GRAVITY));
+            wet  *= 1f - evaporation;
+        }
+
+        dropletCells[droplet] = heights.index((int) x, (int) y);
+        dropletLoads[droplet] = load;
+    }
+
+    /**
+     * Interpolates bilinearly between the four cells around a point, reading the halo past the
+     * right and bottom edges.
+     */
+    private float sample(final float[] h, final float x, final float y) {
+        final int   i    = (int) x;
+        final int   j    = (int) y;
+        final float fx   = x - i;
+        final float fy   = y - j;
+        final int   cell = heights.index(i, j);
+        final int   down = cell + heights.getStride();
+
+        return (h[cell] * (1f - fx) + h[cell + 1] * fx) * (1f - fy) + (h[down] * (1f - fx) + h[down + 1] * fx) * fy;
+    }
+
+    /**
+     * Adds an amount to the four cells around a point, weighted as for bilinear interpolation.
+     */
+    private static void spread(final float[] delta, final int cell, final int stride, final float fx, final float fy, final float amount) {
+        delta[cell]              += amount * (1f - fx) * (1f - fy);
+        delta[cell + 1]          += amount * fx * (1f - fy);
+        delta[cell + stride]     += amount * (1f - fx) * fy;
+        delta[cell + stride + 1] += amount * fx * fy;
+    }
+
+    /**
+     * @return the coordinate wrapped into {@code [0, size)}
+     */
+    private static float wrap(final float coordinate, final int size) {
+        final float wrapped = coordinate < 0f ? coordinate + size : coordinate >= size ? coordinate - size : coordinate;
+        return wrapped < size ? wrapped : 0f;
+    }
+
+    public void flow(final float erodibility, final float transportFactor, final float carvingFactor) {
+        // The reference kernel only reads and writes floats
+        storeInFloats();
+
+        final ScalarField2D deltaH = scratch.acquire(width, height, HALO);
+        final ScalarField2D deltaS = scratch.acquire(width, height, HALO);
+        final ScalarField2D deltaW = scratch.acquire(width, height, HALO);
+
+        final float[] dH = deltaH.getValues();
+        final float[] dS = deltaS.getValues();
+
+        for (int cj = 1; cj < height - 1; ++cj) {
+            for (int ci = 1; ci < width - 1; ++ci) {
+                final float refHeight = heights.get(ci, cj);
+                final float load      = sediment.get(ci, cj);
+                final int   center    = deltaH.index(ci, cj);
 
                 final List<Prod<Prod<Integer, Integer>, Float>> elements
                     = List.of(
@@ -154,7 +1416,7 @@ public class ErosionState {
                             )
                         .stream()
                         .map(pair -> Prod.destroy(pair, c -> r -> 
-                            Prod.pair(pair, heights[c][r] - refHeight)))
+                            Prod.pair(pair, heights.get(c, r) - refHeight)))
                         .toList();
                     
                 final List<Prod<Prod<Integer, Integer>, Float>> below
@@ -168,8 +1430,8 @@ public class ErosionState {
 
                 // Filling a hole
                 if (n == 0) {
-                    deltaH[i][j] += sediment[ci][cj];
-                    deltaS[i][j] -= sediment[ci][cj];
+                    dH[center] += load;
+                    dS[center] -= load;
                     continue;
                 }
 
@@ -182,34 +1444,33 @@ public class ErosionState {
                 // A valley
                 if (n == 1 || carvingFactor * lowest.second() < (aggregateDrop - lowest.second())) {
                     final float drop       = - lowest.second();
-                    final float erosion    = (float) (Math.sqrt(erodibility) + squeeze(10f * drop)) * drop / 2;
-                    final float transport  = (float) (Math.sqrt(transportFactor) + squeeze(1 / (drop + 1))) * sediment[ci][cj] / 2;
-                    final float deposition = sediment[ci][cj] - transport;
+                    final float erosion    = (float) (Math.sqrt(erodibility) + squeeze(10f * drop)) * drop / 2
+                        * erodibilityAt(cj * width + ci);
+                    final float transport  = (float) (Math.sqrt(transportFactor) + squeeze(1 / (drop + 1))) * load / 2;
+                    final float deposition = load - transport;
 
-                    final int di = lowest.first().first() + 1;
-                    final int dj = lowest.first().second() + 1;
+                    final int target = deltaH.index(lowest.first().first(), lowest.first().second());
 
-                    deltaS[di][dj]         += transport + erosion;
+                    dS[target] += transport + erosion;
 
-                    deltaH[di][dj] += deposition;
-                    deltaH[ci + 1][cj + 1] -= erosion;
-                    deltaS[ci + 1][cj + 1] -= sediment[ci][cj];
+                    dH[target] += deposition;
+                    dH[center] -= erosion;
+                    dS[center] -= load;
                 } 
                 
                 else if (n > 1) {
-                    final float transport  = sediment[ci][cj] * (1 - squeeze(sediment[ci][cj] + 1f) + transportFactor) / 2.0f;
-                    final float deposition = sediment[ci][cj] - transport;
+                    final float transport  = load * (1 - squeeze(load + 1f) + transportFactor) / 2.0f;
+                    final float deposition = load - transport;
                     //final float erosion    = - (float)Math.pow(erodibility, 4) * lowest.second();
 
-                    //deltaH[i][j] -= erosion;
-                    deltaS[i][j] -= sediment[ci][cj];
+                    //dH[center] -= erosion;
+                    dS[center] -= load;
 
                     below.forEach(pair -> pair.destroy(loc -> drop -> {
-                        final int di = loc.first() + 1;
-                        final int dj = loc.second() + 1;
+                        final int target = deltaH.index(loc.first(), loc.second());
 
-                        deltaH[di][dj] += (deposition) / n;
-                        deltaS[di][dj] += transport / n;
+                        dH[target] += (deposition) / n;
+                        dS[target] += transport / n;
 
                         return Unit.unit();
                     }));
@@ -220,84 +1481,1235 @@ public class ErosionState {
         applyChanges(deltaH, heights);
         applyChanges(deltaS, sediment);
         applyChanges(deltaW, water);
+
+        scratch.releaseZeroed(deltaH);
+        scratch.releaseZeroed(deltaS);
+        scratch.releaseZeroed(deltaW);
+    }
+
+    /**
+     * Performs the same routing as {@link ErosionState#flow(float, float, float)} without allocating
+     * per cell. The height differences to the four neighbours are kept in primitive slots and the
+     * lowest neighbour is found with a single scan instead of a sort. The aggregate drop is summed in
+     * neighbour order rather than sorted order, so the two kernels agree up to float rounding.
+     *
+     * @param erodibility how easily material is eroded
+     * @param transportFactor how well sediment is transported
+     * @param carvingFactor how well rivers carve out canyons
+     */
+    public void stencilFlow(final float erodibility, final float transportFactor, final float carvingFactor) {
+        stencil(erodibility, transportFactor, carvingFactor, 0f, 0f, true);
+    }
+
+    /**
+     * Lets material slump off every slope steeper than the angle of repose, the excess height
+     * spreading to the lower neighbours in proportion to how far each lies below the talus slope.
+     * This runs the stencil kernel without its flow, for when no flow is routed.
+     *
+     * @param rate the fraction of half the largest excess that slumps each tick
+     * @param talus the steepest drop to a neighbour that holds
+     */
+    public void thermalErosion(final float rate, final float talus) {
+        stencil(0f, 0f, 0f, rate, talus, false);
+    }
+
+    private void stencil(
+        final float erodibility,
+        final float transportFactor,
+        final float carvingFactor,
+        final float thermalRate,
+        final float talus,
+        final boolean flowing) {
+
+        final ScalarField2D deltaH = scratch.acquire(width, height, HALO);
+        final ScalarField2D deltaS = scratch.acquire(width, height, HALO);
+
+        this.stencilDeltaH      = deltaH;
+        this.stencilDeltaS      = deltaS;
+        this.stencilErodibility = erodibility;
+        this.stencilTransport   = transportFactor;
+        this.stencilCarving     = carvingFactor;
+        this.stencilThermalRate = thermalRate;
+        this.stencilTalus       = talus;
+        this.stencilFlowing     = flowing;
+
+        bands.forEachBand(height + 2 * HALO, stencilBand);
+
+        applyChanges(deltaH, heights);
+        applySediment(deltaS);
+
+        scratch.releaseZeroed(deltaH);
+        scratch.releaseZeroed(deltaS);
+    }
+
+    private void stencilBand(final int first, final int last) {
+        stencilFlowBand(
+            stencilDeltaH,
+            stencilDeltaS,
+            first - HALO,
+            last - HALO,
+            stencilErodibility,
+            stencilTransport,
+            stencilCarving,
+            stencilThermalRate,
+            stencilTalus,
+            stencilFlowing);
     }
 
+    /**
+     * Runs the stencil kernel for the delta rows {@code [firstRow, lastRow)}. Every source row that
+     * scatters into the band is visited, including the two rows just outside of it, but only the
+     * band's own deltas are written. Each delta therefore receives its contributions in the same
+     * order as in a single sweep over the whole grid, wherever the band boundaries fall. Thermal
+     * erosion scatters to the same neighbours, so it shares the sweep.
+     */
+    private void stencilFlowBand(
+        final ScalarField2D deltaH,
+        final ScalarField2D deltaS,
+        final int firstRow,
+        final int lastRow,
+        final float erodibility,
+        final float transportFactor,
+        final float carvingFactor,
+        final float thermalRate,
+        final float talus,
+        final boolean flowing) {
+
+        final float[] h  = heights.getValues();
+        final float[] s  = sediment == null ? null : sediment.getValues();
+        final short[] sh = sedimentHalves == null ? null : sedimentHalves.getValues();
+        final float[] dH = deltaH.getValues();
+        final float[] dS = deltaS.getValues();
+
+        final int bandStart = deltaH.index(-HALO, firstRow);
+        final int bandEnd   = deltaH.index(-HALO, lastRow);
+
+        final double erosionBase   = Math.sqrt(erodibility);
+        final double transportBase = Math.sqrt(transportFactor);
+
+        final int lastSource = Math.min(height - 1, lastRow + 1);
+
+        for (int cj = Math.max(1, firstRow - 1); cj < lastSource; ++cj) {
+            final int heightRow = heights.index(0, cj);
+            final int deltaRow  = deltaH.index(0, cj);
+            final boolean ownsCenter = inBand(deltaRow, bandStart, bandEnd);
+
+            for (int column = 0; column < tiles.getColumns(); ++column) {
+                if (!tiles.isAwake(column, cj))
+                    continue;
+
+                final int firstColumn = Math.max(1, tiles.firstCell(column));
+                final int lastColumn  = Math.min(width - 1, tiles.lastCell(column));
+
+                for (int ci = firstColumn; ci < lastColumn; ++ci) {
+                    final int cell   = heightRow + ci;
+                    final int center = deltaRow + ci;
+
+                    final float refHeight = h[cell];
+                    final float load      = s != null ? s[cell] : HalfFloat.toFloat(sh[cell]);
+
+                    int   n          = 0;
+                    int   lowest     = 0;
+                    float lowestDrop = 0f;
+                    float aggregate  = 0f;
+
+                    for (int k = 0; k < 4; ++k) {
+                        final float relative = h[cell + offsets[k]] - refHeight;
+
+                        if (relative < 0f) {
+                            ++n;
+                            aggregate += relative;
+
+                            // Ties go to the later neighbour, matching the stable sort of the reference
+                            if (relative <= lowestDrop) {
+                                lowest     = k;
+                                lowestDrop = relative;
+                            }
+                        }
+                    }
+
+                    // Slumping down slopes steeper than the talus
+                    if (thermalRate > 0f && -lowestDrop > talus) {
+                        float excess = 0f;
+
+                        for (int k = 0; k < 4; ++k)
+                            excess += Math.max(0f, refHeight - h[cell + offsets[k]] - talus);
+
+                        final float slumped = thermalRate * (-lowestDrop - talus) / 2f;
+
+                        if (ownsCenter)
+                            dH[center] -= slumped;
+
+                        for (int k = 0; k < 4; ++k) {
+                            final float over   = refHeight - h[cell + offsets[k]] - talus;
+                            final int   target = center + offsets[k];
+
+                            if (over > 0f && inBand(target, bandStart, bandEnd))
+                                dH[target] += slumped * over / excess;
+                        }
+                    }
+
+                    if (!flowing)
+                        continue;
+
+                    // Filling a hole
+                    if (n == 0) {
+                        if (ownsCenter) {
+                            dH[center] += load;
+                            dS[center] -= load;
+                        }
+                        continue;
+                    }
+
+                    // A valley
+                    if (n == 1 || carvingFactor * lowestDrop < (aggregate - lowestDrop)) {
+                        final float drop       = - lowestDrop;
+                        final float erosion    = (float) (erosionBase + squeeze(10f * drop)) * drop / 2
+                            * erodibilityAt(cj * width + ci);
+                        final float transport  = (float) (transportBase + squeeze(1 / (drop + 1))) * load / 2;
+                        final float deposition = load - transport;
+
+                        final int target = center + offsets[lowest];
+
+                        if (inBand(target, bandStart, bandEnd)) {
+                            dS[target] += transport + erosion;
+                            dH[target] += deposition;
+                        }
+
+                        if (ownsCenter) {
+                            dH[center] -= erosion;
+                            dS[center] -= load;
+                        }
+                        continue;
+                    }
+
+                    // Spreading out
+                    final float transport  = load * (1 - squeeze(load + 1f) + transportFactor) / 2.0f;
+                    final float deposition = load - transport;
+
+                    if (ownsCenter)
+                        dS[center] -= load;
+
+                    for (int k = 0; k < 4; ++k) {
+                        final int target = center + offsets[k];
+
+                        if (h[cell + offsets[k]] - refHeight < 0f && inBand(target, bandStart, bandEnd)) {
+                            dH[target] += deposition / n;
+                            dS[target] += transport / n;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs the same routing as {@link ErosionState#stencilFlow(float, float, float)} as a gather.
+     * A first pass records, for every cell, which neighbours it sends to and how much each receives.
+     * A second pass then has every cell pull from the neighbours that send to it. Both passes write
+     * only to the cell being visited, so rows can be processed in any order. Contributions are summed
+     * in neighbour order rather than sweep order, so the result agrees with the scatter kernels up to
+     * float rounding.
+     *
+     * @param erodibility how easily material is eroded
+     * @param transportFactor how well sediment is transported
+     * @param carvingFactor how well rivers carve out canyons
+     */
+    public void gatherFlow(final float erodibility, final float transportFactor, final float carvingFactor) {
+        if (routes == null)
+            routes = new byte[(width + 2 * HALO) * (height + 2 * HALO)];
+
+        final ScalarField2D keepH = scratch.acquire(width, height, HALO);
+        final ScalarField2D keepS = scratch.acquire(width, height, HALO);
+        final ScalarField2D sendH = scratch.acquire(width, height, HALO);
+        final ScalarField2D sendS = scratch.acquire(width, height, HALO);
+
+        this.routeKeepH       = keepH;
+        this.routeKeepS       = keepS;
+        this.routeSendH       = sendH;
+        this.routeSendS       = sendS;
+        this.routeErodibility = erodibility;
+        this.routeTransport   = transportFactor;
+        this.routeCarving     = carvingFactor;
+
+        bands.forEachBand(height, routeBand);
+
+        this.gatherHeightStatistics   = statisticsFor(heights);
+        this.gatherSedimentStatistics = statisticsForSediment();
+
+        bands.forEachBand(height, gatherBand);
+
+        scratch.release(keepH);
+        scratch.release(keepS);
+        scratch.release(sendH);
+        scratch.release(sendS);
+    }
+
+    private void routeBand(final int first, final int last) {
+        routeBand(routeKeepH, routeKeepS, routeSendH, routeSendS, first, last, routeErodibility, routeTransport, routeCarving);
+    }
+
+    private void gatherBand(final int first, final int last) {
+        gatherBand(
+            routeKeepH,
+            routeKeepS,
+            routeSendH,
+            routeSendS,
+            gatherHeightStatistics,
+            gatherSedimentStatistics,
+            first,
+            last);
+    }
+
+    private void routeBand(
+        final ScalarField2D keepH,
+        final ScalarField2D keepS,
+        final ScalarField2D sendH,
+        final ScalarField2D sendS,
+        final int firstRow,
+        final int lastRow,
+        final float erodibility,
+        final float transportFactor,
+        final float carvingFactor) {
+
+        final float[] h  = heights.getValues();
+        final float[] s  = sediment == null ? null : sediment.getValues();
+        final short[] sh = sedimentHalves == null ? null : sedimentHalves.getValues();
+        final float[] kH = keepH.getValues();
+        final float[] kS = keepS.getValues();
+        final float[] oH = sendH.getValues();
+        final float[] oS = sendS.getValues();
+
+        final double erosionBase   = Math.sqrt(erodibility);
+        final double transportBase = Math.sqrt(transportFactor);
+
+        for (int cj = Math.max(1, firstRow); cj < Math.min(height - 1, lastRow); ++cj) {
+            final int heightRow = heights.index(0, cj);
+            final int routeRow  = keepH.index(0, cj);
+
+            for (int ci = 1; ci < width - 1; ++ci) {
+                final int cell  = heightRow + ci;
+                final int route = routeRow + ci;
+
+                final float refHeight = h[cell];
+                final float load      = s != null ? s[cell] : HalfFloat.toFloat(sh[cell]);
+
+                int   n          = 0;
+                int   lowest     = 0;
+                int   below      = 0;
+                float lowestDrop = 0f;
+                float aggregate  = 0f;
+
+                for (int k = 0; k < 4; ++k) {
+                    final float relative = h[cell + offsets[k]] - refHeight;
+
+                    if (relative < 0f) {
+                        ++n;
+                        below |= 1 << k;
+                        aggregate += relative;
+
+                        if (relative <= lowestDrop) {
+                            lowest     = k;
+                            lowestDrop = relative;
+                        }
+                    }
+                }
+
+                // Filling a hole
+                if (n == 0) {
+                    routes[route] = 0;
+                    kH[route] = load;
+                    kS[route] = - load;
+                    continue;
+                }
+
+                // A valley
+                if (n == 1 || carvingFactor * lowestDrop < (aggregate - lowestDrop)) {
+                    final float drop       = - lowestDrop;
+                    final float erosion    = (float) (erosionBase + squeeze(10f * drop)) * drop / 2
+                        * erodibilityAt(cj * width + ci);
+                    final float transport  = (float) (transportBase + squeeze(1 / (drop + 1))) * load / 2;
+                    final float deposition = load - transport;
+
+                    routes[route] = (byte) (1 << lowest);
+                    kH[route] = - erosion;
+                    kS[route] = - load;
+                    oH[route] = deposition;
+                    oS[route] = transport + erosion;
+                    continue;
+                }
+
+                // Spreading out
+                final float transport  = load * (1 - squeeze(load + 1f) + transportFactor) / 2.0f;
+                final float deposition = load - transport;
+
+                routes[route] = (byte) below;
+                kH[route] = 0f;
+                kS[route] = - load;
+                oH[route] = deposition / n;
+                oS[route] = transport / n;
+            }
+        }
+    }
+
+    private void gatherBand(
+        final ScalarField2D keepH,
+        final ScalarField2D keepS,
+        final ScalarField2D sendH,
+        final ScalarField2D sendS,
+        final RowStatistics heightStatistics,
+        final RowStatistics sedimentStatistics,
+        final int firstRow,
+        final int lastRow) {
+
+        final float[] h  = heights.getValues();
+        final float[] s  = sediment == null ? null : sediment.getValues();
+        final short[] sh = sedimentHalves == null ? null : sedimentHalves.getValues();
+        final float[] kH = keepH.getValues();
+        final float[] kS = keepS.getValues();
+        final float[] oH = sendH.getValues();
+        final float[] oS = sendS.getValues();
+
+        for (int j = firstRow; j < lastRow; ++j) {
+            final int heightRow = heights.index(0, j);
+            final int routeRow  = keepH.index(0, j);
+
+            for (int i = 0; i < width; ++i) {
+                final int cell  = heightRow + i;
+                final int route = routeRow + i;
+
+                float gainH = kH[route];
+                float gainS = kS[route];
+
+                for (int k = 0; k < 4; ++k) {
+                    final int   neighbour = route + offsets[k];
+                    // The neighbour in direction k reaches this cell through direction 3 - k
+                    final float receives  = (routes[neighbour] >>> (3 - k)) & 1;
+
+                    gainH += receives * oH[neighbour];
+                    gainS += receives * oS[neighbour];
+                }
+
+                h[cell] += gainH;
+
+                if (s != null)
+                    s[cell] += gainS;
+                else
+                    sh[cell] = HalfFloat.toHalf(HalfFloat.toFloat(sh[cell]) + gainS);
+            }
+
+            if (heightStatistics != null)
+                heightStatistics.record(j, h, heightRow, width);
+
+            if (sedimentStatistics != null) {
+                if (s != null)
+                    sedimentStatistics.record(j, s, heightRow, width);
+                else
+                    sedimentStatistics.record(j, sh, heightRow, 0, width);
+            }
+        }
+    }
+
+    /**
+     * Spreads a fraction {@code mask[1][1]} of every height onto its neighbours, weighted by the
+     * rest of the mask. Each cell gathers from its neighbours through the wrapped halo of the heights,
+     * so no edge needs patching and each row is written by one thread only. Masks that are symmetric
+     * under rotations and reflections, with positive corners, are factored into a horizontal and a
+     * vertical three-tap pass. All inner loops run over contiguous rows without branches, which lets
+     * the JIT vectorise them. Sleeping tiles are not blurred, except that their cells trade material
+     * with neighbours in awake tiles, which keeps the total unchanged.
+     *
+     * @param mask the weights given to the neighbours, with the fraction to spread in the centre
+     */
     public void blur(float[][] mask) {
-        float[][] deltas = new float[WIDTH + 2][HEIGHT + 2];
+        final ScalarField2D source  = heights;
+        final ScalarField2D blurred = scratch.acquireUncleared(width, height, HALO);
 
-        for (int i = 0; i < WIDTH + 2; ++i)
-            for (int j = 0; j < HEIGHT + 2; ++j)
-                deltas[i][j] = 0f;
+        this.blurSource     = source;
+        this.blurBlurred    = blurred;
+        this.blurWeights    = mask;
+        this.blurStatistics = statisticsFor(source);
 
-        for (int i = 1; i < WIDTH + 1; ++i) {
-            for (int j = 1; j < HEIGHT + 1; ++j) {
-                float temp = mask[1][1] * heights[i - 1][j - 1];
+        wrapHalo(source);
 
-                deltas[i - 1][j - 1] += mask[0][0] * temp;
-                deltas[i - 1][j]     += mask[0][1] * temp;
-                deltas[i - 1][j + 1] += mask[0][2] * temp;
+        // Every cell is written before it is read, in both the rows and the blurred heights
+        if (isSeparable(mask)) {
+            final ScalarField2D rows = scratch.acquireUncleared(width, height, HALO);
 
-                deltas[i][j - 1]     += mask[1][0] * temp;
-                deltas[i][j]         -= temp;
-                deltas[i][j + 1]     += mask[1][2] * temp;
-                
-                deltas[i + 1][j - 1] += mask[2][0] * temp;
-                deltas[i + 1][j]     += mask[2][1] * temp;
-                deltas[i + 1][j + 1] += mask[2][2] * temp;
+            this.blurRows = rows;
+
+            bands.forEachBand(height + 2 * HALO, blurRowsBand);
+            bands.forEachBand(height, blurColumnsBand);
+
+            scratch.release(rows);
+        } else {
+            bands.forEachBand(height, blurBand);
+        }
+
+        heights = blurred;
+        scratch.release(source);
+    }
+
+    private void blurRowsBand(final int first, final int last) {
+        blurRowsBand(blurSource, blurRows, blurWeights, first - HALO, last - HALO);
+    }
+
+    private void blurColumnsBand(final int first, final int last) {
+        blurColumnsBand(blurSource, blurRows, blurBlurred, blurWeights, blurStatistics, first, last);
+    }
+
+    private void blurBand(final int first, final int last) {
+        blurBand(blurSource, blurBlurred, blurWeights, blurStatistics, first, last);
+    }
+
+    /**
+     * A symmetric mask with corners {@code c} and edges {@code e} equals the outer product of
+     * {@code (a, b, a)} with itself, where {@code a = sqrt(c)} and {@code b = e / a}, less
+     * {@code b * b} at the centre.
+     */
+    private static boolean isSeparable(final float[][] mask) {
+        final float corner = mask[0][0];
+        final float edge   = mask[0][1];
+
+        return corner > 0f
+            && mask[0][2] == corner && mask[2][0] == corner && mask[2][2] == corner
+            && mask[1][0] == edge && mask[1][2] == edge && mask[2][1] == edge;
+    }
+
+    private void blurRowsBand(
+        final ScalarField2D source,
+        final ScalarField2D rows,
+        final float[][] mask,
+        final int firstRow,
+        final int lastRow) {
+
+        final float[] h = source.getValues();
+        final float[] r = rows.getValues();
+
+        final float outer = (float) Math.sqrt(mask[0][0]);
+        final float inner = mask[0][1] / outer;
+
+        for (int j = firstRow; j < lastRow; ++j) {
+            final int row = source.index(0, j);
+
+            for (int column = 0; column < tiles.getColumns(); ++column) {
+                if (!tiles.isAwake(column, j - 1) && !tiles.isAwake(column, j) && !tiles.isAwake(column, j + 1))
+                    continue;
+
+                for (int k = row + tiles.firstCell(column); k < row + tiles.lastCell(column); ++k)
+                    r[k] = outer * (h[k - 1] + h[k + 1]) + inner * h[k];
             }
         }
+    }
+
+    private void blurColumnsBand(
+        final ScalarField2D source,
+        final ScalarField2D rows,
+        final ScalarField2D blurred,
+        final float[][] mask,
+        final RowStatistics statistics,
+        final int firstRow,
+        final int lastRow) {
+
+        final float[] h   = source.getValues();
+        final float[] r   = rows.getValues();
+        final float[] out = blurred.getValues();
 
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j)
-                heights[i][j] += deltas[i + 1][j + 1];
+        final int stride = source.getStride();
 
-        for (int i = 0; i < WIDTH; ++i) {
-            heights[i][0] += deltas[i + 1][HEIGHT + 1];
-            heights[i][HEIGHT - 1] += deltas[i + 1][0];
+        final float spread = mask[1][1];
+        final float outer  = (float) Math.sqrt(mask[0][0]);
+        final float inner  = mask[0][1] / outer;
+        final float keep   = 1f - spread - spread * inner * inner;
+
+        for (int j = firstRow; j < lastRow; ++j) {
+            final int row = source.index(0, j);
+
+            for (int column = 0; column < tiles.getColumns(); ++column) {
+                final int first = row + tiles.firstCell(column);
+                final int last  = row + tiles.lastCell(column);
+
+                if (!tiles.isAwake(column, j)) {
+                    blurSleepingRow(h, out, mask, column, j, first, last, stride);
+                    continue;
+                }
+
+                for (int k = first; k < last; ++k)
+                    out[k] = keep * h[k] + spread * (outer * (r[k - stride] + r[k + stride]) + inner * r[k]);
+
+                if (tracking)
+                    recordChanges(column, j, h, out, first, last);
+            }
+
+            if (statistics != null)
+                recordRow(statistics, j, out, row);
         }
+    }
+
+    private void blurBand(
+        final ScalarField2D source,
+        final ScalarField2D blurred,
+        final float[][] mask,
+        final RowStatistics statistics,
+        final int firstRow,
+        final int lastRow) {
+
+        final float[] h   = source.getValues();
+        final float[] out = blurred.getValues();
+
+        final int stride = source.getStride();
+
+        // The neighbour at offset (di, dj) is weighted by mask[1 - di][1 - dj]
+        final float spread = mask[1][1];
+        final float keep   = 1f - spread;
+
+        final float upLeft    = spread * mask[2][2];
+        final float up        = spread * mask[1][2];
+        final float upRight   = spread * mask[0][2];
+        final float left      = spread * mask[2][1];
+        final float right     = spread * mask[0][1];
+        final float downLeft  = spread * mask[2][0];
+        final float down      = spread * mask[1][0];
+        final float downRight = spread * mask[0][0];
+
+        for (int j = firstRow; j < lastRow; ++j) {
+            final int row = source.index(0, j);
+
+            for (int column = 0; column < tiles.getColumns(); ++column) {
+                final int first = row + tiles.firstCell(column);
+                final int last  = row + tiles.lastCell(column);
+
+                if (!tiles.isAwake(column, j)) {
+                    blurSleepingRow(h, out, mask, column, j, first, last, stride);
+                    continue;
+                }
+
+                for (int k = first; k < last; ++k)
+                    out[k] = keep * h[k]
+                        + upLeft   * h[k - 1 - stride] + up   * h[k - stride] + upRight   * h[k + 1 - stride]
+                        + left     * h[k - 1]                                 + right     * h[k + 1]
+                        + downLeft * h[k - 1 + stride] + down * h[k + stride] + downRight * h[k + 1 + stride];
+
+                if (tracking)
+                    recordChanges(column, j, h, out, first, last);
+            }
 
-        for (int j = 0; j < HEIGHT; ++j) {
-            heights[0][j] += deltas[WIDTH + 1][j + 1];
-            heights[WIDTH - 1][j] += deltas[0][j + 1]; 
+            if (statistics != null)
+                recordRow(statistics, j, out, row);
         }
+    }
+
+    /**
+     * Blurs the cells of a row of a sleeping tile. Each one only exchanges material with the
+     * neighbours lying in awake tiles, which gather from it in turn, so that the blur neither creates
+     * nor destroys material where awake and sleeping tiles meet. Cells with no awake neighbour are
+     * copied as they are.
+     */
+    private void blurSleepingRow(
+        final float[] h,
+        final float[] out,
+        final float[][] mask,
+        final int column,
+        final int j,
+        final int first,
+        final int last,
+        final int stride) {
+
+        System.arraycopy(h, first, out, first, last - first);
+
+        if (!tiles.isReached(column, j))
+            return;
+
+        // Bit 3 (dj + 1) + dc + 1 is set when the tile at offset (dc, dj) in tiles from this one is awake
+        int awake = 0;
+
+        for (int dj = -1; dj <= 1; ++dj)
+            for (int dc = -1; dc <= 1; ++dc)
+                if (tiles.isAwake(Math.floorMod(column + dc, tiles.getColumns()), j + dj))
+                    awake |= 1 << (3 * (dj + 1) + dc + 1);
+
+        if (awake == 0)
+            return;
 
-        heights[0][0]                  += deltas[WIDTH + 1][HEIGHT + 1];
-        heights[WIDTH - 1][0]          += deltas[0][HEIGHT + 1];
-        heights[0][HEIGHT - 1]         += deltas[WIDTH + 1][0];
-        heights[WIDTH - 1][HEIGHT - 1] += deltas[0][0];
+        final float spread = mask[1][1];
+        final int   offset = first - tiles.firstCell(column);
+
+        for (int k = first; k < last; ++k) {
+            final int i = k - offset;
+
+            float exchange = 0f;
+
+            for (int dj = -1; dj <= 1; ++dj)
+                for (int di = -1; di <= 1; ++di) {
+                    if (di == 0 && dj == 0)
+                        continue;
+
+                    final int dc = i + di < tiles.firstCell(column) ? -1 : i + di >= tiles.lastCell(column) ? 1 : 0;
+
+                    // The neighbour at offset (di, dj) is weighted by mask[1 - di][1 - dj]
+                    if ((awake & 1 << (3 * (dj + 1) + dc + 1)) != 0)
+                        exchange += mask[1 - di][1 - dj] * (h[k + di + dj * stride] - h[k]);
+                }
+
+            out[k] += spread * exchange;
+        }
 
+        if (tracking)
+            recordChanges(column, j, h, out, first, last);
     }
 
     public void evaporate(final float maxAmount) {
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j)
-                water[i][j] -= Math.min(maxAmount, water[i][j]);
+        storeInFloats();
+
+        final float[] w = water.getValues();
+
+        for (int k = 0; k < w.length; ++k)
+            w[k] -= Math.min(maxAmount, w[k]);
     }
 
+    /**
+     * Rains on every cell, more on higher cells when the height dependence is positive.
+     *
+     * @param amount the depth of rain falling at height zero
+     * @param heightDependence the extra depth falling per unit of height, relative to the amount
+     */
     public void precipitate(final float amount, final float heightDependence) {
-        
+        storeInFloats();
+
+        this.precipitateAmount     = amount;
+        this.precipitateDependence = heightDependence;
+
+        bands.forEachBand(height, precipitateBand);
+    }
+
+    private void precipitateBand(final int first, final int last) {
+        final float[] h = heights.getValues();
+        final float[] w = water.getValues();
+
+        for (int j = first; j < last; ++j)
+            for (int cell = water.index(0, j); cell < water.index(width, j); ++cell)
+                w[cell] += precipitateAmount * Math.max(0f, 1f + precipitateDependence * h[cell]);
+    }
+
+    /**
+     * Advances the water with the virtual pipe model of Mei, Decaudin and Hu (2007). Every cell keeps
+     * the flow through a pipe to each of its neighbours, which the difference in water surface
+     * accelerates and which is scaled back wherever it would drain more than the cell holds. The
+     * water then moves by the flows, carrying along the same fraction of the suspended sediment as of
+     * the water. Where the water can carry more sediment than it does, given the tilt of the terrain
+     * and its discharge, it erodes the terrain; elsewhere the excess settles.
+     *
+     * <p>Each pass writes only the cells of its own rows and reads its neighbours from the halo, so
+     * the rows are split between threads.
+     *
+     * @param rain the depth of rain falling on each cell at height zero
+     * @param rainDependence the extra depth falling per unit of height, relative to the rain
+     * @param drying the depth of water evaporating from each cell
+     * @param capacity the sediment a stream can carry per unit of discharge and tilt
+     * @param erosion the fraction of its spare capacity a stream erodes
+     * @param deposition the fraction of its excess sediment a stream deposits
+     */
+    public void shallowWater(
+        final float rain,
+        final float rainDependence,
+        final float drying,
+        final float capacity,
+        final float erosion,
+        final float deposition) {
+
+        // The pipes swap the sediment and water for new fields every tick, which are floats
+        storeInFloats();
+
+        if (rain != 0f)
+            precipitate(rain, rainDependence);
+
+        heights.wrapHalo();
+        water.wrapHalo();
+
+        // The pipes start out empty on the first tick
+        final ScalarField2D[] pipes = outflow();
+
+        bands.forEachBand(height, pipeFlowBand);
+
+        for (final ScalarField2D pipe : pipes)
+            pipe.wrapHalo();
+
+        sediment.wrapHalo();
+
+        final ScalarField2D moved      = scratch.acquire(width, height, HALO);
+        final ScalarField2D carried    = scratch.acquire(width, height, HALO);
+        final ScalarField2D capacities = scratch.acquire(width, height, HALO);
+
+        this.pipeMoved      = moved;
+        this.pipeCarried    = carried;
+        this.pipeCapacities = capacities;
+        this.pipeCapacity   = capacity;
+
+        bands.forEachBand(height, pipeTransportBand);
+
+        scratch.release(water);
+        scratch.release(sediment);
+
+        water    = moved;
+        sediment = carried;
+
+        this.settleErosion            = erosion;
+        this.settleDeposition         = deposition;
+        this.settleHeightStatistics   = statisticsFor(heights);
+        this.settleSedimentStatistics = statisticsFor(sediment);
+
+        bands.forEachBand(height, settleBand);
+
+        scratch.release(capacities);
+
+        if (drying != 0f)
+            evaporate(drying);
+    }
+
+    private void pipeTransportBand(final int first, final int last) {
+        pipeTransportBand(pipeMoved, pipeCarried, pipeCapacities, pipeCapacity, first, last);
+    }
+
+    private void settleBand(final int first, final int last) {
+        settleBand(pipeCapacities, settleErosion, settleDeposition, settleHeightStatistics, settleSedimentStatistics, first, last);
     }
 
-    public void applyChanges(final float[][] delta, final float[][] value) {
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j) {
-                value[i][j]  += delta[i + 1][j + 1];
+    private void pipeFlowBand(final int firstRow, final int lastRow) {
+        final float[] h = heights.getValues();
+        final float[] w = water.getValues();
+
+        final float[] left  = outflow[0].getValues();
+        final float[] up    = outflow[1].getValues();
+        final float[] down  = outflow[2].getValues();
+        final float[] right = outflow[3].getValues();
+
+        final float acceleration = PIPE_TIME_STEP * PIPE_CONDUCTANCE;
+
+        for (int j = firstRow; j < lastRow; ++j)
+            for (int cell = water.index(0, j); cell < water.index(width, j); ++cell) {
+                final float surface = h[cell] + w[cell];
+
+                final float toLeft  = Math.max(0f, left[cell]  + acceleration * (surface - h[cell + offsets[0]] - w[cell + offsets[0]]));
+                final float toUp    = Math.max(0f, up[cell]    + acceleration * (surface - h[cell + offsets[1]] - w[cell + offsets[1]]));
+                final float toDown  = Math.max(0f, down[cell]  + acceleration * (surface - h[cell + offsets[2]] - w[cell + offsets[2]]));
+                final float toRight = Math.max(0f, right[cell] + acceleration * (surface - h[cell + offsets[3]] - w[cell + offsets[3]]));
+
+                // Rounding can leave a cell with a trace of negative water, which must not flow
+                final float available = Math.max(0f, w[cell]);
+                final float total     = (toLeft + toUp + toDown + toRight) * PIPE_TIME_STEP;
+                final float scale     = total > available ? available / total : 1f;
+
+                left[cell]  = scale * toLeft;
+                up[cell]    = scale * toUp;
+                down[cell]  = scale * toDown;
+                right[cell] = scale * toRight;
+            }
+    }
+
+    private void pipeTransportBand(
+        final ScalarField2D moved,
+        final ScalarField2D carried,
+        final ScalarField2D capacities,
+        final float capacity,
+        final int firstRow,
+        final int lastRow) {
+
+        final float[] h  = heights.getValues();
+        final float[] w  = water.getValues();
+        final float[] s  = sediment.getValues();
+        final float[] wN = moved.getValues();
+        final float[] sN = carried.getValues();
+        final float[] c  = capacities.getValues();
+
+        final float[] left  = outflow[0].getValues();
+        final float[] up    = outflow[1].getValues();
+        final float[] down  = outflow[2].getValues();
+        final float[] right = outflow[3].getValues();
+
+        for (int j = firstRow; j < lastRow; ++j)
+            for (int cell = water.index(0, j); cell < water.index(width, j); ++cell) {
+                final int l = cell + offsets[0];
+                final int u = cell + offsets[1];
+                final int d = cell + offsets[2];
+                final int r = cell + offsets[3];
+
+                final float out = (left[cell] + up[cell] + down[cell] + right[cell]) * PIPE_TIME_STEP;
+
+                final float inLeft  = right[l] * PIPE_TIME_STEP;
+                final float inUp    = down[u]  * PIPE_TIME_STEP;
+                final float inDown  = up[d]    * PIPE_TIME_STEP;
+                final float inRight = left[r]  * PIPE_TIME_STEP;
+
+                wN[cell] = w[cell] - out + inLeft + inUp + inDown + inRight;
+
+                // Sediment leaves with the same fraction of each cell's water
+                sN[cell] = (out > 0f ? s[cell] * (1f - out / w[cell]) : s[cell])
+                    + (inLeft  > 0f ? s[l] * inLeft  / w[l] : 0f)
+                    + (inUp    > 0f ? s[u] * inUp    / w[u] : 0f)
+                    + (inDown  > 0f ? s[d] * inDown  / w[d] : 0f)
+                    + (inRight > 0f ? s[r] * inRight / w[r] : 0f);
+
+                // The discharge is the velocity times the depth, which stays bounded as the water thins out
+                final float dischargeX = 0.5f * (right[l] - left[cell] + right[cell] - left[r]);
+                final float dischargeY = 0.5f * (down[u] - up[cell] + down[cell] - up[d]);
+                final float discharge  = (float) Math.sqrt(dischargeX * dischargeX + dischargeY * dischargeY);
+
+                final float slopeX = 0.5f * (h[r] - h[l]);
+                final float slopeY = 0.5f * (h[d] - h[u]);
+                final float slope2 = slopeX * slopeX + slopeY * slopeY;
+                final float tilt   = (float) Math.sqrt(slope2 / (1f + slope2));
+
+                final float pooling = Math.max(0f, 1f - wN[cell] / PIPE_SCOUR_DEPTH);
+
+                c[cell] = capacity * Math.max(tilt, PIPE_MIN_TILT) * discharge * pooling;
+            }
+    }
+
+    private void settleBand(
+        final ScalarField2D capacities,
+        final float erosion,
+        final float deposition,
+        final RowStatistics heightRows,
+        final RowStatistics sedimentRows,
+        final int firstRow,
+        final int lastRow) {
+
+        final float[] h = heights.getValues();
+        final float[] s = sediment.getValues();
+        final float[] c = capacities.getValues();
+
+        for (int j = firstRow; j < lastRow; ++j) {
+            final int row = heights.index(0, j);
+
+            for (int cell = row; cell < row + width; ++cell) {
+                final float change = c[cell] > s[cell]
+                    ? erosion * erodibilityAt(j * width + cell - row) * (c[cell] - s[cell])
+                    : deposition * (c[cell] - s[cell]);
+
+                h[cell] -= change;
+                s[cell] += change;
             }
 
-        for (int i = 0; i < WIDTH; ++i) {
-            value[i][0]          += delta[i + 1][HEIGHT + 1];
-            value[i][HEIGHT - 1] += delta[i + 1][0];
+            if (heightRows != null)
+                heightRows.record(j, h, row, width);
+
+            if (sedimentRows != null)
+                sedimentRows.record(j, s, row, width);
         }
+    }
+
+    /**
+     * Adds the deltas to the values. The deltas carry a halo of one cell which is first folded onto
+     * the opposite edge, making the grid toroidal. Changes to the heights and sediment are summed
+     * with a carry if compensated sums are on. The deltas are cleared as they are added, so that they
+     * are left zeroed; while tracking, only the tiles within reach are, as the deltas are zero
+     * everywhere else.
+     *
+     * @param delta the changes, with a halo of one cell
+     * @param value the field to update
+     */
+    public void applyChanges(final ScalarField2D delta, final ScalarField2D value) {
+        final ScalarField2D carry = !parameters.getCompensatedSums() ? null
+            : value == heights ? heightCarry()
+            : value == sediment ? sedimentCarry()
+            : null;
+
+        applyChanges(delta, value, null, statisticsFor(value), carry);
+    }
 
-        for (int j = 0; j < HEIGHT; ++j) {
-            value[0][j]         += delta[WIDTH + 1][j + 1];
-            value[WIDTH - 1][j] += delta[0][j + 1]; 
+    /**
+     * Adds the deltas to the sediment, however it is stored.
+     */
+    private void applySediment(final ScalarField2D delta) {
+        if (sedimentHalves == null) {
+            applyChanges(delta, sediment);
+            return;
         }
 
-        value[0][0]                  += delta[WIDTH + 1][HEIGHT + 1];
-        value[WIDTH - 1][0]          += delta[0][HEIGHT + 1];
-        value[0][HEIGHT - 1]         += delta[WIDTH + 1][0];
-        value[WIDTH - 1][HEIGHT - 1] += delta[0][0];
+        applyChanges(
+            delta,
+            null,
+            sedimentHalves,
+            statisticsForSediment(),
+            parameters.getCompensatedSums() ? sedimentCarry() : null);
+    }
+
+    /**
+     * Adds the deltas to the water, however it is stored.
+     */
+    private void applyWater(final ScalarField2D delta) {
+        if (waterHalves == null)
+            applyChanges(delta, water);
+        else
+            applyChanges(delta, null, waterHalves, null, null);
+    }
+
+    /**
+     * Adds the deltas to either the floats or the halves of a field, which share the layout of the
+     * deltas.
+     */
+    private void applyChanges(
+        final ScalarField2D delta,
+        final ScalarField2D floats,
+        final HalfField2D halves,
+        final RowStatistics statistics,
+        final ScalarField2D carry) {
+
+        this.applyDelta      = delta;
+        this.applyValue      = floats;
+        this.applyHalves     = halves;
+        this.applyStatistics = statistics;
+        this.applyCarry      = carry;
+
+        foldHalo(delta);
+
+        bands.forEachBand(height, applyBand);
+    }
+
+    private void applyBand(final int first, final int last) {
+        final float[] d = applyDelta.getValues();
+        final float[] v = applyValue == null ? null : applyValue.getValues();
+        final short[] w = applyHalves == null ? null : applyHalves.getValues();
+        final float[] c = applyCarry == null ? null : applyCarry.getValues();
+
+        final RowStatistics statistics = applyStatistics;
+
+        for (int j = first; j < last; ++j) {
+            final int row = applyDelta.index(0, j);
+
+            // Awake tiles only write within reach, so the deltas are zero everywhere else
+            for (int column = 0; column < tiles.getColumns(); ++column) {
+                if (!tiles.isReached(column, j))
+                    continue;
+
+                final int from = row + tiles.firstCell(column);
+                final int to   = row + tiles.lastCell(column);
+
+                if (tracking) {
+                    float change = 0f;
+
+                    for (int k = from; k < to; ++k)
+                        change = Math.max(change, Math.abs(d[k]));
+
+                    tiles.record(column, j, change);
+                }
+
+                if (w != null)
+                    addToHalves(d, w, c, from, to);
+                else if (c == null)
+                    for (int k = from; k < to; ++k) {
+                        v[k] += d[k];
+                        d[k]  = 0f;
+                    }
+                else
+                    // Kahan summation, the carry holding what the last addition rounded away
+                    for (int k = from; k < to; ++k) {
+                        final float change  = d[k] - c[k];
+                        final float updated = v[k] + change;
+
+                        c[k] = (updated - v[k]) - change;
+                        v[k] = updated;
+                        d[k] = 0f;
+                    }
+            }
+
+            if (statistics != null && w != null)
+                recordRow(statistics, j, w, row);
+            else if (statistics != null)
+                recordRow(statistics, j, v, row);
+        }
+    }
+
+    /**
+     * Adds the deltas in {@code [from, to)} to the halves and clears them. With a carry, the sums
+     * are compensated as for floats, the carry also holding what rounding to a half lost, so that
+     * changes too small to move a half add up until they do.
+     */
+    private static void addToHalves(final float[] d, final short[] w, final float[] c, final int from, final int to) {
+        for (int k = from; k < to; ++k) {
+            final float value = HalfFloat.toFloat(w[k]);
+
+            if (c == null) {
+                w[k] = HalfFloat.toHalf(value + d[k]);
+            } else {
+                final float change  = d[k] - c[k];
+                final short updated = HalfFloat.toHalf(value + change);
+
+                c[k] = (HalfFloat.toFloat(updated) - value) - change;
+                w[k] = updated;
+            }
+
+            d[k] = 0f;
+        }
+    }
+
+    /**
+     * Copies a field's cells within reach, the only ones the tick can change.
+     */
+    private ScalarField2D snapshot(final ScalarField2D field) {
+        final ScalarField2D copy = scratch.acquireUncleared(width, height, HALO);
+
+        this.snapshotField = field;
+        this.snapshotCopy  = copy;
+
+        bands.forEachBand(height, snapshotBand);
+
+        return copy;
+    }
+
+    private void snapshotBand(final int first, final int last) {
+        final float[] from = snapshotField.getValues();
+        final float[] to   = snapshotCopy.getValues();
+
+        for (int j = first; j < last; ++j) {
+            final int row = snapshotField.index(0, j);
+
+            for (int column = 0; column < tiles.getColumns(); ++column)
+                if (tiles.isReached(column, j))
+                    System.arraycopy(
+                        from,
+                        row + tiles.firstCell(column),
+                        to,
+                        row + tiles.firstCell(column),
+                        tiles.lastCell(column) - tiles.firstCell(column));
+        }
+    }
+
+    /**
+     * Wraps the halo of a field around the torus. While tracking, only the halo beside the tiles
+     * within reach is wrapped, as no kernel reads the rest; a row of the halo above or below takes
+     * in the corners beside it.
+     */
+    private void wrapHalo(final ScalarField2D field) {
+        if (!tracking) {
+            field.wrapHalo();
+            return;
+        }
+
+        final float[] v    = field.getValues();
+        final int     last = tiles.getColumns() - 1;
+
+        for (int j = 0; j < height; ++j) {
+            if (tiles.isReached(0, j))
+                v[field.index(-HALO, j)] = v[field.index(width - HALO, j)];
+
+            if (tiles.isReached(last, j))
+                v[field.index(width, j)] = v[field.index(0, j)];
+        }
+
+        for (int column = 0; column <= last; ++column) {
+            final int first = column == 0 ? -HALO : tiles.firstCell(column);
+            final int end   = column == last ? width + HALO : tiles.lastCell(column);
+
+            if (tiles.isReached(column, 0))
+                for (int i = first; i < end; ++i)
+                    v[field.index(i, -HALO)] = v[field.index(Math.floorMod(i, width), height - HALO)];
+
+            if (tiles.isReached(column, height - 1))
+                for (int i = first; i < end; ++i)
+                    v[field.index(i, height)] = v[field.index(Math.floorMod(i, width), 0)];
+        }
+    }
+
+    /**
+     * Adds the halo of the deltas onto the cells it wraps onto and clears it. While tracking, only
+     * the halo beside the tiles within reach can hold changes, so only that is folded. The rows above
+     * and below are folded first, corners and all, as {@link ScalarField2D#foldHalo} does.
+     */
+    private void foldHalo(final ScalarField2D delta) {
+        if (!tracking) {
+            delta.foldHalo();
+            return;
+        }
+
+        final float[] d    = delta.getValues();
+        final int     last = tiles.getColumns() - 1;
+
+        for (int column = 0; column <= last; ++column) {
+            final int first = column == 0 ? -HALO : tiles.firstCell(column);
+            final int end   = column == last ? width + HALO : tiles.lastCell(column);
+
+            if (tiles.isReached(column, 0))
+                for (int i = first; i < end; ++i) {
+                    d[delta.index(i, height - HALO)] += d[delta.index(i, -HALO)];
+                    d[delta.index(i, -HALO)] = 0f;
+                }
+
+            if (tiles.isReached(column, height - 1))
+                for (int i = first; i < end; ++i) {
+                    d[delta.index(i, 0)] += d[delta.index(i, height)];
+                    d[delta.index(i, height)] = 0f;
+                }
+        }
+
+        for (int j = 0; j < height; ++j) {
+            if (tiles.isReached(0, j)) {
+                d[delta.index(width - HALO, j)] += d[delta.index(-HALO, j)];
+                d[delta.index(-HALO, j)] = 0f;
+            }
+
+            if (tiles.isReached(last, j)) {
+                d[delta.index(0, j)] += d[delta.index(width, j)];
+                d[delta.index(width, j)] = 0f;
+            }
+        }
+    }
+
+    /**
+     * Lays the rise of every height since the snapshot on its strata as a deposit, or takes the fall
+     * off them. Uplift raises the whole column, bedrock and all, so it is no deposit and is left out,
+     * except at the outlet the implicit model holds fixed.
+     *
+     * @param before the heights at the start of the tick
+     * @param uplift how far the tick raised the columns
+     */
+    private void layerChanges(final ScalarField2D before, final float uplift) {
+        this.layerStrata = strata();
+        this.layerBefore = before;
+        this.layerUplift = uplift;
+        this.layerOutlet = uplift == 0f ? -1 : depressions().getOrder()[0];
+
+        // Ages are kept as ints, so past the largest one every deposit takes that age
+        this.layerAge = (int) Math.min(tick, Integer.MAX_VALUE);
+
+        bands.forEachBand(height, layerBand);
+    }
+
+    private void layerBand(final int first, final int last) {
+        final float[] h = heights.getValues();
+        final float[] b = layerBefore.getValues();
+        final float   uplift = layerUplift;
+        final int     outlet = layerOutlet;
+        final int     age    = layerAge;
+        final Stratigraphy layers = layerStrata;
+
+        for (int j = first; j < last; ++j) {
+            final int row = heights.index(0, j);
+
+            // Sleeping tiles out of reach kept their heights
+            for (int column = 0; column < tiles.getColumns(); ++column) {
+                if (!tiles.isReached(column, j))
+                    continue;
+
+                for (int cell = row + tiles.firstCell(column); cell < row + tiles.lastCell(column); ++cell) {
+                    final float change = h[cell] - b[cell] - (cell == outlet ? 0f : uplift);
+
+                    if (change > 0f)
+                        layers.deposit(j * width + cell - row, change, Stratigraphy.DEPOSIT, age);
+                    else if (change < 0f)
+                        layers.erode(j * width + cell - row, -change);
+                }
+            }
+        }
+    }
+
+    private void recordChanges(final int column, final int j, final float[] before, final float[] after, final int first, final int last) {
+        float change = 0f;
+
+        for (int k = first; k < last; ++k)
+            change = Math.max(change, Math.abs(after[k] - before[k]));
+
+        tiles.record(column, j, change);
     }
 
     public static ErosionState erosionState(final ErosionParameters parameters, final float initialHeight) {
@@ -313,12 +2725,25 @@ public class ErosionState {
     public static ErosionState fromHeightFunction(final ErosionParameters parameters,  final Function<Integer, Function<Integer, Float>> heightFunction) {
         final ErosionState erosionState = new ErosionState(parameters, false);
 
-        for (int i = 0; i < WIDTH; ++i)
-            for (int j = 0; j < HEIGHT; ++j)
-                erosionState.heights[i][j] = heightFunction.apply(j).apply(i);
+        for (int j = 0; j < erosionState.height; ++j)
+            for (int i = 0; i < erosionState.width; ++i)
+                erosionState.heights.set(i, j, heightFunction.apply(j).apply(i));
 
         return erosionState;
     }
+
+    private static boolean inBand(final int index, final int bandStart, final int bandEnd) {
+        return bandStart <= index && index < bandEnd;
+    }
+
+    private static int[] neighbourOffsets(final int stride) {
+        final int[] offsets = new int[4];
+
+        for (int k = 0; k < 4; ++k)
+            offsets[k] = NEIGHBOUR_DI[k] + NEIGHBOUR_DJ[k] * stride;
+
+        return offsets;
+    }
     
     private static float squeeze(final float f) {
         return (float) (Math.atan(f) / Math.PI * 2.0f);
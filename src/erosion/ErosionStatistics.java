@@ -0,0 +1,95 @@
+package erosion;
+
+/**
+ * A snapshot of the global height and sediment statistics of an {@link ErosionState}, taken at the
+ * end of a tick. The state takes its samples into two snapshots in turn, so a sample it gives out
+ * is overwritten by the sample after next.
+ */
+public final class ErosionStatistics {
+
+    private long tick;
+
+    private double heightSum;
+    private double sedimentSum;
+
+    private float minHeight;
+    private float maxHeight;
+    private float minSediment;
+    private float maxSediment;
+
+    public ErosionStatistics(
+        final long tick,
+        final double heightSum,
+        final double sedimentSum,
+        final float minHeight,
+        final float maxHeight,
+        final float minSediment,
+        final float maxSediment) {
+
+        set(tick, heightSum, sedimentSum, minHeight, maxHeight, minSediment, maxSediment);
+    }
+
+    void set(
+        final long tick,
+        final double heightSum,
+        final double sedimentSum,
+        final float minHeight,
+        final float maxHeight,
+        final float minSediment,
+        final float maxSediment) {
+
+        this.tick        = tick;
+        this.heightSum   = heightSum;
+        this.sedimentSum = sedimentSum;
+        this.minHeight   = minHeight;
+        this.maxHeight   = maxHeight;
+        this.minSediment = minSediment;
+        this.maxSediment = maxSediment;
+    }
+
+    /**
+     * @return the number of ticks the state had evolved when the snapshot was taken
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    public double getHeightSum() {
+        return this.heightSum;
+    }
+
+    public double getSedimentSum() {
+        return this.sedimentSum;
+    }
+
+    /**
+     * @return the total amount of material, which the flow kernels conserve
+     */
+    public double getTotal() {
+        return this.heightSum + this.sedimentSum;
+    }
+
+    public float getMinHeight() {
+        return this.minHeight;
+    }
+
+    public float getMaxHeight() {
+        return this.maxHeight;
+    }
+
+    public float getMinSediment() {
+        return this.minSediment;
+    }
+
+    public float getMaxSediment() {
+        return this.maxSediment;
+    }
+
+    @Override
+    public String toString() {
+        return "tick: " + this.tick
+            + ", height: " + this.heightSum + ", sediment: " + this.sedimentSum + ", total: " + getTotal()
+            + ", min/max height: (" + this.minHeight + ", " + this.maxHeight + ")"
+            + ", min/max sediment: (" + this.minSediment + ", " + this.maxSediment + ")";
+    }
+}
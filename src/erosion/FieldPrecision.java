@@ -0,0 +1,11 @@
+package erosion;
+
+/**
+ * The precision the sediment and water are stored at.
+ */
+public enum FieldPrecision {
+    /** Full 32-bit floats. */
+    SINGLE,
+    /** 16-bit halves, converted to floats as kernels read them and back as they write them. */
+    HALF
+}
@@ -0,0 +1,307 @@
+package erosion;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+import util.concurrent.RowBandScheduler;
+import util.data.grids.ScalarField2D;
+
+/**
+ * Computes the D8 drainage of a height field: each cell drains into the steepest of its eight
+ * neighbours that is lower than it, or into itself if none is, and the drainage area of a cell is
+ * the number of cells that drain through it, itself included. The field wraps around as a torus.
+ *
+ * <p>A full computation visits the receiver graph in topological order (Kahn's algorithm), from the
+ * sources down to the pits, in linear time. When only a few receivers change between two updates,
+ * the area of each cell whose receiver changed is instead moved from the cells along its old path
+ * to the cells along its new one.
+ *
+ * <p>Every array is laid out like the field the drainage was computed from.
+ */
+public final class FlowAccumulation {
+
+    private static final int[]   NEIGHBOUR_DI   = { -1, 0, 1, -1, 1, -1, 0, 1 };
+    private static final int[]   NEIGHBOUR_DJ   = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final float[] NEIGHBOUR_DIST = {
+        (float) Math.sqrt(2), 1f, (float) Math.sqrt(2), 1f, 1f, (float) Math.sqrt(2), 1f, (float) Math.sqrt(2)
+    };
+
+    // Above this fraction of changed receivers, walking the paths costs more than starting over
+    private static final int INCREMENTAL_FRACTION = 16;
+
+    private final int width;
+    private final int height;
+    private final int halo;
+    private final int stride;
+    private final int cells;
+
+    private final RowBandScheduler bands;
+
+    // The heights the receivers are being found for, read by a kernel built once so that finding
+    // them allocates nothing
+    private final RowBandScheduler.BandKernel receiversBand = this::receiversBand;
+
+    private ScalarField2D receiverHeights;
+
+    private final int[] offsets;
+
+    private int[] receivers;
+    private int[] nextReceivers;
+
+    private final int[] areas;
+    private float[] slopes;
+    private float[] nextSlopes;
+    private final int[] donors;
+    private final int[] order;
+
+    private boolean computed = false;
+    private boolean incremental = false;
+
+    /**
+     * @param width the number of columns of the fields to drain
+     * @param height the number of rows of the fields to drain
+     * @param halo the width of the border around the fields to drain, at least one
+     * @param bands the scheduler to find the receivers with
+     */
+    public FlowAccumulation(final int width, final int height, final int halo, final RowBandScheduler bands) {
+        Preconditions.throwIfSatisfies(halo, h -> h < 1, "Drainage needs a halo to read neighbours from.");
+
+        this.width  = width;
+        this.height = height;
+        this.halo   = halo;
+        this.stride = width + 2 * halo;
+        this.cells  = width * height;
+        this.bands  = bands;
+
+        final int length = this.stride * (height + 2 * halo);
+
+        this.offsets = new int[NEIGHBOUR_DI.length];
+
+        for (int k = 0; k < NEIGHBOUR_DI.length; ++k)
+            this.offsets[k] = NEIGHBOUR_DI[k] + NEIGHBOUR_DJ[k] * this.stride;
+
+        this.receivers     = new int[length];
+        this.nextReceivers = new int[length];
+        this.slopes        = new float[length];
+        this.nextSlopes    = new float[length];
+        this.areas         = new int[length];
+        this.donors        = new int[length];
+        this.order         = new int[this.cells];
+    }
+
+    /**
+     * Finds the receivers of the given field and computes the drainage areas from scratch.
+     *
+     * @param heights the field to drain, whose halo is wrapped by this call
+     */
+    public void compute(final ScalarField2D heights) {
+        findReceivers(heights);
+        swapReceivers();
+        accumulate();
+
+        this.computed    = true;
+        this.incremental = false;
+    }
+
+    /**
+     * Finds the receivers of the given field and brings the drainage areas up to date, moving the
+     * areas of the cells whose receivers changed if there are few enough of them.
+     *
+     * @param heights the field to drain, whose halo is wrapped by this call
+     */
+    public void update(final ScalarField2D heights) {
+        if (!this.computed) {
+            compute(heights);
+            return;
+        }
+
+        findReceivers(heights);
+
+        int changed = 0;
+
+        for (int j = 0; j < this.height; ++j)
+            for (int c = index(0, j); c < index(this.width, j); ++c)
+                if (this.nextReceivers[c] != this.receivers[c])
+                    ++changed;
+
+        this.incremental = changed <= this.cells / INCREMENTAL_FRACTION && moveAreas();
+
+        if (this.incremental) {
+            swapSlopes();
+        } else {
+            swapReceivers();
+            accumulate();
+        }
+    }
+
+    /**
+     * @return the cell each cell drains into, a pit draining into itself
+     */
+    public int[] getReceivers() {
+        return this.receivers;
+    }
+
+    /**
+     * @return the number of cells draining through each cell, itself included
+     */
+    public int[] getAreas() {
+        return this.areas;
+    }
+
+    /**
+     * @return the drop from each cell to its receiver per unit of distance between them
+     */
+    public float[] getSlopes() {
+        return this.slopes;
+    }
+
+    /**
+     * @return whether the most recent update moved areas rather than recomputing them
+     */
+    public boolean wasIncremental() {
+        return this.incremental;
+    }
+
+    private void findReceivers(final ScalarField2D heights) {
+        heights.wrapHalo();
+
+        this.receiverHeights = heights;
+        this.bands.forEachBand(this.height, this.receiversBand);
+        this.receiverHeights = null;
+    }
+
+    private void receiversBand(final int first, final int last) {
+        final float[] h = this.receiverHeights.getValues();
+
+        for (int j = first; j < last; ++j)
+            for (int i = 0; i < this.width; ++i) {
+                final int cell = index(i, j);
+
+                int   steepest = -1;
+                float slope    = 0f;
+
+                for (int k = 0; k < this.offsets.length; ++k) {
+                    final float drop = (h[cell] - h[cell + this.offsets[k]]) / NEIGHBOUR_DIST[k];
+
+                    if (drop > slope) {
+                        slope    = drop;
+                        steepest = k;
+                    }
+                }
+
+                this.nextSlopes[cell]    = slope;
+                this.nextReceivers[cell] = steepest < 0
+                    ? cell
+                    : index(
+                        Math.floorMod(i + NEIGHBOUR_DI[steepest], this.width),
+                        Math.floorMod(j + NEIGHBOUR_DJ[steepest], this.height));
+            }
+    }
+
+    private void swapReceivers() {
+        final int[] swap   = this.receivers;
+        this.receivers     = this.nextReceivers;
+        this.nextReceivers = swap;
+
+        swapSlopes();
+    }
+
+    private void swapSlopes() {
+        final float[] swap = this.slopes;
+        this.slopes        = this.nextSlopes;
+        this.nextSlopes    = swap;
+    }
+
+    private void accumulate() {
+        Arrays.fill(this.donors, 0);
+
+        int queued = 0;
+
+        for (int j = 0; j < this.height; ++j)
+            for (int c = index(0, j); c < index(this.width, j); ++c) {
+                this.areas[c] = 1;
+
+                if (this.receivers[c] != c)
+                    ++this.donors[this.receivers[c]];
+            }
+
+        for (int j = 0; j < this.height; ++j)
+            for (int c = index(0, j); c < index(this.width, j); ++c)
+                if (this.donors[c] == 0)
+                    this.order[queued++] = c;
+
+        // Receivers always lie strictly lower than their donors, so every cell is eventually queued
+        for (int n = 0; n < queued; ++n) {
+            final int cell     = this.order[n];
+            final int receiver = this.receivers[cell];
+
+            if (receiver == cell)
+                continue;
+
+            this.areas[receiver] += this.areas[cell];
+
+            if (--this.donors[receiver] == 0)
+                this.order[queued++] = receiver;
+        }
+    }
+
+    /**
+     * Moves the area of every cell whose receiver changed from its old path to its new one. Every
+     * such cell is first cut from its old receiver, taking its area off the cells downstream up to
+     * the nearest pit or cut cell, and only then attached to its new receiver. The graph therefore
+     * only ever holds edges of either the old or the new graph, both acyclic, and the result does
+     * not depend on the order the cells are visited in. The walks are abandoned once they have
+     * visited as many cells as the field holds, as recomputing is then cheaper.
+     *
+     * @return whether every area was moved, or false if the areas must be recomputed
+     */
+    private boolean moveAreas() {
+        int budget = this.cells;
+
+        for (int j = 0; j < this.height && budget >= 0; ++j)
+            for (int c = index(0, j); c < index(this.width, j); ++c) {
+                final int receiver = this.receivers[c];
+
+                if (this.nextReceivers[c] == receiver || receiver == c)
+                    continue;
+
+                budget = walk(receiver, -this.areas[c], budget);
+                this.receivers[c] = c;
+            }
+
+        for (int j = 0; j < this.height && budget >= 0; ++j)
+            for (int c = index(0, j); c < index(this.width, j); ++c) {
+                final int next = this.nextReceivers[c];
+
+                if (next == this.receivers[c])
+                    continue;
+
+                this.receivers[c] = next;
+                budget = walk(next, this.areas[c], budget);
+            }
+
+        return budget >= 0;
+    }
+
+    /**
+     * @return the budget left after the walk, negative if it ran out
+     */
+    private int walk(int cell, final int area, int budget) {
+        while (budget-- >= 0) {
+            this.areas[cell] += area;
+
+            final int receiver = this.receivers[cell];
+
+            if (receiver == cell)
+                break;
+
+            cell = receiver;
+        }
+
+        return budget;
+    }
+
+    private int index(final int i, final int j) {
+        return (j + this.halo) * this.stride + i + this.halo;
+    }
+}
@@ -0,0 +1,14 @@
+package erosion;
+
+/**
+ * The kernels available to {@link ErosionState#evolve()} for routing sediment and eroded
+ * material downhill. Every engine implements the same steepest-descent, valley and spread rules.
+ */
+public enum FlowEngine {
+    /** The original list-based kernel, kept as a reference to compare the others against */
+    REFERENCE,
+    /** An allocation-free kernel operating on primitive neighbour slots */
+    STENCIL,
+    /** A kernel in which every cell pulls what its neighbours send it, so no two cells write alike */
+    GATHER;
+}
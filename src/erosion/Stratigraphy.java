@@ -0,0 +1,329 @@
+package erosion;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+
+/**
+ * The layers of material laid down over the bedrock of every cell, stored as columns of primitive
+ * arrays rather than as objects. Each column holds up to a fixed number of layers, bottom first,
+ * at {@code cell * depth + layer}. When a full column is deposited on, its bottom layer moves to a
+ * pool of overflow layers shared by every column, linked from the topmost down, and moves back once
+ * the column has been eroded down to the bedrock.
+ *
+ * <p>Material deposited on a layer of the same type laid down in the same epoch thickens that
+ * layer, so a column gains at most one layer of each type per epoch. Erosion takes material off
+ * the top layers, and then off the bedrock, which is not stored.
+ *
+ * <p>Columns can be deposited on and eroded from concurrently, as long as no column is touched by
+ * two threads at once.
+ */
+public final class Stratigraphy {
+
+    /** The material under every column, and the material at the top of an empty one. */
+    public static final byte BEDROCK = 0;
+    /** Material deposited by erosion. */
+    public static final byte DEPOSIT = 1;
+
+    private final int depth;
+    private final int epoch;
+
+    // The erodibility of each type of material, relative to the erodibility of the terrain
+    private final float[] erodibilities;
+
+    private final float[] thicknesses;
+    private final int[]   ages;
+    private final byte[]  types;
+    private final byte[]  counts;
+
+    // The topmost overflow layer of each column, or -1, each layer linking to the one below it
+    private final int[] overflowHeads;
+
+    private float[] overflowThicknesses = new float[0];
+    private int[]   overflowAges        = new int[0];
+    private byte[]  overflowTypes       = new byte[0];
+    private int[]   overflowNext        = new int[0];
+
+    private int overflowSize = 0;
+    private int freeHead     = -1;
+
+    /**
+     * @param cells the number of columns
+     * @param depth the number of layers each column holds before overflowing
+     * @param epoch the number of ticks over which deposits of the same type join the same layer
+     * @param erodibilities the relative erodibility of each type of material
+     */
+    public Stratigraphy(final int cells, final int depth, final int epoch, final float[] erodibilities) {
+        Preconditions.throwIfSatisfies(depth, d -> d < 1 || d > Byte.MAX_VALUE, "Columns must hold between 1 and 127 layers.");
+        Preconditions.throwIfSatisfies(epoch, e -> e < 1, "Epochs must last at least one tick.");
+
+        this.depth         = depth;
+        this.epoch         = epoch;
+        this.erodibilities = erodibilities.clone();
+
+        this.thicknesses   = new float[cells * depth];
+        this.ages          = new int[cells * depth];
+        this.types         = new byte[cells * depth];
+        this.counts        = new byte[cells];
+        this.overflowHeads = new int[cells];
+
+        Arrays.fill(this.overflowHeads, -1);
+    }
+
+    /**
+     * Lays material on top of a column.
+     *
+     * @param cell the column
+     * @param amount the thickness of material to lay down, positive
+     * @param type the type of the material
+     * @param age the tick the material is laid down in
+     */
+    public void deposit(final int cell, final float amount, final byte type, final int age) {
+        final int count = this.counts[cell];
+        final int top   = cell * this.depth + count - 1;
+
+        if (count > 0 && this.types[top] == type && this.ages[top] / this.epoch == age / this.epoch) {
+            this.thicknesses[top] += amount;
+            return;
+        }
+
+        if (count == this.depth)
+            spill(cell);
+
+        final int layer = cell * this.depth + this.counts[cell]++;
+
+        this.thicknesses[layer] = amount;
+        this.ages[layer]        = age;
+        this.types[layer]       = type;
+    }
+
+    /**
+     * Starts a new layer on top of a column, even over a layer of the same type and epoch, so that a
+     * column copied by {@link #getLayers} can be rebuilt layer by layer.
+     *
+     * @param cell the column
+     * @param thickness the thickness of the layer
+     * @param type the type of the material
+     * @param age the tick the layer was started in
+     */
+    public void push(final int cell, final float thickness, final byte type, final int age) {
+        if (this.counts[cell] == this.depth)
+            spill(cell);
+
+        final int layer = cell * this.depth + this.counts[cell]++;
+
+        this.thicknesses[layer] = thickness;
+        this.ages[layer]        = age;
+        this.types[layer]       = type;
+    }
+
+    /**
+     * Takes material off the top of a column, down into the bedrock if need be.
+     *
+     * @param cell the column
+     * @param amount the thickness of material to take off, positive
+     */
+    public void erode(final int cell, float amount) {
+        while (amount > 0f && this.counts[cell] > 0) {
+            final int top = cell * this.depth + this.counts[cell] - 1;
+
+            if (this.thicknesses[top] > amount) {
+                this.thicknesses[top] -= amount;
+                return;
+            }
+
+            amount -= this.thicknesses[top];
+
+            if (--this.counts[cell] == 0 && this.overflowHeads[cell] >= 0)
+                refill(cell);
+        }
+    }
+
+    /**
+     * @param cell the column
+     * @return the relative erodibility of the material at the top of the column
+     */
+    public float getErodibility(final int cell) {
+        final int count = this.counts[cell];
+
+        // Only an empty column has an empty overflow
+        return this.erodibilities[count > 0 ? this.types[cell * this.depth + count - 1] : BEDROCK];
+    }
+
+    /**
+     * @param cell the column
+     * @return the number of layers in the column, the overflow included
+     */
+    public int getLayerCount(final int cell) {
+        int count = this.counts[cell];
+
+        for (int k = this.overflowHeads[cell]; k >= 0; k = this.overflowNext[k])
+            ++count;
+
+        return count;
+    }
+
+    /**
+     * @param cell the column
+     * @param layer the layer, counted from the top down
+     * @return the thickness of the layer
+     */
+    public float getThickness(final int cell, final int layer) {
+        final int k = locate(cell, layer);
+        return k >= 0 ? this.thicknesses[k] : this.overflowThicknesses[-k - 1];
+    }
+
+    /**
+     * @param cell the column
+     * @param layer the layer, counted from the top down
+     * @return the tick the layer was started in
+     */
+    public int getAge(final int cell, final int layer) {
+        final int k = locate(cell, layer);
+        return k >= 0 ? this.ages[k] : this.overflowAges[-k - 1];
+    }
+
+    /**
+     * @param cell the column
+     * @param layer the layer, counted from the top down
+     * @return the type of material of the layer, or {@link #BEDROCK} below the last layer
+     */
+    public byte getType(final int cell, final int layer) {
+        if (layer >= getLayerCount(cell))
+            return BEDROCK;
+
+        final int k = locate(cell, layer);
+        return k >= 0 ? this.types[k] : this.overflowTypes[-k - 1];
+    }
+
+    /**
+     * @param cell the column
+     * @return the thickness of every layer of the column, the overflow included
+     */
+    public float getTotalThickness(final int cell) {
+        float total = 0f;
+
+        for (int layer = 0; layer < this.counts[cell]; ++layer)
+            total += this.thicknesses[cell * this.depth + layer];
+
+        for (int k = this.overflowHeads[cell]; k >= 0; k = this.overflowNext[k])
+            total += this.overflowThicknesses[k];
+
+        return total;
+    }
+
+    /**
+     * Copies the layers of a column, the overflow included, bottom first.
+     *
+     * @param cell the column
+     * @param thicknesses the array to copy the thicknesses into
+     * @param ages the array to copy the ages into
+     * @param types the array to copy the types into
+     * @param offset where the bottom layer goes in the arrays
+     * @return the number of layers copied
+     */
+    public int getLayers(final int cell, final float[] thicknesses, final int[] ages, final byte[] types, final int offset) {
+        final int count = getLayerCount(cell);
+
+        // The overflow is linked from its top down and lies under the column
+        int n = offset + count - this.counts[cell];
+
+        for (int k = this.overflowHeads[cell]; k >= 0; k = this.overflowNext[k]) {
+            --n;
+            thicknesses[n] = this.overflowThicknesses[k];
+            ages[n]        = this.overflowAges[k];
+            types[n]       = this.overflowTypes[k];
+        }
+
+        final int bottom = cell * this.depth;
+        final int above  = offset + count - this.counts[cell];
+
+        System.arraycopy(this.thicknesses, bottom, thicknesses, above, this.counts[cell]);
+        System.arraycopy(this.ages, bottom, ages, above, this.counts[cell]);
+        System.arraycopy(this.types, bottom, types, above, this.counts[cell]);
+
+        return count;
+    }
+
+    /**
+     * @return the number of bytes held by the columns and the overflow pool
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) this.thicknesses.length * (Float.BYTES + Integer.BYTES + Byte.BYTES)
+            + (long) this.counts.length * (Byte.BYTES + Integer.BYTES)
+            + (long) this.overflowNext.length * (Float.BYTES + Integer.BYTES + Byte.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * @return the position of the layer in the columns, or minus one less its position in the pool
+     */
+    private int locate(final int cell, final int layer) {
+        final int count = this.counts[cell];
+
+        if (layer < count)
+            return cell * this.depth + count - 1 - layer;
+
+        int k = this.overflowHeads[cell];
+
+        for (int n = count; n < layer; ++n)
+            k = this.overflowNext[k];
+
+        return -k - 1;
+    }
+
+    /**
+     * Moves the bottom layer of a full column to the top of its overflow, shifting the others down.
+     */
+    private synchronized void spill(final int cell) {
+        final int bottom = cell * this.depth;
+        final int slot   = allocate();
+
+        this.overflowThicknesses[slot] = this.thicknesses[bottom];
+        this.overflowAges[slot]        = this.ages[bottom];
+        this.overflowTypes[slot]       = this.types[bottom];
+        this.overflowNext[slot]        = this.overflowHeads[cell];
+        this.overflowHeads[cell]       = slot;
+
+        System.arraycopy(this.thicknesses, bottom + 1, this.thicknesses, bottom, this.depth - 1);
+        System.arraycopy(this.ages, bottom + 1, this.ages, bottom, this.depth - 1);
+        System.arraycopy(this.types, bottom + 1, this.types, bottom, this.depth - 1);
+
+        --this.counts[cell];
+    }
+
+    /**
+     * Moves the top layer of the overflow of an empty column back into the column.
+     */
+    private synchronized void refill(final int cell) {
+        final int slot   = this.overflowHeads[cell];
+        final int bottom = cell * this.depth;
+
+        this.thicknesses[bottom] = this.overflowThicknesses[slot];
+        this.ages[bottom]        = this.overflowAges[slot];
+        this.types[bottom]       = this.overflowTypes[slot];
+        this.counts[cell]        = 1;
+
+        this.overflowHeads[cell] = this.overflowNext[slot];
+        this.overflowNext[slot]  = this.freeHead;
+        this.freeHead            = slot;
+    }
+
+    private int allocate() {
+        if (this.freeHead >= 0) {
+            final int slot = this.freeHead;
+            this.freeHead  = this.overflowNext[slot];
+            return slot;
+        }
+
+        if (this.overflowSize == this.overflowNext.length) {
+            final int capacity = Math.max(1024, 2 * this.overflowSize);
+
+            this.overflowThicknesses = Arrays.copyOf(this.overflowThicknesses, capacity);
+            this.overflowAges        = Arrays.copyOf(this.overflowAges, capacity);
+            this.overflowTypes       = Arrays.copyOf(this.overflowTypes, capacity);
+            this.overflowNext        = Arrays.copyOf(this.overflowNext, capacity);
+        }
+
+        return this.overflowSize++;
+    }
+}
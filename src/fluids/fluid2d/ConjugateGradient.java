@@ -0,0 +1,297 @@
+package fluids.fluid2d;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+
+/**
+ * Solves {@code centre * u - neighbour * (sum of the four neighbours of u) = f} over the interior of
+ * a grid whose outermost ring of cells holds the boundary, by conjugate gradients preconditioned
+ * with a modified incomplete Cholesky factorisation, MIC(0). This is the equation both the diffusion
+ * and the pressure of {@link Fluid2DState} solve, and every array is laid out like its fields, row
+ * after row, the boundary included.
+ *
+ * <p>Boundary cells are not unknowns: each one mirrors the interior cell next to it, negated on the
+ * sides a velocity component must vanish across, as {@code Fluid2DState.setBoundary} makes them. A
+ * mirrored boundary cell therefore only changes the diagonal of the interior cell next to it, which
+ * keeps the matrix symmetric. When every boundary cell mirrors and the diagonal is four times the
+ * neighbour coefficient, as for the pressure, the matrix is singular; the mean of the right-hand side
+ * is then taken off first, so that a solution exists.
+ *
+ * <p>The matrix is never stored. The factorisation only depends on the coefficients and the
+ * boundary, and is kept until they change.
+ */
+public final class ConjugateGradient {
+
+    // The fraction of the dropped fill-in moved to the diagonal, and the guard against breakdown
+    private static final double TUNING = 0.97;
+    private static final double SAFETY = 0.25;
+
+    private final int width;
+    private final int height;
+
+    private final float[] solution;
+    private final float[] rhs;
+
+    private final float[] residual;
+    private final float[] search;
+    private final float[] product;
+    private final float[] preconditioned;
+
+    private final float[] diagonal;
+    private final float[] factor;
+
+    private float factorCentre    = Float.NaN;
+    private float factorNeighbour = Float.NaN;
+    private int   factorBoundary  = -1;
+
+    private int   iterations = 0;
+    private float residualNorm = 0f;
+
+    /**
+     * @param width the number of columns of the grid, boundary included
+     * @param height the number of rows of the grid, boundary included
+     */
+    public ConjugateGradient(final int width, final int height) {
+        Preconditions.throwIfSatisfies(width, w -> w < 3, "The grid must have an interior.");
+        Preconditions.throwIfSatisfies(height, h -> h < 3, "The grid must have an interior.");
+
+        this.width  = width;
+        this.height = height;
+
+        this.solution       = new float[width * height];
+        this.rhs            = new float[width * height];
+        this.residual       = new float[width * height];
+        this.search         = new float[width * height];
+        this.product        = new float[width * height];
+        this.preconditioned = new float[width * height];
+        this.diagonal       = new float[width * height];
+        this.factor         = new float[width * height];
+    }
+
+    /**
+     * @return the array to write the right-hand side into before solving
+     */
+    public float[] getRightHandSide() {
+        return this.rhs;
+    }
+
+    /**
+     * @return the array to write the initial guess into before solving, holding the solution after
+     */
+    public float[] getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return the number of iterations the last solve ran
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * @return the norm of the residual after the last solve, relative to the right-hand side
+     */
+    public float getResidual() {
+        return this.residualNorm;
+    }
+
+    /**
+     * Solves the equation for the right-hand side, starting from the solution already held.
+     *
+     * @param centre the coefficient of each cell
+     * @param neighbour the coefficient of each of its neighbours, negated
+     * @param boundary which boundary cells are negated: 0 for none, 1 for the left and right ones,
+     *        2 for the top and bottom ones
+     * @param tolerance the residual to reach, relative to the right-hand side
+     * @param maxIterations the number of iterations to give up after
+     * @return the number of iterations run
+     */
+    public int solve(
+        final float centre,
+        final float neighbour,
+        final int boundary,
+        final float tolerance,
+        final int maxIterations) {
+
+        if (centre != this.factorCentre || neighbour != this.factorNeighbour || boundary != this.factorBoundary)
+            factorise(centre, neighbour, boundary);
+
+        if (boundary == 0 && centre == 4f * neighbour)
+            removeMean(this.rhs);
+
+        final double norm = Math.sqrt(dot(this.rhs, this.rhs));
+
+        this.iterations = 0;
+
+        clearBoundary(this.solution);
+
+        if (norm == 0.0) {
+            Arrays.fill(this.solution, 0f);
+            this.residualNorm = 0f;
+            return 0;
+        }
+
+        apply(neighbour, this.solution, this.product);
+
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                this.residual[c] = this.rhs[c] - this.product[c];
+
+        this.residualNorm = (float) (Math.sqrt(dot(this.residual, this.residual)) / norm);
+
+        if (this.residualNorm <= tolerance)
+            return 0;
+
+        precondition(neighbour, this.residual, this.preconditioned);
+        System.arraycopy(this.preconditioned, 0, this.search, 0, this.search.length);
+
+        double rho = dot(this.residual, this.preconditioned);
+
+        while (this.iterations < maxIterations) {
+            apply(neighbour, this.search, this.product);
+
+            final double curvature = dot(this.search, this.product);
+
+            if (curvature <= 0.0)
+                break;
+
+            final float alpha = (float) (rho / curvature);
+
+            for (int j = 1; j < this.height - 1; ++j)
+                for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c) {
+                    this.solution[c] += alpha * this.search[c];
+                    this.residual[c] -= alpha * this.product[c];
+                }
+
+            ++this.iterations;
+            this.residualNorm = (float) (Math.sqrt(dot(this.residual, this.residual)) / norm);
+
+            if (this.residualNorm <= tolerance)
+                break;
+
+            precondition(neighbour, this.residual, this.preconditioned);
+
+            final double nextRho = dot(this.residual, this.preconditioned);
+            final float  beta    = (float) (nextRho / rho);
+
+            for (int j = 1; j < this.height - 1; ++j)
+                for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                    this.search[c] = this.preconditioned[c] + beta * this.search[c];
+
+            rho = nextRho;
+        }
+
+        return this.iterations;
+    }
+
+    /**
+     * Computes the diagonal of the matrix and the diagonal of its MIC(0) factor, row after row.
+     */
+    private void factorise(final float centre, final float neighbour, final int boundary) {
+        final double a = neighbour;
+
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int i = 1; i < this.width - 1; ++i) {
+                final int c = j * this.width + i;
+
+                // A mirrored boundary cell adds its sign times the cell to the sum of the neighbours
+                float mirrored = 0f;
+
+                if (i == 1)
+                    mirrored += boundary == 1 ? -1f : 1f;
+                if (i == this.width - 2)
+                    mirrored += boundary == 1 ? -1f : 1f;
+                if (j == 1)
+                    mirrored += boundary == 2 ? -1f : 1f;
+                if (j == this.height - 2)
+                    mirrored += boundary == 2 ? -1f : 1f;
+
+                this.diagonal[c] = centre - neighbour * mirrored;
+
+                // The factor of a boundary cell is zero, which drops the links to it
+                final double left  = this.factor[c - 1];
+                final double above = this.factor[c - this.width];
+
+                // Whether the cell left of this one links below, and the cell above links right
+                final double leftDown  = j < this.height - 2 ? a : 0.0;
+                final double aboveSide = i < this.width - 2 ? a : 0.0;
+
+                double e = this.diagonal[c]
+                    - a * left * a * left
+                    - a * above * a * above
+                    - TUNING * (a * leftDown * left * left + a * aboveSide * above * above);
+
+                if (e < SAFETY * this.diagonal[c])
+                    e = this.diagonal[c];
+
+                this.factor[c] = (float) (1.0 / Math.sqrt(e));
+            }
+
+        this.factorCentre    = centre;
+        this.factorNeighbour = neighbour;
+        this.factorBoundary  = boundary;
+    }
+
+    /**
+     * Multiplies the matrix by the interior of a vector whose boundary is zero.
+     */
+    private void apply(final float neighbour, final float[] vector, final float[] result) {
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                result[c] = this.diagonal[c] * vector[c]
+                    - neighbour * (vector[c - 1] + vector[c + 1] + vector[c - this.width] + vector[c + this.width]);
+    }
+
+    /**
+     * Solves with the factor and then its transpose.
+     */
+    private void precondition(final float neighbour, final float[] vector, final float[] result) {
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                result[c] = (vector[c]
+                    + neighbour * this.factor[c - 1] * result[c - 1]
+                    + neighbour * this.factor[c - this.width] * result[c - this.width]) * this.factor[c];
+
+        for (int j = this.height - 2; j >= 1; --j)
+            for (int c = (j + 1) * this.width - 2; c > j * this.width; --c)
+                result[c] = (result[c]
+                    + neighbour * this.factor[c] * result[c + 1]
+                    + neighbour * this.factor[c] * result[c + this.width]) * this.factor[c];
+    }
+
+    private void clearBoundary(final float[] values) {
+        Arrays.fill(values, 0, this.width, 0f);
+        Arrays.fill(values, (this.height - 1) * this.width, this.height * this.width, 0f);
+
+        for (int j = 1; j < this.height - 1; ++j) {
+            values[j * this.width]           = 0f;
+            values[(j + 1) * this.width - 1] = 0f;
+        }
+    }
+
+    private void removeMean(final float[] values) {
+        double sum = 0.0;
+
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                sum += values[c];
+
+        final float mean = (float) (sum / ((double) (this.width - 2) * (this.height - 2)));
+
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                values[c] -= mean;
+    }
+
+    private double dot(final float[] a, final float[] b) {
+        double sum = 0.0;
+
+        for (int j = 1; j < this.height - 1; ++j)
+            for (int c = j * this.width + 1; c < (j + 1) * this.width - 1; ++c)
+                sum += (double) a[c] * b[c];
+
+        return sum;
+    }
+}
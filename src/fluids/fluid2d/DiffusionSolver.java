@@ -0,0 +1,14 @@
+package fluids.fluid2d;
+
+/**
+ * The solvers available to {@link Fluid2DState} for the implicit diffusion of its density and
+ * velocity.
+ */
+public enum DiffusionSolver {
+    /** A fixed number of in-place Gauss-Seidel sweeps, whatever the residual */
+    GAUSS_SEIDEL,
+    /** Conjugate gradients preconditioned with MIC(0), until the residual falls below the tolerance */
+    CONJUGATE_GRADIENT,
+    /** As many sweeps, coloured like a checkerboard so that each colour is relaxed in parallel bands of columns */
+    RED_BLACK;
+}
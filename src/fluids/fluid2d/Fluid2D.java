@@ -1,6 +1,7 @@
 package fluids.fluid2d;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.application.Application;
 import javafx.scene.paint.Color;
@@ -20,13 +21,19 @@ public class Fluid2D extends Application {
 
     private final Fluid2DParameters parameters = new Fluid2DParameters();
 
+    private final AtomicReference<Fluid2DState> state = new AtomicReference<>();
+
     private final ThreadedSimulation<Fluid2DSimulationMode, Fluid2DState, Fluid2DParameters> simulation = 
         new ThreadedSimulation<>(
             WIDTH, 
             HEIGHT, 
             Fluid2DSimulationMode.DENSITY,
             parameters,
-            __ -> new Fluid2DState(WIDTH, HEIGHT, parameters), 
+            __ -> {
+                final Fluid2DState created = new Fluid2DState(WIDTH, HEIGHT, parameters);
+                state.set(created);
+                return created;
+            },
             s -> m -> buffer -> {
                 switch(m) {
                     case DENSITY:
@@ -116,7 +123,7 @@ public class Fluid2D extends Application {
             simulation.setMode((Fluid2DSimulationMode) mode);
         });
 
-        simulation.addSimulationListeners(List.of(scene));
+        simulation.addSimulationListeners(List.of(scene, image -> scene.setStatus(describeSolvers(state.get()))));
 
         stage.setScene(scene.asScene());
         stage.setResizable(false);
@@ -124,4 +131,17 @@ public class Fluid2D extends Application {
 
         stage.setOnCloseRequest(event -> simulation.end());
     }
+
+    private static String describeSolvers(final Fluid2DState state) {
+        return String.format(
+            "Pressure: %d iterations, residual %s    Diffusion: %d iterations, residual %s",
+            state.getPressureIterations(),
+            describeResidual(state.getPressureResidual()),
+            state.getDiffusionIterations(),
+            describeResidual(state.getDiffusionResidual()));
+    }
+
+    private static String describeResidual(final float residual) {
+        return Float.isNaN(residual) ? "not measured" : String.format("%.2e", residual);
+    }
 }
@@ -5,14 +5,30 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import simulation.SimulationParameters;
 import simulation.parameters.FloatParameter;
+import simulation.parameters.IntegerParameter;
 import simulation.parameters.SimulationParameterGroup;
 import util.data.trees.DistinguishedTree;
 
 public class Fluid2DParameters extends SimulationParameters {
 
+    // Cached, as values() copies the constants on every call and the getters are called every step
+    private static final PressureSolver[]  PRESSURE_SOLVERS  = PressureSolver.values();
+    private static final DiffusionSolver[] DIFFUSION_SOLVERS = DiffusionSolver.values();
+
     private final float DEFAULT_VISCOSITY = 0.0f;
     private final float DEFAULT_DIFFUSION = 0.0f;
 
+    private final int   DEFAULT_PRESSURE_SOLVER    = PressureSolver.GAUSS_SEIDEL.ordinal();
+    private final float DEFAULT_PRESSURE_TOLERANCE = 0.001f;
+    private final int   DEFAULT_PRESSURE_CYCLES    = 8;
+
+    private final int   DEFAULT_DIFFUSION_SOLVER    = DiffusionSolver.GAUSS_SEIDEL.ordinal();
+    private final float DEFAULT_DIFFUSION_TOLERANCE = 0.0001f;
+    private final int   DEFAULT_SOLVER_ITERATIONS   = 200;
+
+    private final int   MAX_THREADS     = 64;
+    private final int   DEFAULT_THREADS = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+
     private final FloatParameter viscosityParameter = new FloatParameter(
         "Viscosity",
         "Visc",
@@ -27,18 +43,91 @@ public class Fluid2DParameters extends SimulationParameters {
         DEFAULT_DIFFUSION,
         0.0f,
         1.0f);
+    private final IntegerParameter pressureSolverParameter = new IntegerParameter(
+        "Pressure Solver",
+        "PrSlv",
+        "The solver used to make the velocity divergence-free (0: Gauss-Seidel, 1: multigrid, 2: conjugate gradient, 3: red-black)",
+        DEFAULT_PRESSURE_SOLVER,
+        0,
+        PressureSolver.values().length - 1);
+    private final FloatParameter pressureToleranceParameter = new FloatParameter(
+        "Pressure Tolerance",
+        "PrTol",
+        "The residual the pressure is solved to, relative to the divergence",
+        DEFAULT_PRESSURE_TOLERANCE,
+        0.0f,
+        1.0f);
+    private final IntegerParameter pressureCyclesParameter = new IntegerParameter(
+        "Pressure Cycles",
+        "PrCyc",
+        "The most multigrid cycles run per pressure solve",
+        DEFAULT_PRESSURE_CYCLES,
+        1,
+        100);
+    private final IntegerParameter diffusionSolverParameter = new IntegerParameter(
+        "Diffusion Solver",
+        "DfSlv",
+        "The solver used to diffuse density and velocity (0: Gauss-Seidel, 1: conjugate gradient, 2: red-black)",
+        DEFAULT_DIFFUSION_SOLVER,
+        0,
+        DiffusionSolver.values().length - 1);
+    private final FloatParameter diffusionToleranceParameter = new FloatParameter(
+        "Diffusion Tolerance",
+        "DfTol",
+        "The residual diffusion is solved to, relative to the field diffused",
+        DEFAULT_DIFFUSION_TOLERANCE,
+        0.0f,
+        1.0f);
+    private final IntegerParameter solverIterationsParameter = new IntegerParameter(
+        "Solver Iterations",
+        "SlvIt",
+        "The most conjugate gradient iterations run per solve",
+        DEFAULT_SOLVER_ITERATIONS,
+        1,
+        10000);
+    private final IntegerParameter threadsParameter = new IntegerParameter(
+        "Threads",
+        "Thrd",
+        "The number of column bands red-black sweeps run in parallel, read when the simulation starts",
+        DEFAULT_THREADS,
+        1,
+        MAX_THREADS);
 
     private final AtomicReference<Float> viscosity       = new AtomicReference<>(DEFAULT_VISCOSITY);
     private final AtomicReference<Float> diffusion = new AtomicReference<>(DEFAULT_DIFFUSION);
 
+    private final AtomicReference<Integer> pressureSolver    = new AtomicReference<>(DEFAULT_PRESSURE_SOLVER);
+    private final AtomicReference<Float>   pressureTolerance = new AtomicReference<>(DEFAULT_PRESSURE_TOLERANCE);
+    private final AtomicReference<Integer> pressureCycles    = new AtomicReference<>(DEFAULT_PRESSURE_CYCLES);
+
+    private final AtomicReference<Integer> diffusionSolver    = new AtomicReference<>(DEFAULT_DIFFUSION_SOLVER);
+    private final AtomicReference<Float>   diffusionTolerance = new AtomicReference<>(DEFAULT_DIFFUSION_TOLERANCE);
+    private final AtomicReference<Integer> solverIterations   = new AtomicReference<>(DEFAULT_SOLVER_ITERATIONS);
+
+    private final AtomicReference<Integer> threads = new AtomicReference<>(DEFAULT_THREADS);
+
     public Fluid2DParameters() {
         this.setEnableableValues(List.of(
             viscosityParameter,
-            diffusionParameter
+            diffusionParameter,
+            pressureSolverParameter,
+            pressureToleranceParameter,
+            pressureCyclesParameter,
+            diffusionSolverParameter,
+            diffusionToleranceParameter,
+            solverIterationsParameter,
+            threadsParameter
         ));
 
         bindParameter(viscosityParameter, viscosity);
         bindParameter(diffusionParameter, diffusion);
+        bindParameter(pressureSolverParameter, pressureSolver);
+        bindParameter(pressureToleranceParameter, pressureTolerance);
+        bindParameter(pressureCyclesParameter, pressureCycles);
+        bindParameter(diffusionSolverParameter, diffusionSolver);
+        bindParameter(diffusionToleranceParameter, diffusionTolerance);
+        bindParameter(solverIterationsParameter, solverIterations);
+        bindParameter(threadsParameter, threads);
     }
 
     public float getViscosity() {
@@ -49,6 +138,34 @@ public class Fluid2DParameters extends SimulationParameters {
         return this.diffusion.get();
     }
 
+    public PressureSolver getPressureSolver() {
+        return PRESSURE_SOLVERS[this.pressureSolver.get()];
+    }
+
+    public float getPressureTolerance() {
+        return this.pressureTolerance.get();
+    }
+
+    public int getPressureCycles() {
+        return this.pressureCycles.get();
+    }
+
+    public DiffusionSolver getDiffusionSolver() {
+        return DIFFUSION_SOLVERS[this.diffusionSolver.get()];
+    }
+
+    public float getDiffusionTolerance() {
+        return this.diffusionTolerance.get();
+    }
+
+    public int getSolverIterations() {
+        return this.solverIterations.get();
+    }
+
+    public int getThreads() {
+        return this.threads.get();
+    }
+
     @Override
     public DistinguishedTree<String, SimulationParameterGroup> getParameterTree() {
         return new DistinguishedTree<>(
@@ -58,6 +175,19 @@ public class Fluid2DParameters extends SimulationParameters {
                     new SimulationParameterGroup.Builder()
                         .addFloatParameter(viscosityParameter)
                         .addFloatParameter(diffusionParameter)
-                        .build())));
+                        .build()),
+                new DistinguishedTree<>(
+                    "Solvers",
+                    List.of(
+                        new DistinguishedTree<>(
+                            new SimulationParameterGroup.Builder()
+                                .addIntegerParameter(pressureSolverParameter)
+                                .addFloatParameter(pressureToleranceParameter)
+                                .addIntegerParameter(pressureCyclesParameter)
+                                .addIntegerParameter(diffusionSolverParameter)
+                                .addFloatParameter(diffusionToleranceParameter)
+                                .addIntegerParameter(solverIterationsParameter)
+                                .addIntegerParameter(threadsParameter)
+                                .build())))));
     }
 }
@@ -1,9 +1,9 @@
 package fluids.fluid2d;
 
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Function;
+import java.util.Arrays;
 
 import simulation.SimulationState;
+import util.concurrent.RowBandScheduler;
 import util.data.algebraic.Prod;
 import util.math.MathUtil;
 
@@ -12,97 +12,243 @@ public class Fluid2DState implements SimulationState {
     private final int width;
     private final int height;
 
-    private AtomicReference<float[][]> prevDensity;
-    private AtomicReference<float[][]> density;
+    // Each field is double-buffered: the solvers read one array of a pair and write the other,
+    // swapping the two references between passes
+    private float[][] prevDensity;
+    private float[][] density;
 
-    private AtomicReference<float[][]> prevVelocityX;
-    private AtomicReference<float[][]> prevVelocityY;
-    private AtomicReference<float[][]> velocityX;
-    private AtomicReference<float[][]> velocityY;
+    private float[][] prevVelocityX;
+    private float[][] prevVelocityY;
+    private float[][] velocityX;
+    private float[][] velocityY;
 
-    private AtomicReference<float[][]> forceX;
-    private AtomicReference<float[][]> forceY;
+    private final float[][] forceX;
+    private final float[][] forceY;
+
+    // The renderer only ever reads a frame published at the end of a step, never the fields
+    private Frame front;
+    private Frame back;
+    private volatile Frame published;
 
     private final Fluid2DParameters parameters;
 
+    private static final int GAUSS_SEIDEL_SWEEPS = 20;
+
+    // Splits the columns of the fields, the outer index of the arrays, for red-black sweeps
+    private final RowBandScheduler bands;
+
+    // The sweep under way, read by a kernel built once so that sweeps allocate nothing
+    private final RowBandScheduler.BandKernel relaxBand = this::relaxBand;
+
+    private float[][] relaxUpdated;
+    private float[][] relaxSource;
+    private float     relaxNeighbour;
+    private float     relaxCentre;
+    private int       relaxParity;
+
+    // Created the first time each solver is selected
+    private Multigrid         multigrid;
+    private ConjugateGradient pressureGradient;
+    private ConjugateGradient diffusionGradient;
+
+    // What the solvers of the last step did, summed over its solves for the iterations and the
+    // largest over them for the residual, which is not measured by the Gauss-Seidel solvers
+    private int   pressureIterations  = 0;
+    private float pressureResidual    = 0f;
+    private int   diffusionIterations = 0;
+    private float diffusionResidual   = 0f;
+
     public Fluid2DState(final int width, final int height, final Fluid2DParameters parameters) {
         this.width = width;
         this.height = height;
 
         this.parameters = parameters;
+        this.bands      = new RowBandScheduler(parameters.getThreads());
 
-        this.prevDensity = new AtomicReference<>(new float[this.width][this.height]);
-        this.density     = new AtomicReference<>(new float[this.width][this.height]);
+        this.prevDensity = new float[this.width][this.height];
+        this.density     = new float[this.width][this.height];
 
-        this.prevVelocityX = new AtomicReference<>(new float[this.width][this.height]);
-        this.prevVelocityY = new AtomicReference<>(new float[this.width][this.height]);
-        this.velocityX     = new AtomicReference<>(new float[this.width][this.height]);
-        this.velocityY     = new AtomicReference<>(new float[this.width][this.height]);
+        this.prevVelocityX = new float[this.width][this.height];
+        this.prevVelocityY = new float[this.width][this.height];
+        this.velocityX     = new float[this.width][this.height];
+        this.velocityY     = new float[this.width][this.height];
 
-        this.forceX = new AtomicReference<>(new float[this.width][this.height]);
-        this.forceY = new AtomicReference<>(new float[this.width][this.height]);
+        this.forceX = new float[this.width][this.height];
+        this.forceY = new float[this.width][this.height];
 
         for (int i = 1; i < this.width - 1; ++i)
             for (int j = 1; j < this.height - 1; ++j) {
-                this.forceX.get()[i][j]  = 0;
-                this.forceY.get()[i][j]  = (j <= 2 && 200 < i && i < 300) ? 40f : 0f;
-                this.density.get()[i][j] = (j <= 2) ? 0.03f : 0f;
+                this.forceX[i][j]  = 0;
+                this.forceY[i][j]  = (j <= 2 && 200 < i && i < 300) ? 40f : 0f;
+                this.density[i][j] = (j <= 2) ? 0.03f : 0f;
             }
+
+        this.front = new Frame(width, height);
+        this.back  = new Frame(width, height);
+
+        publish();
     }
 
+    /**
+     * A copy of the density and both velocity components, and what the solves took, as of the end
+     * of a completed step. At the end of every step {@link #publish} copies the three fields into
+     * the frame not last published and publishes it, so there is one copy of each field per step.
+     */
+    private static final class Frame {
+        private final float[][] density;
+        private final float[][] velocityX;
+        private final float[][] velocityY;
+
+        private int   pressureIterations  = 0;
+        private float pressureResidual    = 0f;
+        private int   diffusionIterations = 0;
+        private float diffusionResidual   = 0f;
+
+        private Frame(final int width, final int height) {
+            this.density   = new float[width][height];
+            this.velocityX = new float[width][height];
+            this.velocityY = new float[width][height];
+        }
+    }
+
+    /**
+     * @return a copy of the density as of the last completed step, never the field a step is
+     * updating, which may be called from any thread. The copy is only overwritten by the publish of
+     * the step after next.
+     */
     public float[][] getDensity() {
-        return this.density.get();
+        return this.published.density;
     }
 
+    /**
+     * @return a copy of the velocity as of the last completed step, never the fields a step is
+     * updating, which may be called from any thread. The copy is only overwritten by the publish of
+     * the step after next.
+     */
     public Prod<float[][], float[][]> getVelocity() {
-        return Prod.pair(this.velocityX.get(), this.velocityY.get());
+        final Frame frame = this.published;
+        return Prod.pair(frame.velocityX, frame.velocityY);
+    }
+
+    /**
+     * @return the number of iterations, or multigrid cycles, the pressure solves of the last step
+     * ran, which may be called from any thread
+     */
+    public int getPressureIterations() {
+        return this.published.pressureIterations;
+    }
+
+    /**
+     * @return the largest relative residual the pressure solves of the last step left, or NaN if
+     * they were not measured, which may be called from any thread
+     */
+    public float getPressureResidual() {
+        return this.published.pressureResidual;
+    }
+
+    /**
+     * @return the number of iterations the diffusion solves of the last step ran, which may be
+     * called from any thread
+     */
+    public int getDiffusionIterations() {
+        return this.published.diffusionIterations;
+    }
+
+    /**
+     * @return the largest relative residual the diffusion solves of the last step left, or NaN if
+     * they were not measured, which may be called from any thread
+     */
+    public float getDiffusionResidual() {
+        return this.published.diffusionResidual;
     }
 
     private void addSource(
-        final AtomicReference<float[][]> updated, 
-        final AtomicReference<float[][]> sources, 
+        final float[][] updated, 
+        final float[][] sources, 
         final float dt) {
 
         for (int i = 0; i < this.width; ++i)
             for (int j = 0; j < this.height; ++j)
-                updated.get()[i][j] += dt * sources.get()[i][j];
+                updated[i][j] += dt * sources[i][j];
     }
 
     private void diffuse(
         final int b, 
-        final AtomicReference<float[][]> updated, 
-        final AtomicReference<float[][]> original, 
+        final float[][] updated, 
+        final float[][] original, 
         final float diffusion, 
         final float dt) {
         
         final float a = dt * diffusion * (this.width - 1);// * (this.height - 1);
 
-        for (int k = 0; k < 20; ++k)
-            for (int i = 1; i < this.width - 1; ++i)
-                for (int j = 1; j < this.height - 1; ++j)
-                    updated.get()[i][j] = (original.get()[i][j] + a * (updated.get()[i][j - 1] + updated.get()[i][j + 1] + updated.get()[i - 1][j] + updated.get()[i + 1][j])) / (1 + 4 * a);
+        switch (this.parameters.getDiffusionSolver()) {
+            case GAUSS_SEIDEL:
+                for (int k = 0; k < GAUSS_SEIDEL_SWEEPS; ++k)
+                    for (int i = 1; i < this.width - 1; ++i)
+                        for (int j = 1; j < this.height - 1; ++j)
+                            updated[i][j] = (original[i][j] + a * (updated[i][j - 1] + updated[i][j + 1] + updated[i - 1][j] + updated[i + 1][j])) / (1 + 4 * a);
+
+                this.diffusionIterations += GAUSS_SEIDEL_SWEEPS;
+                this.diffusionResidual    = Float.NaN;
+                break;
+
+            case RED_BLACK:
+                for (int k = 0; k < GAUSS_SEIDEL_SWEEPS; ++k)
+                    relaxRedBlack(updated, original, a, 1 + 4 * a);
+
+                this.diffusionIterations += GAUSS_SEIDEL_SWEEPS;
+                this.diffusionResidual    = Float.NaN;
+                break;
+
+            case CONJUGATE_GRADIENT:
+                if (this.diffusionGradient == null)
+                    this.diffusionGradient = new ConjugateGradient(this.width, this.height);
+
+                final float[] rhs      = this.diffusionGradient.getRightHandSide();
+                final float[] solution = this.diffusionGradient.getSolution();
+
+                // The field before diffusing is both the right-hand side and a close first guess
+                for (int i = 1; i < this.width - 1; ++i)
+                    for (int j = 1; j < this.height - 1; ++j) {
+                        rhs[j * this.width + i]      = original[i][j];
+                        solution[j * this.width + i] = original[i][j];
+                    }
+
+                this.diffusionGradient.solve(
+                    1 + 4 * a,
+                    a,
+                    b,
+                    this.parameters.getDiffusionTolerance(),
+                    this.parameters.getSolverIterations());
+
+                for (int i = 1; i < this.width - 1; ++i)
+                    for (int j = 1; j < this.height - 1; ++j)
+                        updated[i][j] = solution[j * this.width + i];
+
+                this.diffusionIterations += this.diffusionGradient.getIterations();
+                this.diffusionResidual    = Math.max(this.diffusionResidual, this.diffusionGradient.getResidual());
+                break;
+        }
 
         setBoundary(updated, b);
     }
 
     private void advect(
         final int b, 
-        final AtomicReference<float[][]> updated, 
-        final AtomicReference<float[][]> original, 
-        final AtomicReference<float[][]> velX, 
-        final AtomicReference<float[][]> velY, 
+        final float[][] updated, 
+        final float[][] original, 
+        final float[][] velX, 
+        final float[][] velY, 
         final float dt) {
 
         final float w = this.width - 1;
         final float h = this.height - 1;
         final float dt0 = dt * (this.width - 1);
 
-        final Function<Prod<Float, Float>, Float> interpolator = MathUtil.interpolate(original.get());
-
         for (int i = 1; i < w; ++i)
             for (int j = 1; j < h; ++j) {
-                float x = i - dt0 * velX.get()[i][j];
-                float y = j - dt0 * velY.get()[i][j];
+                float x = i - dt0 * velX[i][j];
+                float y = j - dt0 * velY[i][j];
 
                 if (x < 0.5)
                     x = 0.5f;
@@ -116,141 +262,252 @@ public class Fluid2DState implements SimulationState {
                 if (y > h - 0.5)
                     y = h - 0.5f;
 
-                updated.get()[i][j] = interpolator.apply(Prod.pair(x, y));
+                // Sample the original bilinearly, the clamping keeping every corner in the grid
+                final int   i0 = (int) x;
+                final int   j0 = (int) y;
+                final float s  = x - i0;
+                final float t  = y - j0;
+
+                updated[i][j] = MathUtil.interpolate(
+                    MathUtil.interpolate(original[i0][j0],     original[i0 + 1][j0],     s),
+                    MathUtil.interpolate(original[i0][j0 + 1], original[i0 + 1][j0 + 1], s),
+                    t);
             }
 
         setBoundary(updated, b);
     }
 
-    private void swap(final AtomicReference<float[][]> a, final AtomicReference<float[][]> b) {
-        final AtomicReference<float[][]> temp = new AtomicReference<>(a.get());
-        a.set(b.get());
-        b.set(temp.get());
-    }
-
-    private void setBoundary(final AtomicReference<float[][]> updated, final int b) {
+    private void setBoundary(final float[][] updated, final int b) {
         for (int i = 1; i < this.width - 1; ++i) {
-            updated.get()[i][0]               = b == 2 ? - updated.get()[i][1] : updated.get()[i][1];
-            updated.get()[i][this.height - 1] = b == 2 ? - updated.get()[i][this.height - 2] : updated.get()[i][this.height - 2];
+            updated[i][0]               = b == 2 ? - updated[i][1] : updated[i][1];
+            updated[i][this.height - 1] = b == 2 ? - updated[i][this.height - 2] : updated[i][this.height - 2];
         }
 
         for (int j = 1; j < this.height - 1; ++j) {
-            updated.get()[0][j]              = b == 1 ? - updated.get()[1][j] : updated.get()[1][j];
-            updated.get()[this.width - 1][j] = b == 1 ? - updated.get()[this.width - 2][j] : updated.get()[this.width - 2][j];
+            updated[0][j]              = b == 1 ? - updated[1][j] : updated[1][j];
+            updated[this.width - 1][j] = b == 1 ? - updated[this.width - 2][j] : updated[this.width - 2][j];
         }
 
-        updated.get()[0]             [0]               = (updated.get()[1][0] + updated.get()[0][1]) / 2;
-        updated.get()[0]             [this.height - 1] = (updated.get()[1][this.height - 1] + updated.get()[0][this.height - 2]) / 2;
-        updated.get()[this.width - 1][0]               = (updated.get()[this.width - 2][0] + updated.get()[this.width - 1][1]) / 2;
-        updated.get()[this.width - 1][this.height - 1] = (updated.get()[this.width - 2][this.height - 1] + updated.get()[this.width - 1][this.height - 2]) / 2;
-    }
-
-    private void densitySolver(
-        final AtomicReference<float[][]> updated, 
-        final AtomicReference<float[][]> original, 
-        final AtomicReference<float[][]> velX, 
-        final AtomicReference<float[][]> velY, 
-        final float diff, 
-        final float dt) {
-        
-        addSource(updated, original, dt);
-        swap(original, updated);
-        diffuse(0, updated, original, diff, dt);
-        swap(original, updated);
-        advect(0, updated, original, velX, velY, dt);
-    }
-
-    private void velocitySolver(
-        final AtomicReference<float[][]> newVelX, 
-        final AtomicReference<float[][]> newVelY, 
-        final AtomicReference<float[][]> velX, 
-        final AtomicReference<float[][]> velY, 
-        final AtomicReference<float[][]> density,
-        final float visc, 
-        final float diff,
-        final float dt) {
-
-        addSource(newVelX, velX, dt);
-        addSource(newVelY, velY, dt);
-
-        swap(velX, newVelX);
-        diffuse(1, newVelX, velX, visc, dt);
-        swap(velY, newVelY);
-        diffuse(2, newVelY, velY, visc, dt);
-        project(newVelX, newVelY, velX, velY);
-
-        swap(newVelX, velX);
-        swap(newVelY, velY);
-
-        advect(1, newVelX, velX, velX, velY, dt);
-        advect(2, newVelY, velY, velX, velY, dt);
-        project(newVelX, newVelY, velX, velY);
+        updated[0]             [0]               = (updated[1][0] + updated[0][1]) / 2;
+        updated[0]             [this.height - 1] = (updated[1][this.height - 1] + updated[0][this.height - 2]) / 2;
+        updated[this.width - 1][0]               = (updated[this.width - 2][0] + updated[this.width - 1][1]) / 2;
+        updated[this.width - 1][this.height - 1] = (updated[this.width - 2][this.height - 1] + updated[this.width - 1][this.height - 2]) / 2;
     }
 
     private void project(
-        final AtomicReference<float[][]> velX,
-        final AtomicReference<float[][]> velY, 
-        final AtomicReference<float[][]> grad, 
-        final AtomicReference<float[][]> div) {
+        final float[][] velX,
+        final float[][] velY, 
+        final float[][] grad, 
+        final float[][] div) {
 
         final float h = 1.0f / (this.width - 2);
 
         for (int i = 1; i < this.width - 1; ++i) 
             for (int j = 1; j < this.height - 1; ++j) {
-                grad.get()[i][j] = 0f;
-                div.get()[i][j]  = - h * (velX.get()[i + 1][j] - velX.get()[i - 1][j] + velY.get()[i][j + 1] - velY.get()[i][j - 1]) / 2f;
+                grad[i][j] = 0f;
+                div[i][j]  = - h * (velX[i + 1][j] - velX[i - 1][j] + velY[i][j + 1] - velY[i][j - 1]) / 2f;
             }
 
         setBoundary(grad, 0);
         setBoundary(div, 0);
 
-        for (int k = 0; k < 20; ++k) {
-            for (int i = 1; i < this.width - 1; ++i) 
-                for (int j = 1; j < this.height - 1; ++j)
-                    grad.get()[i][j] = (div.get()[i][j] + grad.get()[i - 1][j] + grad.get()[i + 1][j] + grad.get()[i][j - 1] + grad.get()[i][j + 1]) / 4f;
-
-            setBoundary(grad, 0);
+        switch (this.parameters.getPressureSolver()) {
+            case GAUSS_SEIDEL:
+                for (int k = 0; k < GAUSS_SEIDEL_SWEEPS; ++k) {
+                    for (int i = 1; i < this.width - 1; ++i) 
+                        for (int j = 1; j < this.height - 1; ++j)
+                            grad[i][j] = (div[i][j] + grad[i - 1][j] + grad[i + 1][j] + grad[i][j - 1] + grad[i][j + 1]) / 4f;
+
+                    setBoundary(grad, 0);
+                }
+
+                this.pressureIterations += GAUSS_SEIDEL_SWEEPS;
+                this.pressureResidual    = Float.NaN;
+                break;
+
+            case RED_BLACK:
+                for (int k = 0; k < GAUSS_SEIDEL_SWEEPS; ++k) {
+                    relaxRedBlack(grad, div, 1f, 4f);
+                    setBoundary(grad, 0);
+                }
+
+                this.pressureIterations += GAUSS_SEIDEL_SWEEPS;
+                this.pressureResidual    = Float.NaN;
+                break;
+
+            case MULTIGRID:
+                solveMultigrid(grad, div);
+                break;
+
+            case CONJUGATE_GRADIENT:
+                solveConjugateGradient(grad, div);
+                break;
         }
 
         for (int i = 1; i < this.width - 1; ++i) 
             for (int j = 1; j < this.height - 1; ++j) {
-                velX.get()[i][j] -= (grad.get()[i + 1][j] - grad.get()[i - 1][j]) / 2f / h;
-                velY.get()[i][j] -= (grad.get()[i][j + 1] - grad.get()[i][j - 1]) / 2f / h;
+                velX[i][j] -= (grad[i + 1][j] - grad[i - 1][j]) / 2f / h;
+                velY[i][j] -= (grad[i][j + 1] - grad[i][j - 1]) / 2f / h;
             }
 
         setBoundary(velX, 1);
         setBoundary(velY, 2);
     }
 
-    private AtomicReference<float[][]> copy(final AtomicReference<float[][]> a) {
-        final AtomicReference<float[][]> temp = new AtomicReference<>(new float[this.width][this.height]);
+    /**
+     * Sets every interior cell of the first colour of a checkerboard, and then of the second, to
+     * {@code (source + neighbour * (sum of its four neighbours)) / centre}. Cells of one colour only
+     * read cells of the other, so each colour is relaxed in parallel bands of columns with the same
+     * result whatever the number of bands.
+     */
+    private void relaxRedBlack(final float[][] updated, final float[][] source, final float neighbour, final float centre) {
+        this.relaxUpdated   = updated;
+        this.relaxSource    = source;
+        this.relaxNeighbour = neighbour;
+        this.relaxCentre    = centre;
+
+        for (int colour = 0; colour < 2; ++colour) {
+            this.relaxParity = colour;
+            this.bands.forEachBand(this.width - 2, this.relaxBand);
+        }
+    }
 
-        for (int i = 0; i < this.width; ++i)
-            for (int j = 0; j < this.height; ++j)
-                temp.get()[i][j] = a.get()[i][j];
-        
-        return temp;
+    private void relaxBand(final int first, final int last) {
+        final float[][] updated   = this.relaxUpdated;
+        final float[][] source    = this.relaxSource;
+        final float     neighbour = this.relaxNeighbour;
+        final float     centre    = this.relaxCentre;
+
+        for (int i = first + 1; i < last + 1; ++i) {
+            final float[] column = updated[i];
+            final float[] left   = updated[i - 1];
+            final float[] right  = updated[i + 1];
+            final float[] f      = source[i];
+
+            for (int j = 1 + ((i + 1 + this.relaxParity) & 1); j < this.height - 1; j += 2)
+                column[j] = (f[j] + neighbour * (column[j - 1] + column[j + 1] + left[j] + right[j])) / centre;
+        }
+    }
+
+    private void solveMultigrid(final float[][] grad, final float[][] div) {
+        if (this.multigrid == null)
+            this.multigrid = new Multigrid(this.width, this.height);
+
+        final float[] rhs      = this.multigrid.getRightHandSide();
+        final float[] solution = this.multigrid.getSolution();
+
+        for (int i = 1; i < this.width - 1; ++i)
+            for (int j = 1; j < this.height - 1; ++j)
+                rhs[j * this.width + i] = div[i][j];
+
+        this.multigrid.solve(this.parameters.getPressureTolerance(), this.parameters.getPressureCycles());
+
+        for (int i = 1; i < this.width - 1; ++i)
+            for (int j = 1; j < this.height - 1; ++j)
+                grad[i][j] = solution[j * this.width + i];
+
+        setBoundary(grad, 0);
+
+        this.pressureIterations += this.multigrid.getCycles();
+        this.pressureResidual    = Math.max(this.pressureResidual, this.multigrid.getResidual());
+    }
+
+    /**
+     * Solves for the pressure starting from the last pressure solved for, which the solver keeps.
+     */
+    private void solveConjugateGradient(final float[][] grad, final float[][] div) {
+        if (this.pressureGradient == null)
+            this.pressureGradient = new ConjugateGradient(this.width, this.height);
+
+        final float[] rhs      = this.pressureGradient.getRightHandSide();
+        final float[] solution = this.pressureGradient.getSolution();
+
+        for (int i = 1; i < this.width - 1; ++i)
+            for (int j = 1; j < this.height - 1; ++j)
+                rhs[j * this.width + i] = div[i][j];
+
+        this.pressureGradient.solve(4f, 1f, 0, this.parameters.getPressureTolerance(), this.parameters.getSolverIterations());
+
+        for (int i = 1; i < this.width - 1; ++i)
+            for (int j = 1; j < this.height - 1; ++j)
+                grad[i][j] = solution[j * this.width + i];
+
+        setBoundary(grad, 0);
+
+        this.pressureIterations += this.pressureGradient.getIterations();
+        this.pressureResidual    = Math.max(this.pressureResidual, this.pressureGradient.getResidual());
+    }
+
+    /**
+     * Swaps the arrays of both velocity components with those of their previous values.
+     */
+    private void swapVelocity() {
+        final float[][] x  = this.velocityX;
+        this.velocityX     = this.prevVelocityX;
+        this.prevVelocityX = x;
+
+        final float[][] y  = this.velocityY;
+        this.velocityY     = this.prevVelocityY;
+        this.prevVelocityY = y;
+    }
+
+    /**
+     * Copies the density, both velocity components and the solver statistics into the frame that
+     * was not last published, then publishes it. This runs once at the end of every step, so
+     * readers always see the last completed step and never a step under way.
+     */
+    private void publish() {
+        final Frame frame = this.back;
+
+        for (int i = 0; i < this.width; ++i) {
+            System.arraycopy(this.density[i], 0, frame.density[i], 0, this.height);
+            System.arraycopy(this.velocityX[i], 0, frame.velocityX[i], 0, this.height);
+            System.arraycopy(this.velocityY[i], 0, frame.velocityY[i], 0, this.height);
+        }
+
+        frame.pressureIterations  = this.pressureIterations;
+        frame.pressureResidual    = this.pressureResidual;
+        frame.diffusionIterations = this.diffusionIterations;
+        frame.diffusionResidual   = this.diffusionResidual;
+
+        this.back      = this.front;
+        this.front     = frame;
+        this.published = frame;
     }
 
     @Override
     public void evolve() {
-        swap(prevVelocityY, copy(forceY));
-
-        velocitySolver(
-            velocityX,
-            velocityY, 
-            prevVelocityX, 
-            prevVelocityY, 
-            prevDensity,
-            parameters.getViscosity(), 
-            parameters.getDiffusion(),
-            0.01f);
-        densitySolver(
-            density, 
-            new AtomicReference<>(new float[this.width][this.height]), 
-            velocityX, 
-            velocityY, 
-            parameters.getDiffusion(), 
-            0.01f);
+        final float dt = 0.01f;
+
+        this.pressureIterations  = 0;
+        this.pressureResidual    = 0f;
+        this.diffusionIterations = 0;
+        this.diffusionResidual   = 0f;
+
+        // The force drives the vertical velocity
+        for (int i = 0; i < this.width; ++i)
+            System.arraycopy(this.forceY[i], 0, this.prevVelocityY[i], 0, this.height);
+
+        addSource(this.velocityX, this.prevVelocityX, dt);
+        addSource(this.velocityY, this.prevVelocityY, dt);
+
+        swapVelocity();
+        diffuse(1, this.velocityX, this.prevVelocityX, this.parameters.getViscosity(), dt);
+        diffuse(2, this.velocityY, this.prevVelocityY, this.parameters.getViscosity(), dt);
+        project(this.velocityX, this.velocityY, this.prevVelocityX, this.prevVelocityY);
+
+        swapVelocity();
+        advect(1, this.velocityX, this.prevVelocityX, this.prevVelocityX, this.prevVelocityY, dt);
+        advect(2, this.velocityY, this.prevVelocityY, this.prevVelocityX, this.prevVelocityY, dt);
+        project(this.velocityX, this.velocityY, this.prevVelocityX, this.prevVelocityY);
+
+        // Diffuse the density into the other array, starting from nothing, and advect it back
+        for (int i = 0; i < this.width; ++i)
+            Arrays.fill(this.prevDensity[i], 0f);
+
+        diffuse(0, this.prevDensity, this.density, this.parameters.getDiffusion(), dt);
+        advect(0, this.density, this.prevDensity, this.velocityX, this.velocityY, dt);
+
+        publish();
     }
 }
@@ -0,0 +1,560 @@
+package fluids.fluid2d;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+
+/**
+ * Solves the Poisson equation {@code 4 u - (sum of the four neighbours of u) = f} over the interior
+ * of a grid whose outermost ring of cells holds the boundary, each boundary cell mirroring the
+ * interior cell next to it (a Neumann condition). This is the equation the pressure of
+ * {@link Fluid2DState} solves, and every array is laid out like its fields, row after row, the
+ * boundary included.
+ *
+ * <p>The solver builds a hierarchy of grids, each with half as many cells as the last in every
+ * direction that has more than one, down to a grid of at most two cells a side. Coarse cells sum
+ * the residuals of the fine cells they cover. A side with an odd number of cells ends in a coarse
+ * cell covering only one, and a side down to a single cell is no longer halved, so coarse cells
+ * differ in size and shape: every level couples two neighbouring cells by the length of the face
+ * between them over the distance between their centres, which keeps the equation the same on every
+ * level. Corrections are interpolated bilinearly back up, between the true centres of the coarse
+ * cells. Every level is smoothed with red-black Gauss-Seidel sweeps. A solve starts from a full
+ * multigrid pass, which interpolates the coarse solution of each level up as the initial guess of
+ * the next, and then runs V-cycles until the residual falls below a fraction of the right-hand side.
+ *
+ * <p>With mirrored boundaries the equation only has a solution if the right-hand side sums to zero,
+ * and it is only defined up to a constant. Its mean is therefore taken off the right-hand side
+ * before solving, which leaves the gradient of the solution the closest there is.
+ */
+public final class Multigrid {
+
+    private static final int PRE_SMOOTHING  = 2;
+    private static final int POST_SMOOTHING = 2;
+    private static final int COARSEST_SWEEPS = 32;
+
+    private final Level[] levels;
+
+    private int   cycles   = 0;
+    private float residual = 0f;
+
+    private static final class Level {
+        private final int columns;
+        private final int rows;
+        private final int stride;
+
+        private final float[] solution;
+        private final float[] rhs;
+        private final float[] residual;
+        private final float[] inverseDiagonal;
+
+        // The coupling across every interior face when all cells have the same size, NaN otherwise
+        private float columnCoupling = Float.NaN;
+        private float rowCoupling    = Float.NaN;
+
+        // The size of every column and row, in cells of the finest level
+        private final float[] columnWidths;
+        private final float[] rowHeights;
+
+        // The coupling across the face after every column and row, zero at the boundary
+        private final float[] columnFaces;
+        private final float[] rowFaces;
+
+        // Where every cell interpolates the next coarser level from, along each axis
+        private final int[]   columnParents;
+        private final int[]   columnNeighbours;
+        private final float[] columnWeights;
+        private final int[]   rowParents;
+        private final int[]   rowNeighbours;
+        private final float[] rowWeights;
+
+        private Level(final int columns, final int rows) {
+            this.columns = columns;
+            this.rows    = rows;
+            this.stride  = columns + 2;
+
+            this.solution = new float[this.stride * (rows + 2)];
+            this.rhs      = new float[this.stride * (rows + 2)];
+            this.residual = new float[this.stride * (rows + 2)];
+
+            this.inverseDiagonal = new float[this.stride * (rows + 2)];
+
+            this.columnWidths = new float[columns + 2];
+            this.rowHeights   = new float[rows + 2];
+            this.columnFaces  = new float[columns + 1];
+            this.rowFaces     = new float[rows + 1];
+
+            this.columnParents    = new int[columns + 2];
+            this.columnNeighbours = new int[columns + 2];
+            this.columnWeights    = new float[columns + 2];
+            this.rowParents       = new int[rows + 2];
+            this.rowNeighbours    = new int[rows + 2];
+            this.rowWeights       = new float[rows + 2];
+        }
+
+        private int index(final int i, final int j) {
+            return j * this.stride + i;
+        }
+    }
+
+    /**
+     * @param width the number of columns of the grid, boundary included
+     * @param height the number of rows of the grid, boundary included
+     */
+    public Multigrid(final int width, final int height) {
+        Preconditions.throwIfSatisfies(width, w -> w < 3, "The grid must have an interior.");
+        Preconditions.throwIfSatisfies(height, h -> h < 3, "The grid must have an interior.");
+
+        int count   = 1;
+        int columns = width - 2;
+        int rows    = height - 2;
+
+        while (columns > 2 || rows > 2) {
+            columns = coarsen(columns);
+            rows    = coarsen(rows);
+            ++count;
+        }
+
+        this.levels = new Level[count];
+        this.levels[0] = new Level(width - 2, height - 2);
+
+        Arrays.fill(this.levels[0].columnWidths, 1f);
+        Arrays.fill(this.levels[0].rowHeights, 1f);
+        couple(this.levels[0].columnWidths, this.levels[0].columnFaces);
+        couple(this.levels[0].rowHeights, this.levels[0].rowFaces);
+
+        for (int l = 1; l < count; ++l) {
+            final Level fine   = this.levels[l - 1];
+            final Level coarse = new Level(coarsen(fine.columns), coarsen(fine.rows));
+
+            merge(fine.columnWidths, coarse.columnWidths);
+            merge(fine.rowHeights, coarse.rowHeights);
+            couple(coarse.columnWidths, coarse.columnFaces);
+            couple(coarse.rowHeights, coarse.rowFaces);
+            interpolate(fine.columnWidths, coarse.columnWidths, fine.columnParents, fine.columnNeighbours, fine.columnWeights);
+            interpolate(fine.rowHeights, coarse.rowHeights, fine.rowParents, fine.rowNeighbours, fine.rowWeights);
+
+            this.levels[l] = coarse;
+        }
+
+        for (final Level level : this.levels)
+            invertDiagonal(level);
+    }
+
+    /**
+     * @return the array to write the right-hand side into before solving
+     */
+    public float[] getRightHandSide() {
+        return this.levels[0].rhs;
+    }
+
+    /**
+     * @return the array holding the solution once solved, its boundary mirrored
+     */
+    public float[] getSolution() {
+        return this.levels[0].solution;
+    }
+
+    public int getLevelCount() {
+        return this.levels.length;
+    }
+
+    /**
+     * @return the number of cycles the last solve ran, the full multigrid pass included
+     */
+    public int getCycles() {
+        return this.cycles;
+    }
+
+    /**
+     * @return the norm of the residual after the last solve, relative to the right-hand side
+     */
+    public float getResidual() {
+        return this.residual;
+    }
+
+    /**
+     * Solves the equation for the right-hand side, overwriting the solution.
+     *
+     * @param tolerance the residual to reach, relative to the right-hand side
+     * @param maxCycles the number of cycles to give up after
+     * @return the number of cycles run
+     */
+    public int solve(final float tolerance, final int maxCycles) {
+        final Level finest = this.levels[0];
+
+        removeMean(finest);
+
+        final double norm = norm(finest.rhs, finest);
+
+        if (norm == 0.0) {
+            Arrays.fill(finest.solution, 0f);
+            this.cycles   = 0;
+            this.residual = 0f;
+            return 0;
+        }
+
+        for (int l = 1; l < this.levels.length; ++l)
+            restrict(this.levels[l - 1], this.levels[l - 1].rhs, this.levels[l]);
+
+        Arrays.fill(this.levels[this.levels.length - 1].solution, 0f);
+        solveCoarsest(this.levels[this.levels.length - 1]);
+
+        for (int l = this.levels.length - 2; l >= 0; --l) {
+            Arrays.fill(this.levels[l].solution, 0f);
+            prolong(this.levels[l + 1], this.levels[l]);
+            cycle(l);
+        }
+
+        this.cycles = 1;
+        computeResidual(finest);
+        this.residual = (float) (norm(finest.residual, finest) / norm);
+
+        while (this.residual > tolerance && this.cycles < maxCycles) {
+            cycle(0);
+            ++this.cycles;
+
+            computeResidual(finest);
+            this.residual = (float) (norm(finest.residual, finest) / norm);
+        }
+
+        mirror(finest.solution, finest);
+
+        return this.cycles;
+    }
+
+    private void cycle(final int l) {
+        final Level level = this.levels[l];
+
+        if (l == this.levels.length - 1) {
+            solveCoarsest(level);
+            return;
+        }
+
+        final Level coarse = this.levels[l + 1];
+
+        smooth(level, PRE_SMOOTHING);
+        computeResidual(level);
+        restrict(level, level.residual, coarse);
+
+        Arrays.fill(coarse.solution, 0f);
+        cycle(l + 1);
+
+        prolong(coarse, level);
+        smooth(level, POST_SMOOTHING);
+    }
+
+    /**
+     * Rounding leaves the right-hand side of the coarsest level summing to a little more or less
+     * than zero, which would have its solution drift by a constant every sweep. The excess is taken
+     * off every cell in proportion to its area first.
+     */
+    private static void solveCoarsest(final Level level) {
+        double sum  = 0.0;
+        double area = 0.0;
+
+        for (int j = 1; j <= level.rows; ++j)
+            for (int i = 1; i <= level.columns; ++i) {
+                sum  += level.rhs[level.index(i, j)];
+                area += (double) level.columnWidths[i] * level.rowHeights[j];
+            }
+
+        for (int j = 1; j <= level.rows; ++j)
+            for (int i = 1; i <= level.columns; ++i)
+                level.rhs[level.index(i, j)] -= (float) (sum * level.columnWidths[i] * level.rowHeights[j] / area);
+
+        smooth(level, COARSEST_SWEEPS * Math.max(level.columns, level.rows));
+    }
+
+    /**
+     * Relaxes the red cells and then the black ones. The boundary of every solution holds zeros while
+     * solving, so that a level whose cells all have the same size can couple every cell to all four
+     * neighbours alike and leave the boundary to its diagonal.
+     */
+    private static void smooth(final Level level, final int sweeps) {
+        for (int sweep = 0; sweep < sweeps; ++sweep)
+            for (int colour = 0; colour < 2; ++colour)
+                if (Float.isNaN(level.columnCoupling))
+                    relaxWeighted(level, colour);
+                else
+                    relaxUniform(level, colour);
+    }
+
+    private static void relaxUniform(final Level level, final int colour) {
+        final float[] u = level.solution;
+        final float[] f = level.rhs;
+        final float[] d = level.inverseDiagonal;
+
+        final int   stride = level.stride;
+        final float x      = level.columnCoupling;
+        final float y      = level.rowCoupling;
+
+        for (int j = 1; j <= level.rows; ++j)
+            for (int c = level.index(1 + ((j + colour + 1) & 1), j); c <= level.index(level.columns, j); c += 2)
+                u[c] = (f[c] + x * (u[c - 1] + u[c + 1]) + y * (u[c - stride] + u[c + stride])) * d[c];
+    }
+
+    private static void relaxWeighted(final Level level, final int colour) {
+        final float[] u = level.solution;
+        final float[] f = level.rhs;
+        final float[] d = level.inverseDiagonal;
+
+        final int stride = level.stride;
+
+        for (int j = 1; j <= level.rows; ++j) {
+            final float height = level.rowHeights[j];
+            final float above  = level.rowFaces[j - 1];
+            final float below  = level.rowFaces[j];
+
+            for (int i = 1 + ((j + colour + 1) & 1); i <= level.columns; i += 2) {
+                final int   c     = level.index(i, j);
+                final float width = level.columnWidths[i];
+
+                final float west  = height * level.columnFaces[i - 1];
+                final float east  = height * level.columnFaces[i];
+                final float north = width * above;
+                final float south = width * below;
+
+                u[c] = (f[c] + west * u[c - 1] + east * u[c + 1] + north * u[c - stride] + south * u[c + stride]) * d[c];
+            }
+        }
+    }
+
+    private static void computeResidual(final Level level) {
+        final float[] u = level.solution;
+        final float[] f = level.rhs;
+        final float[] r = level.residual;
+
+        final int   stride = level.stride;
+        final float x      = level.columnCoupling;
+        final float y      = level.rowCoupling;
+
+        if (!Float.isNaN(x)) {
+            final float[] d = level.inverseDiagonal;
+
+            for (int j = 1; j <= level.rows; ++j)
+                for (int c = level.index(1, j); c <= level.index(level.columns, j); ++c)
+                    r[c] = f[c] - (u[c] / d[c] - x * (u[c - 1] + u[c + 1]) - y * (u[c - stride] + u[c + stride]));
+
+            return;
+        }
+
+        for (int j = 1; j <= level.rows; ++j) {
+            final float height = level.rowHeights[j];
+            final float above  = level.rowFaces[j - 1];
+            final float below  = level.rowFaces[j];
+
+            for (int i = 1; i <= level.columns; ++i) {
+                final int   c     = level.index(i, j);
+                final float width = level.columnWidths[i];
+
+                final float west  = height * level.columnFaces[i - 1];
+                final float east  = height * level.columnFaces[i];
+                final float north = width * above;
+                final float south = width * below;
+
+                r[c] = f[c] - ((west + east + north + south) * u[c]
+                    - west * u[c - 1] - east * u[c + 1] - north * u[c - stride] - south * u[c + stride]);
+            }
+        }
+    }
+
+    /**
+     * Sets the right-hand side of every coarse cell to the sum of the values of the fine cells it
+     * covers.
+     */
+    private static void restrict(final Level level, final float[] fine, final Level coarse) {
+        final boolean halveColumns = coarse.columns < level.columns;
+        final boolean halveRows    = coarse.rows < level.rows;
+
+        for (int cj = 1; cj <= coarse.rows; ++cj) {
+            final int firstRow = halveRows ? 2 * cj - 1 : cj;
+            final int lastRow  = halveRows ? Math.min(2 * cj, level.rows) : cj;
+
+            for (int ci = 1; ci <= coarse.columns; ++ci) {
+                final int firstColumn = halveColumns ? 2 * ci - 1 : ci;
+                final int lastColumn  = halveColumns ? Math.min(2 * ci, level.columns) : ci;
+
+                float sum = 0f;
+
+                for (int j = firstRow; j <= lastRow; ++j)
+                    for (int i = firstColumn; i <= lastColumn; ++i)
+                        sum += fine[level.index(i, j)];
+
+                coarse.rhs[coarse.index(ci, cj)] = sum;
+            }
+        }
+    }
+
+    /**
+     * Adds the coarse solution, interpolated bilinearly at the centre of every fine cell, to the fine
+     * solution.
+     */
+    private static void prolong(final Level coarse, final Level fine) {
+        final float[] u = coarse.solution;
+
+        for (int j = 1; j <= fine.rows; ++j) {
+            final int   nearRow = fine.rowParents[j];
+            final int   farRow  = fine.rowNeighbours[j];
+            final float fy      = fine.rowWeights[j];
+
+            for (int i = 1; i <= fine.columns; ++i) {
+                final int   near = fine.columnParents[i];
+                final int   far  = fine.columnNeighbours[i];
+                final float fx   = fine.columnWeights[i];
+
+                final float top    = u[coarse.index(near, nearRow)] * (1f - fx) + u[coarse.index(far, nearRow)] * fx;
+                final float bottom = u[coarse.index(near, farRow)] * (1f - fx) + u[coarse.index(far, farRow)] * fx;
+
+                fine.solution[fine.index(i, j)] += top * (1f - fy) + bottom * fy;
+            }
+        }
+    }
+
+    /**
+     * Copies every cell next to the boundary into the boundary cell beyond it, and the corners of
+     * the interior into the corners of the boundary.
+     */
+    private static void mirror(final float[] u, final Level level) {
+        for (int j = 1; j <= level.rows; ++j) {
+            u[level.index(0, j)]                 = u[level.index(1, j)];
+            u[level.index(level.columns + 1, j)] = u[level.index(level.columns, j)];
+        }
+
+        System.arraycopy(u, level.index(0, 1), u, level.index(0, 0), level.stride);
+        System.arraycopy(u, level.index(0, level.rows), u, level.index(0, level.rows + 1), level.stride);
+    }
+
+    private static void removeMean(final Level level) {
+        double sum = 0.0;
+
+        for (int j = 1; j <= level.rows; ++j)
+            for (int c = level.index(1, j); c <= level.index(level.columns, j); ++c)
+                sum += level.rhs[c];
+
+        final float mean = (float) (sum / ((double) level.columns * level.rows));
+
+        for (int j = 1; j <= level.rows; ++j)
+            for (int c = level.index(1, j); c <= level.index(level.columns, j); ++c)
+                level.rhs[c] -= mean;
+    }
+
+    private static double norm(final float[] values, final Level level) {
+        double sum = 0.0;
+
+        for (int j = 1; j <= level.rows; ++j)
+            for (int c = level.index(1, j); c <= level.index(level.columns, j); ++c)
+                sum += (double) values[c] * values[c];
+
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Sums the coupling of every cell to its neighbours, the diagonal of the equation on its level,
+     * and stores its inverse for the smoother, along with the coupling shared by every face when the
+     * cells all have the same size.
+     */
+    private static void invertDiagonal(final Level level) {
+        for (int j = 1; j <= level.rows; ++j)
+            for (int i = 1; i <= level.columns; ++i) {
+                final float diagonal = level.rowHeights[j] * (level.columnFaces[i - 1] + level.columnFaces[i])
+                    + level.columnWidths[i] * (level.rowFaces[j - 1] + level.rowFaces[j]);
+
+                level.inverseDiagonal[level.index(i, j)] = diagonal > 0f ? 1f / diagonal : 0f;
+            }
+
+        final float width  = level.columnWidths[1];
+        final float height = level.rowHeights[1];
+
+        for (int i = 1; i <= level.columns; ++i)
+            if (level.columnWidths[i] != width)
+                return;
+
+        for (int j = 1; j <= level.rows; ++j)
+            if (level.rowHeights[j] != height)
+                return;
+
+        level.columnCoupling = height / width;
+        level.rowCoupling    = width / height;
+    }
+
+    /**
+     * Sizes the cells of a coarse axis from the fine cells each one covers, the last one covering a
+     * single fine cell when their number is odd.
+     */
+    private static void merge(final float[] fine, final float[] coarse) {
+        final int fineCells   = fine.length - 2;
+        final int coarseCells = coarse.length - 2;
+
+        for (int c = 1; c <= coarseCells; ++c)
+            if (coarseCells == fineCells)
+                coarse[c] = fine[c];
+            else
+                coarse[c] = fine[2 * c - 1] + (2 * c <= fineCells ? fine[2 * c] : 0f);
+    }
+
+    /**
+     * Sets the coupling across every face of an axis to one over the distance between the centres on
+     * either side of it, and to zero on the boundary.
+     */
+    private static void couple(final float[] sizes, final float[] faces) {
+        final int cells = sizes.length - 2;
+
+        faces[0]     = 0f;
+        faces[cells] = 0f;
+
+        for (int c = 1; c < cells; ++c)
+            faces[c] = 2f / (sizes[c] + sizes[c + 1]);
+    }
+
+    /**
+     * Finds, for every fine cell of an axis, the coarse cell covering it, the coarse cell on the other
+     * side of its centre, and how far towards the latter it lies. Cells at the centre of their coarse
+     * cell, and cells between it and the boundary, take the coarse value as it is.
+     */
+    private static void interpolate(
+        final float[] fine,
+        final float[] coarse,
+        final int[] parents,
+        final int[] neighbours,
+        final float[] weights) {
+
+        final int fineCells   = fine.length - 2;
+        final int coarseCells = coarse.length - 2;
+
+        final double[] fineCentres   = centres(fine);
+        final double[] coarseCentres = centres(coarse);
+
+        for (int c = 1; c <= fineCells; ++c) {
+            final int    parent    = coarseCells == fineCells ? c : (c + 1) / 2;
+            final double offset    = fineCentres[c] - coarseCentres[parent];
+            final int    neighbour = offset < 0.0 ? parent - 1 : parent + 1;
+
+            parents[c] = parent;
+
+            if (offset == 0.0 || neighbour < 1 || neighbour > coarseCells) {
+                neighbours[c] = parent;
+                weights[c]    = 0f;
+            } else {
+                neighbours[c] = neighbour;
+                weights[c]    = (float) Math.abs(offset / (coarseCentres[neighbour] - coarseCentres[parent]));
+            }
+        }
+    }
+
+    private static double[] centres(final float[] sizes) {
+        final double[] centres = new double[sizes.length];
+
+        double edge = 0.0;
+
+        for (int c = 1; c < sizes.length - 1; ++c) {
+            centres[c] = edge + 0.5 * sizes[c];
+            edge += sizes[c];
+        }
+
+        return centres;
+    }
+
+    private static int coarsen(final int cells) {
+        return cells > 1 ? (cells + 1) / 2 : 1;
+    }
+}
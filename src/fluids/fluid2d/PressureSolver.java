@@ -0,0 +1,16 @@
+package fluids.fluid2d;
+
+/**
+ * The solvers available to {@link Fluid2DState} for the pressure Poisson equation that makes the
+ * velocity field divergence-free.
+ */
+public enum PressureSolver {
+    /** A fixed number of in-place Gauss-Seidel sweeps, whatever the residual */
+    GAUSS_SEIDEL,
+    /** Full multigrid followed by V-cycles until the residual falls below the tolerance */
+    MULTIGRID,
+    /** Conjugate gradients preconditioned with MIC(0), until the residual falls below the tolerance */
+    CONJUGATE_GRADIENT,
+    /** As many sweeps, coloured like a checkerboard so that each colour is relaxed in parallel bands of columns */
+    RED_BLACK;
+}
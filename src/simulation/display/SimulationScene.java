@@ -5,10 +5,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
@@ -52,6 +54,8 @@ public class SimulationScene implements SimulationListener {
 
     private final ComboBox<SimulationMode> comboBox;
 
+    private final Label statusLabel = new Label();
+
     private final AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
 
     private Scene scene;
@@ -92,7 +96,8 @@ public class SimulationScene implements SimulationListener {
             playButton,
             stepButton,
             endButton,
-            comboBox);
+            comboBox,
+            statusLabel);
     }
 
     public void bindPlayButton(final Runnable onPlay, final Runnable onPause) {
@@ -129,6 +134,13 @@ public class SimulationScene implements SimulationListener {
         });
     }
 
+    /**
+     * Shows a line of text next to the controls, which may be called from any thread.
+     */
+    public void setStatus(final String status) {
+        Platform.runLater(() -> this.statusLabel.setText(status));
+    }
+
     public Scene asScene() {
         return this.scene;
     }
@@ -0,0 +1,144 @@
+package util.concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import util.Preconditions;
+
+/**
+ * Splits the rows of a grid into contiguous bands and runs a kernel over every band on a
+ * {@link ForkJoinPool}. The band boundaries depend only on the number of rows and bands, so a
+ * kernel that writes nothing outside of its own band produces the same result on every run. Whoever
+ * creates a scheduler closes it once nothing runs on it any more, stopping its threads.
+ *
+ * <p>The tasks splitting the bands between threads are built once and reused by every run, so
+ * running a kernel allocates nothing. Kernels are therefore run one at a time: a scheduler may not
+ * be used from two threads at once, nor from within one of its own kernels.
+ */
+public final class RowBandScheduler implements AutoCloseable {
+
+    /**
+     * A kernel run over the rows {@code [firstRow, lastRow)} of a grid.
+     */
+    @FunctionalInterface
+    public interface BandKernel {
+        public void run(final int firstRow, final int lastRow);
+    }
+
+    private final int bands;
+    private final ForkJoinPool pool;
+
+    // The tree of tasks over every band, and what the current run splits between them
+    private final BandTask root;
+    private int rows;
+    private BandKernel kernel;
+
+    /**
+     * @param threads the number of threads (and bands) to use; one runs every kernel inline
+     */
+    public RowBandScheduler(final int threads) {
+        Preconditions.throwIfSatisfies(threads, t -> t < 1, "At least one thread is required.");
+
+        this.bands = threads;
+        this.pool  = threads == 1 ? null : new ForkJoinPool(threads);
+        this.root  = threads == 1 ? null : new BandTask(0, threads);
+    }
+
+    public int getBands() {
+        return this.bands;
+    }
+
+    /**
+     * Runs the kernel over every band of the rows {@code [0, rows)} and waits for all of them to
+     * finish.
+     *
+     * @param rows the number of rows to split
+     * @param kernel the kernel to run on each band
+     */
+    public void forEachBand(final int rows, final BandKernel kernel) {
+        if (this.pool == null || rows < 2 * this.bands) {
+            kernel.run(0, rows);
+            return;
+        }
+
+        run(rows, kernel);
+    }
+
+    /**
+     * Runs the kernel over every band of the batches {@code [0, count)} and waits for all of them to
+     * finish. Unlike {@link #forEachBand}, the batches go to the pool however few there are, so each
+     * batch should be worth a thread, and with more threads than batches some bands are empty.
+     *
+     * @param count the number of batches to split
+     * @param kernel the kernel to run on each band
+     */
+    public void forEachBatch(final int count, final BandKernel kernel) {
+        if (this.pool == null) {
+            kernel.run(0, count);
+            return;
+        }
+
+        run(count, kernel);
+    }
+
+    private void run(final int rows, final BandKernel kernel) {
+        this.rows   = rows;
+        this.kernel = kernel;
+
+        try {
+            this.root.reinitialize();
+            this.pool.invoke(this.root);
+        } finally {
+            this.kernel = null;
+        }
+    }
+
+    /**
+     * Stops the threads once they are idle. No kernel may be run after.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null)
+            this.pool.shutdown();
+    }
+
+    /**
+     * Runs the kernel of the current run over the bands {@code [firstBand, lastBand)}, splitting them
+     * in halves between two subtasks built along with it.
+     */
+    private final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstBand;
+        private final int lastBand;
+        private final BandTask lower;
+        private final BandTask upper;
+
+        private BandTask(final int firstBand, final int lastBand) {
+            final int middle = (firstBand + lastBand) >>> 1;
+
+            this.firstBand = firstBand;
+            this.lastBand  = lastBand;
+            this.lower     = lastBand - firstBand == 1 ? null : new BandTask(firstBand, middle);
+            this.upper     = lastBand - firstBand == 1 ? null : new BandTask(middle, lastBand);
+        }
+
+        @Override
+        protected void compute() {
+            if (this.lower == null) {
+                kernel.run(bandStart(this.firstBand), bandStart(this.lastBand));
+                return;
+            }
+
+            // Both subtasks completed in the last run, if there was one
+            this.lower.reinitialize();
+            this.upper.reinitialize();
+
+            invokeAll(this.lower, this.upper);
+        }
+
+        private int bandStart(final int band) {
+            return (int) ((long) rows * band / bands);
+        }
+    }
+}
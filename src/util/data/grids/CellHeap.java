@@ -0,0 +1,99 @@
+package util.data.grids;
+
+/**
+ * A binary min-heap of cell indices keyed by float priorities, stored in two primitive arrays so
+ * that pushing and popping never allocate or box. Cells with equal priorities are popped in an
+ * order that depends only on the order they were pushed in.
+ */
+public final class CellHeap {
+
+    private final int[]   cells;
+    private final float[] keys;
+
+    private int size = 0;
+
+    /**
+     * @param capacity the largest number of cells the heap will hold at once
+     */
+    public CellHeap(final int capacity) {
+        this.cells = new int[capacity];
+        this.keys  = new float[capacity];
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * @param cell the cell to add
+     * @param key the priority of the cell, lower keys being popped first
+     */
+    public void push(final int cell, final float key) {
+        int child = this.size++;
+
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+
+            if (this.keys[parent] <= key)
+                break;
+
+            this.cells[child] = this.cells[parent];
+            this.keys[child]  = this.keys[parent];
+            child = parent;
+        }
+
+        this.cells[child] = cell;
+        this.keys[child]  = key;
+    }
+
+    /**
+     * @return the key of the cell {@link #pop()} would return
+     */
+    public float peekKey() {
+        return this.keys[0];
+    }
+
+    /**
+     * Removes the cell with the lowest key.
+     *
+     * @return the removed cell
+     */
+    public int pop() {
+        final int top = this.cells[0];
+
+        final int   lastCell = this.cells[--this.size];
+        final float lastKey  = this.keys[this.size];
+
+        int parent = 0;
+
+        while (true) {
+            int child = 2 * parent + 1;
+
+            if (child >= this.size)
+                break;
+
+            if (child + 1 < this.size && this.keys[child + 1] < this.keys[child])
+                ++child;
+
+            if (lastKey <= this.keys[child])
+                break;
+
+            this.cells[parent] = this.cells[child];
+            this.keys[parent]  = this.keys[child];
+            parent = child;
+        }
+
+        this.cells[parent] = lastCell;
+        this.keys[parent]  = lastKey;
+
+        return top;
+    }
+}
@@ -0,0 +1,119 @@
+package util.data.grids;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+
+/**
+ * A two-dimensional grid of half-precision floats, laid out like a {@link ScalarField2D} of the
+ * same shape but taking half the memory. Values are converted to and from floats as they are read
+ * and written; see {@link HalfFloat}.
+ */
+public final class HalfField2D {
+
+    private final int width;
+    private final int height;
+    private final int halo;
+    private final int stride;
+
+    private final short[] values;
+
+    /**
+     * Constructs a zeroed field surrounded by {@code halo} extra cells on every side.
+     *
+     * @param width the number of columns
+     * @param height the number of rows
+     * @param halo the width of the border around the field
+     */
+    public HalfField2D(final int width, final int height, final int halo) {
+        Preconditions.throwIfSatisfies(width, w -> w <= 0, "Field width must be positive.");
+        Preconditions.throwIfSatisfies(height, h -> h <= 0, "Field height must be positive.");
+        Preconditions.throwIfSatisfies(halo, h -> h < 0, "Field halo must be non-negative.");
+
+        this.width  = width;
+        this.height = height;
+        this.halo   = halo;
+        this.stride = width + 2 * halo;
+        this.values = new short[this.stride * (height + 2 * halo)];
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getHalo() {
+        return this.halo;
+    }
+
+    /**
+     * @return the distance in the backing array between two vertically adjacent cells
+     */
+    public int getStride() {
+        return this.stride;
+    }
+
+    /**
+     * @return the backing array of half bits, including the halo
+     */
+    public short[] getValues() {
+        return this.values;
+    }
+
+    public int index(final int i, final int j) {
+        return (j + this.halo) * this.stride + i + this.halo;
+    }
+
+    public float get(final int i, final int j) {
+        return HalfFloat.toFloat(this.values[index(i, j)]);
+    }
+
+    public void set(final int i, final int j, final float value) {
+        this.values[index(i, j)] = HalfFloat.toHalf(value);
+    }
+
+    /**
+     * Sets every cell, including the halo, to the half nearest the given value.
+     *
+     * @param value the value to fill with
+     */
+    public void fill(final float value) {
+        Arrays.fill(this.values, HalfFloat.toHalf(value));
+    }
+
+    /**
+     * Rounds every cell of the given field, halo included, into this one.
+     *
+     * @param field the field to store, of the same shape
+     */
+    public void store(final ScalarField2D field) {
+        final float[] from = checkShape(field).getValues();
+
+        for (int k = 0; k < from.length; ++k)
+            this.values[k] = HalfFloat.toHalf(from[k]);
+    }
+
+    /**
+     * Writes every cell of this field, halo included, into the given one.
+     *
+     * @param field the field to load into, of the same shape
+     */
+    public void load(final ScalarField2D field) {
+        final float[] to = checkShape(field).getValues();
+
+        for (int k = 0; k < to.length; ++k)
+            to[k] = HalfFloat.toFloat(this.values[k]);
+    }
+
+    private ScalarField2D checkShape(final ScalarField2D field) {
+        Preconditions.throwIfSatisfies(
+            field,
+            f -> f.getWidth() != this.width || f.getHeight() != this.height || f.getHalo() != this.halo,
+            "Field shape does not match the half field.");
+
+        return field;
+    }
+}
@@ -0,0 +1,79 @@
+package util.data.grids;
+
+/**
+ * Conversions between floats and IEEE 754 half-precision floats held in the bits of a short. Halves
+ * have a sign bit, five exponent bits and ten mantissa bits, giving about three significant digits
+ * and a range of roughly {@code 6e-8} to {@code 65504}. Conversions to half precision round to the
+ * nearest half, ties to even, overflow to infinity and keep NaNs.
+ */
+public final class HalfFloat {
+
+    private HalfFloat() { }
+
+    /**
+     * @param value the float to convert
+     * @return the nearest half
+     */
+    public static short toHalf(final float value) {
+        final int bits     = Float.floatToRawIntBits(value);
+        final int sign     = (bits >>> 16) & 0x8000;
+        final int exponent = (bits >>> 23) & 0xFF;
+        final int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF)
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 | (mantissa >>> 13) : 0));
+
+        final int rebiased = exponent - 127 + 15;
+
+        if (rebiased >= 0x1F)
+            return (short) (sign | 0x7C00);
+
+        if (rebiased <= 0) {
+            // Too small to round up to the smallest subnormal half
+            if (rebiased < -10)
+                return (short) sign;
+
+            return (short) (sign | roundShift(mantissa | 0x800000, 14 - rebiased));
+        }
+
+        // A carry out of the mantissa correctly bumps the exponent, up to infinity
+        return (short) (sign | roundShift((rebiased << 23) | mantissa, 13));
+    }
+
+    /**
+     * @param half the bits of the half to convert
+     * @return the float equal to the half
+     */
+    public static float toFloat(final short half) {
+        final int bits     = half & 0xFFFF;
+        final int sign     = (bits & 0x8000) << 16;
+        final int exponent = (bits >>> 10) & 0x1F;
+        final int mantissa = bits & 0x3FF;
+
+        if (exponent == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+
+        if (exponent == 0) {
+            final float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * @param value the float to round
+     * @return the float nearest to the value that a half can hold
+     */
+    public static float round(final float value) {
+        return toFloat(toHalf(value));
+    }
+
+    private static int roundShift(final int value, final int shift) {
+        final int shifted   = value >>> shift;
+        final int remainder = value & ((1 << shift) - 1);
+        final int midpoint  = 1 << (shift - 1);
+
+        return remainder > midpoint || (remainder == midpoint && (shifted & 1) != 0) ? shifted + 1 : shifted;
+    }
+}
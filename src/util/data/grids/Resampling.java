@@ -0,0 +1,77 @@
+package util.data.grids;
+
+/**
+ * Transfers fields between grids of different resolutions covering the same torus. A cell
+ * {@code (i, j)} of a field of size {@code w x h} covers the square from {@code (i / w, j / h)} to
+ * {@code ((i + 1) / w, (j + 1) / h)} of the unit torus.
+ */
+public final class Resampling {
+
+    private Resampling() { }
+
+    /**
+     * Sets every cell of the coarse field to the average of the fine cells whose centres it covers.
+     *
+     * @param fine the field to read
+     * @param coarse the field to write, no larger than the fine field in either direction
+     */
+    public static void downsample(final ScalarField2D fine, final ScalarField2D coarse) {
+        final int fineWidth    = fine.getWidth();
+        final int fineHeight   = fine.getHeight();
+        final int coarseWidth  = coarse.getWidth();
+        final int coarseHeight = coarse.getHeight();
+
+        for (int cj = 0; cj < coarseHeight; ++cj) {
+            final int firstRow = cj * fineHeight / coarseHeight;
+            final int lastRow  = (cj + 1) * fineHeight / coarseHeight;
+
+            for (int ci = 0; ci < coarseWidth; ++ci) {
+                final int firstColumn = ci * fineWidth / coarseWidth;
+                final int lastColumn  = (ci + 1) * fineWidth / coarseWidth;
+
+                double sum = 0.0;
+
+                for (int j = firstRow; j < lastRow; ++j)
+                    for (int i = firstColumn; i < lastColumn; ++i)
+                        sum += fine.get(i, j);
+
+                coarse.set(ci, cj, (float) (sum / ((lastRow - firstRow) * (lastColumn - firstColumn))));
+            }
+        }
+    }
+
+    /**
+     * Adds to every cell of the fine field the coarse field interpolated bilinearly at its centre,
+     * wrapping around the edges.
+     *
+     * @param coarse the field to read
+     * @param fine the field to add to
+     */
+    public static void addUpsampled(final ScalarField2D coarse, final ScalarField2D fine) {
+        final int fineWidth    = fine.getWidth();
+        final int fineHeight   = fine.getHeight();
+        final int coarseWidth  = coarse.getWidth();
+        final int coarseHeight = coarse.getHeight();
+
+        for (int j = 0; j < fineHeight; ++j) {
+            final float y  = (j + 0.5f) * coarseHeight / fineHeight - 0.5f;
+            final int   y0 = (int) Math.floor(y);
+            final float fy = y - y0;
+            final int   j0 = Math.floorMod(y0, coarseHeight);
+            final int   j1 = Math.floorMod(y0 + 1, coarseHeight);
+
+            for (int i = 0; i < fineWidth; ++i) {
+                final float x  = (i + 0.5f) * coarseWidth / fineWidth - 0.5f;
+                final int   x0 = (int) Math.floor(x);
+                final float fx = x - x0;
+                final int   i0 = Math.floorMod(x0, coarseWidth);
+                final int   i1 = Math.floorMod(x0 + 1, coarseWidth);
+
+                final float top    = coarse.get(i0, j0) * (1f - fx) + coarse.get(i1, j0) * fx;
+                final float bottom = coarse.get(i0, j1) * (1f - fx) + coarse.get(i1, j1) * fx;
+
+                fine.set(i, j, fine.get(i, j) + top * (1f - fy) + bottom * fy);
+            }
+        }
+    }
+}
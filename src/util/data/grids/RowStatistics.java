@@ -0,0 +1,158 @@
+package util.data.grids;
+
+/**
+ * Sums, minima and maxima of a field, kept per segment of every row. Kernels record a row right
+ * after writing it, while it is still in cache, and rows can be recorded from different threads as
+ * long as no two threads record the same row. A kernel that writes only some segments of a row
+ * records only those, and the others keep what was last recorded for them. The whole-field values
+ * are reduced over the segments in order, so they do not depend on how the rows were split between
+ * threads.
+ */
+public final class RowStatistics {
+
+    private final int width;
+    private final int segment;
+    private final int segments;
+
+    private final double[] sums;
+    private final float[] minima;
+    private final float[] maxima;
+
+    /**
+     * @param rows the number of rows of the field
+     * @param width the number of columns of the field
+     * @param segment the number of columns of every segment but the last of a row
+     */
+    public RowStatistics(final int rows, final int width, final int segment) {
+        this.width    = width;
+        this.segment  = segment;
+        this.segments = (width + segment - 1) / segment;
+
+        this.sums   = new double[rows * this.segments];
+        this.minima = new float[rows * this.segments];
+        this.maxima = new float[rows * this.segments];
+    }
+
+    /**
+     * Records a whole row, replacing anything previously recorded for it.
+     *
+     * @param row the row to record
+     * @param values the backing array of the field
+     * @param offset the position of the row's first cell in the backing array
+     * @param count the number of cells in the row, which is the width of the field
+     */
+    public void record(final int row, final float[] values, final int offset, final int count) {
+        record(row, values, offset, 0, count);
+    }
+
+    /**
+     * Records the segments of a row starting from the given column, replacing anything previously
+     * recorded for them.
+     *
+     * @param row the row to record
+     * @param values the backing array of the field
+     * @param offset the position of the row's first cell in the backing array
+     * @param first the first column, at the start of a segment
+     * @param last the column just past the last, at the end of a segment or of the row
+     */
+    public void record(final int row, final float[] values, final int offset, final int first, final int last) {
+        for (int s = first / this.segment; s * this.segment < last; ++s)
+            recordSegment(
+                row * this.segments + s,
+                values,
+                offset + s * this.segment,
+                offset + Math.min(this.width, (s + 1) * this.segment));
+    }
+
+    /**
+     * Records the segments of a row of a half-precision field starting from the given column,
+     * replacing anything previously recorded for them.
+     *
+     * @param row the row to record
+     * @param halves the backing array of the field
+     * @param offset the position of the row's first cell in the backing array
+     * @param first the first column, at the start of a segment
+     * @param last the column just past the last, at the end of a segment or of the row
+     */
+    public void record(final int row, final short[] halves, final int offset, final int first, final int last) {
+        for (int s = first / this.segment; s * this.segment < last; ++s)
+            recordSegment(
+                row * this.segments + s,
+                halves,
+                offset + s * this.segment,
+                offset + Math.min(this.width, (s + 1) * this.segment));
+    }
+
+    /**
+     * Records every row of the field.
+     *
+     * @param field the field to record
+     */
+    public void recordAll(final ScalarField2D field) {
+        for (int j = 0; j < field.getHeight(); ++j)
+            record(j, field.getValues(), field.index(0, j), field.getWidth());
+    }
+
+    private void recordSegment(final int entry, final float[] values, final int from, final int to) {
+        double sum = 0.0;
+        float  min = Float.POSITIVE_INFINITY;
+        float  max = Float.NEGATIVE_INFINITY;
+
+        for (int k = from; k < to; ++k) {
+            final float value = values[k];
+
+            sum += value;
+            min  = Math.min(min, value);
+            max  = Math.max(max, value);
+        }
+
+        this.sums[entry]   = sum;
+        this.minima[entry] = min;
+        this.maxima[entry] = max;
+    }
+
+    private void recordSegment(final int entry, final short[] halves, final int from, final int to) {
+        double sum = 0.0;
+        float  min = Float.POSITIVE_INFINITY;
+        float  max = Float.NEGATIVE_INFINITY;
+
+        for (int k = from; k < to; ++k) {
+            final float value = HalfFloat.toFloat(halves[k]);
+
+            sum += value;
+            min  = Math.min(min, value);
+            max  = Math.max(max, value);
+        }
+
+        this.sums[entry]   = sum;
+        this.minima[entry] = min;
+        this.maxima[entry] = max;
+    }
+
+    public double getSum() {
+        double sum = 0.0;
+
+        for (final double segmentSum : this.sums)
+            sum += segmentSum;
+
+        return sum;
+    }
+
+    public float getMin() {
+        float min = Float.POSITIVE_INFINITY;
+
+        for (final float segmentMin : this.minima)
+            min = Math.min(min, segmentMin);
+
+        return min;
+    }
+
+    public float getMax() {
+        float max = Float.NEGATIVE_INFINITY;
+
+        for (final float segmentMax : this.maxima)
+            max = Math.max(max, segmentMax);
+
+        return max;
+    }
+}
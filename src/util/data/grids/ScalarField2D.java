@@ -0,0 +1,150 @@
+package util.data.grids;
+
+import java.util.Arrays;
+
+import util.Preconditions;
+
+/**
+ * A two-dimensional grid of floats stored in a single row-major array. Cell {@code (i, j)} lives
+ * at {@code (j + halo) * stride + (i + halo)}, so walking {@code i} walks memory sequentially. An
+ * optional halo of extra cells surrounds the grid for stencils that read or write past its edges.
+ */
+public final class ScalarField2D {
+
+    private final int width;
+    private final int height;
+    private final int halo;
+    private final int stride;
+
+    private final float[] values;
+
+    /**
+     * Constructs a zeroed field without a halo.
+     *
+     * @param width the number of columns
+     * @param height the number of rows
+     */
+    public ScalarField2D(final int width, final int height) {
+        this(width, height, 0);
+    }
+
+    /**
+     * Constructs a zeroed field surrounded by {@code halo} extra cells on every side.
+     *
+     * @param width the number of columns
+     * @param height the number of rows
+     * @param halo the width of the border around the field
+     */
+    public ScalarField2D(final int width, final int height, final int halo) {
+        Preconditions.throwIfSatisfies(width, w -> w <= 0, "Field width must be positive.");
+        Preconditions.throwIfSatisfies(height, h -> h <= 0, "Field height must be positive.");
+        Preconditions.throwIfSatisfies(halo, h -> h < 0, "Field halo must be non-negative.");
+
+        this.width  = width;
+        this.height = height;
+        this.halo   = halo;
+        this.stride = width + 2 * halo;
+        this.values = new float[this.stride * (height + 2 * halo)];
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getHalo() {
+        return this.halo;
+    }
+
+    /**
+     * @return the distance in the backing array between vertically adjacent cells
+     */
+    public int getStride() {
+        return this.stride;
+    }
+
+    /**
+     * @return the backing array, including the halo
+     */
+    public float[] getValues() {
+        return this.values;
+    }
+
+    /**
+     * @param i the column, which may lie in the halo
+     * @param j the row, which may lie in the halo
+     * @return the position of the cell in the backing array
+     */
+    public int index(final int i, final int j) {
+        return (j + this.halo) * this.stride + i + this.halo;
+    }
+
+    public float get(final int i, final int j) {
+        return this.values[index(i, j)];
+    }
+
+    public void set(final int i, final int j, final float value) {
+        this.values[index(i, j)] = value;
+    }
+
+    /**
+     * Sets every cell, including the halo, to the given value.
+     *
+     * @param value the value to fill with
+     */
+    public void fill(final float value) {
+        Arrays.fill(this.values, value);
+    }
+
+    /**
+     * Copies the cells along each edge into the halo beyond the opposite edge, so that stencils
+     * reading into the halo see the field wrapped around as a torus.
+     */
+    public void wrapHalo() {
+        for (int j = 0; j < this.height; ++j)
+            for (int h = 1; h <= this.halo; ++h) {
+                this.values[index(-h, j)]                 = this.values[index(Math.floorMod(-h, this.width), j)];
+                this.values[index(this.width - 1 + h, j)] = this.values[index(Math.floorMod(this.width - 1 + h, this.width), j)];
+            }
+
+        for (int h = 1; h <= this.halo; ++h) {
+            final int above = -h;
+            final int below = this.height - 1 + h;
+
+            System.arraycopy(this.values, index(-this.halo, Math.floorMod(above, this.height)), this.values, index(-this.halo, above), this.stride);
+            System.arraycopy(this.values, index(-this.halo, Math.floorMod(below, this.height)), this.values, index(-this.halo, below), this.stride);
+        }
+    }
+
+    /**
+     * Adds every halo cell onto the cell it lands on when the field wraps around as a torus, then
+     * clears the halo.
+     */
+    public void foldHalo() {
+        for (int j = -this.halo; j < this.height + this.halo; ++j) {
+            if (0 <= j && j < this.height)
+                continue;
+
+            final int target = Math.floorMod(j, this.height);
+
+            for (int i = -this.halo; i < this.width + this.halo; ++i) {
+                this.values[index(i, target)] += this.values[index(i, j)];
+                this.values[index(i, j)] = 0f;
+            }
+        }
+
+        for (int j = 0; j < this.height; ++j)
+            for (int h = 0; h < this.halo; ++h) {
+                final int left  = - 1 - h;
+                final int right = this.width + h;
+
+                this.values[index(Math.floorMod(left, this.width), j)]  += this.values[index(left, j)];
+                this.values[index(Math.floorMod(right, this.width), j)] += this.values[index(right, j)];
+                this.values[index(left, j)]  = 0f;
+                this.values[index(right, j)] = 0f;
+            }
+    }
+}
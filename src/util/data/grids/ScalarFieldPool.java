@@ -0,0 +1,104 @@
+package util.data.grids;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of scratch {@link ScalarField2D}s. Fields are handed out zeroed and are returned to the
+ * pool once released, so a kernel that acquires and releases the same shapes every tick only
+ * allocates during its first tick. The number of bytes the pool has allocated is tracked so
+ * callers can check that they have reached this steady state.
+ *
+ * <p>Zeroing a field sweeps all of it. A caller that leaves a field zeroed can say so as it releases
+ * it, and the field is then handed out again as it is, and a kernel that writes every cell it reads
+ * can take a field without having it zeroed.
+ */
+public final class ScalarFieldPool {
+
+    private final List<ScalarField2D> free   = new ArrayList<>();
+    private final List<ScalarField2D> zeroed = new ArrayList<>();
+
+    private long allocatedBytes = 0;
+
+    /**
+     * Takes a zeroed field of the given shape from the pool, allocating one if none is free.
+     *
+     * @param width the number of columns
+     * @param height the number of rows
+     * @param halo the width of the border around the field
+     * @return a zeroed field
+     */
+    public synchronized ScalarField2D acquire(final int width, final int height, final int halo) {
+        final ScalarField2D clean = take(this.zeroed, width, height, halo);
+
+        if (clean != null)
+            return clean;
+
+        final ScalarField2D field = take(this.free, width, height, halo);
+
+        if (field != null) {
+            field.fill(0f);
+            return field;
+        }
+
+        return allocate(width, height, halo);
+    }
+
+    /**
+     * Takes a field of the given shape from the pool as it was released, allocating one if none is
+     * free. Fields released zeroed are kept for {@link #acquire}.
+     *
+     * @param width the number of columns
+     * @param height the number of rows
+     * @param halo the width of the border around the field
+     * @return a field holding whatever it held when released
+     */
+    public synchronized ScalarField2D acquireUncleared(final int width, final int height, final int halo) {
+        final ScalarField2D field = take(this.free, width, height, halo);
+
+        return field != null ? field : allocate(width, height, halo);
+    }
+
+    /**
+     * Returns a field to the pool. The field must not be used by the caller afterwards.
+     *
+     * @param field the field to return
+     */
+    public synchronized void release(final ScalarField2D field) {
+        this.free.add(field);
+    }
+
+    /**
+     * Returns a field whose every value, halo included, is zero to the pool, which hands it out again
+     * without zeroing it. The field must not be used by the caller afterwards.
+     *
+     * @param field the zeroed field to return
+     */
+    public synchronized void releaseZeroed(final ScalarField2D field) {
+        this.zeroed.add(field);
+    }
+
+    /**
+     * @return the total number of bytes allocated by this pool since its creation
+     */
+    public synchronized long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    private static ScalarField2D take(final List<ScalarField2D> fields, final int width, final int height, final int halo) {
+        for (int k = fields.size() - 1; k >= 0; --k) {
+            final ScalarField2D field = fields.get(k);
+
+            if (field.getWidth() == width && field.getHeight() == height && field.getHalo() == halo)
+                return fields.remove(k);
+        }
+
+        return null;
+    }
+
+    private ScalarField2D allocate(final int width, final int height, final int halo) {
+        final ScalarField2D field = new ScalarField2D(width, height, halo);
+        this.allocatedBytes += (long) Float.BYTES * field.getValues().length;
+        return field;
+    }
+}
@@ -0,0 +1,66 @@
+package util.math;
+
+/**
+ * A stateless, counter-based pseudo-random number generator. Each value is a hash of the seed, a
+ * stream number and a counter within the stream (for example a tick and a cell index), so values
+ * can be drawn in any order and from any number of threads without contention, and a run can be
+ * reproduced from its seed alone. The hash is the finalizer of SplitMix64.
+ */
+public final class CounterRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    public CounterRandom(final long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Derives an independent generator, for example one per subsystem drawing from the same seed.
+     *
+     * @param key the key distinguishing the derived generator
+     * @return the derived generator
+     */
+    public CounterRandom split(final long key) {
+        return new CounterRandom(mix(this.seed ^ mix(key + GOLDEN_GAMMA)));
+    }
+
+    /**
+     * @param stream the stream to draw from
+     * @param counter the position within the stream
+     * @return a uniformly distributed value in {@code [0, 1)}
+     */
+    public float uniform(final long stream, final long counter) {
+        return (bits(stream, counter) >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * @param stream the stream to draw from
+     * @param counter the position within the stream
+     * @return a uniformly distributed value in {@code [-1, 1)}
+     */
+    public float symmetric(final long stream, final long counter) {
+        return 2f * uniform(stream, counter) - 1f;
+    }
+
+    /**
+     * @param stream the stream to draw from
+     * @param counter the position within the stream
+     * @return 64 uniformly distributed bits
+     */
+    public long bits(final long stream, final long counter) {
+        final long key = mix(this.seed + GOLDEN_GAMMA * (stream + 1));
+        return mix(key + GOLDEN_GAMMA * (counter + 1));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,28 @@
+package util.testing;
+
+import simulation.parameters.Parameter;
+import simulation.parameters.SimulationParameterGroup;
+import util.data.trees.DistinguishedTree;
+
+public final class TestParameters {
+
+    private TestParameters() { }
+
+    /**
+     * Sets every parameter with the given name in a parameter tree, as the parameter menu would.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void setParameter(
+        final DistinguishedTree<String, SimulationParameterGroup> tree,
+        final String name,
+        final T value) {
+
+        tree
+            .linearize()
+            .stream()
+            .flatMap(node -> node.forgetLeft().stream())
+            .flatMap(group -> group.getParameters().stream())
+            .filter(parameter -> parameter.getName().equals(name))
+            .forEach(parameter -> ((Parameter<T>) parameter).setValue(value));
+    }
+}
@@ -0,0 +1,108 @@
+package test.erosion;
+
+import erosion.DepressionFill;
+import util.data.grids.ScalarField2D;
+import util.testing.UnitTest;
+
+public final class DepressionFillTest extends UnitTest {
+
+    private static final int SIZE = 32;
+
+    private DepressionFillTest() {
+        super("Depression Fill Test");
+    }
+
+    public static void main(final String[] args) {
+        final DepressionFillTest unitTest = new DepressionFillTest();
+
+        unitTest.addTest(DepressionFillTest::pitFillsToRim);
+        unitTest.addTest(DepressionFillTest::pitSpillsOverRim);
+        unitTest.addTest(DepressionFillTest::receiversComeFirst);
+
+        unitTest.runTests();
+    }
+
+    private static boolean pitFillsToRim() {
+        return UnitTest.expectValue(
+            "A pit fills up to the lowest point of its rim",
+            4f,
+            () -> {
+                final ScalarField2D heights = pit();
+                final DepressionFill fill = new DepressionFill(SIZE, SIZE, 1);
+
+                fill.compute(heights);
+
+                return fill.getLevels()[heights.index(10, 10)];
+            });
+    }
+
+    private static boolean pitSpillsOverRim() {
+        return UnitTest.expectValue(
+            "Every cell of a pit spills over the lowest point of its rim",
+            true,
+            () -> {
+                final ScalarField2D heights = pit();
+                final DepressionFill fill = new DepressionFill(SIZE, SIZE, 1);
+
+                fill.compute(heights);
+
+                for (int j = 9; j < 12; ++j)
+                    for (int i = 9; i < 12; ++i)
+                        if (fill.getSpills()[heights.index(i, j)] != heights.index(12, 10))
+                            return false;
+
+                return fill.getSpills()[heights.index(0, 0)] == -1;
+            });
+    }
+
+    private static boolean receiversComeFirst() {
+        return UnitTest.expectValue(
+            "Every cell is ordered after the cell it drains into",
+            true,
+            () -> {
+                final ScalarField2D heights = new ScalarField2D(SIZE, SIZE, 1);
+
+                for (int j = 0; j < SIZE; ++j)
+                    for (int i = 0; i < SIZE; ++i)
+                        heights.set(i, j, (float) (Math.sin(i * 0.7) * Math.cos(j * 0.4) + 0.1 * Math.sin(i * j)));
+
+                final DepressionFill fill = new DepressionFill(SIZE, SIZE, 1);
+                fill.compute(heights);
+
+                final int[] position = new int[heights.getValues().length];
+                final int[] order    = fill.getOrder();
+
+                for (int n = 0; n < order.length; ++n)
+                    position[order[n]] = n;
+
+                for (int n = 1; n < order.length; ++n)
+                    if (position[fill.getReceivers()[order[n]]] >= n)
+                        return false;
+
+                return fill.getReceivers()[order[0]] == order[0];
+            });
+    }
+
+    /**
+     * A plain at height 2 around an outlet at the origin, with a pit of depth 3 ringed by a
+     * wall of height 6 that is lowered to 4 at a single point.
+     */
+    private static ScalarField2D pit() {
+        final ScalarField2D heights = new ScalarField2D(SIZE, SIZE, 1);
+
+        heights.fill(2f);
+        heights.set(0, 0, 0f);
+
+        for (int j = 8; j < 13; ++j)
+            for (int i = 8; i < 13; ++i)
+                heights.set(i, j, 6f);
+
+        for (int j = 9; j < 12; ++j)
+            for (int i = 9; i < 12; ++i)
+                heights.set(i, j, 1f);
+
+        heights.set(12, 10, 4f);
+
+        return heights;
+    }
+}
@@ -0,0 +1,291 @@
+package test.erosion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import erosion.ActiveTiles;
+import erosion.ErosionCheckpoint;
+import erosion.ErosionParameters;
+import erosion.ErosionState;
+import erosion.Stratigraphy;
+import util.data.grids.ScalarField2D;
+import util.testing.TestParameters;
+import util.testing.UnitTest;
+
+public final class ErosionCheckpointTest extends UnitTest {
+
+    private ErosionCheckpointTest() {
+        super("Erosion Checkpoint Test");
+    }
+
+    public static void main(final String[] args) {
+        final ErosionCheckpointTest unitTest = new ErosionCheckpointTest();
+
+        unitTest.addTest(ErosionCheckpointTest::resumedRunMatches);
+        unitTest.addTest(ErosionCheckpointTest::shallowWaterResumes);
+        unitTest.addTest(ErosionCheckpointTest::sleepingTilesResume);
+        unitTest.addTest(ErosionCheckpointTest::garbageIsRejected);
+        unitTest.addTest(ErosionCheckpointTest::corruptCheckpointsAreRejected);
+
+        unitTest.runTests();
+    }
+
+    private static boolean resumedRunMatches() {
+        return UnitTest.expectValue(
+            "A run resumed from a checkpoint evolves exactly as the run it was taken from",
+            true,
+            () -> {
+                final ErosionParameters parameters = parameters();
+                TestParameters.setParameter(parameters.getParameterTree(), "Erosion Model", 3);
+                TestParameters.setParameter(parameters.getParameterTree(), "Droplets", 5000);
+                TestParameters.setParameter(parameters.getParameterTree(), "Noise Strength", 0.1f);
+
+                final ErosionState original = terrain(parameters);
+
+                for (int t = 0; t < 3; ++t)
+                    original.evolve();
+
+                final ErosionState resumed = roundTrip(original, parameters);
+
+                if (resumed.getTick() != original.getTick() || resumed.getSeed() != original.getSeed())
+                    return false;
+
+                for (int t = 0; t < 3; ++t) {
+                    original.evolve();
+                    resumed.evolve();
+                }
+
+                return sameCells(original.getHeights(), resumed.getHeights())
+                    && sameCells(original.getSediment(), resumed.getSediment())
+                    && sameCells(original.getWater(), resumed.getWater());
+            });
+    }
+
+    private static boolean shallowWaterResumes() {
+        return UnitTest.expectValue(
+            "A shallow water run with strata and compensated sums resumes exactly, pipes and layers included",
+            true,
+            () -> {
+                final ErosionParameters parameters = parameters();
+                TestParameters.setParameter(parameters.getParameterTree(), "Erosion Model", 4);
+                TestParameters.setParameter(parameters.getParameterTree(), "Strata Depth", 2);
+                TestParameters.setParameter(parameters.getParameterTree(), "Strata Epoch", 1);
+                TestParameters.setParameter(parameters.getParameterTree(), "Compensated Sums", true);
+
+                final ErosionState original = terrain(parameters);
+
+                for (int t = 0; t < 5; ++t)
+                    original.evolve();
+
+                final ErosionState resumed = roundTrip(original, parameters);
+
+                for (int t = 0; t < 5; ++t) {
+                    original.evolve();
+                    resumed.evolve();
+                }
+
+                // Epochs of one tick on columns of two layers fill the overflow
+                final Stratigraphy strata = original.getStrata().asSum().forgetLeft().orElse(null);
+                final int deepest = deepestColumn(strata, original.getHeights());
+
+                return deepest > 2
+                    && sameCells(original.getHeights(), resumed.getHeights())
+                    && sameCells(original.getSediment(), resumed.getSediment())
+                    && sameCells(original.getWater(), resumed.getWater())
+                    && sameLayers(strata, resumed.getStrata().asSum().forgetLeft().orElse(null), original.getHeights());
+            });
+    }
+
+    private static boolean sleepingTilesResume() {
+        return UnitTest.expectValue(
+            "A run whose tiles sleep resumes with the same tiles asleep and evolves exactly as before",
+            true,
+            () -> {
+                final ErosionParameters parameters = parameters();
+                TestParameters.setParameter(parameters.getParameterTree(), "Width", 256);
+                TestParameters.setParameter(parameters.getParameterTree(), "Height", 256);
+                TestParameters.setParameter(parameters.getParameterTree(), "Sleep Threshold", 1e-4f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Erodibility", 0f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Sediment Transport", 0f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Blur Strength", 0.2f);
+
+                final ErosionState original = ErosionState.fromHeightFunction(
+                    parameters,
+                    row -> col -> 10f + 0.5f * (float) Math.cos(2.0 * Math.PI * col / 2000)
+                        + (col < 64 && row < 64 ? (float) (Math.sin(col * 0.05) * Math.cos(row * 0.07)) : 0f));
+
+                for (int t = 0; t < 10; ++t)
+                    original.evolve();
+
+                // The blur still changes the sleeping tiles of the long wave a little, so waking them would tell
+                final ErosionState resumed = roundTrip(original, parameters);
+
+                for (int t = 0; t < 5; ++t) {
+                    original.evolve();
+                    resumed.evolve();
+                }
+
+                final ActiveTiles tiles = original.getTiles();
+
+                for (int tile = 0; tile < tiles.getCount(); ++tile)
+                    if (tiles.isAwake(tile) != resumed.getTiles().isAwake(tile))
+                        return false;
+
+                return tiles.getAwakeCount() < tiles.getCount()
+                    && sameCells(original.getHeights(), resumed.getHeights())
+                    && sameCells(original.getSediment(), resumed.getSediment());
+            });
+    }
+
+    private static boolean garbageIsRejected() {
+        return UnitTest.expectValue(
+            "Reading a file that is not a checkpoint fails",
+            true,
+            () -> {
+                try {
+                    final Path path = Files.createTempFile("erosion", ".checkpoint");
+                    Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+
+                    try {
+                        ErosionCheckpoint.read(path);
+                        return false;
+                    } catch (final IOException e) {
+                        return true;
+                    } finally {
+                        Files.delete(path);
+                    }
+                } catch (final IOException e) {
+                    return false;
+                }
+            });
+    }
+
+    private static boolean corruptCheckpointsAreRejected() {
+        return UnitTest.expectValue(
+            "Reading a truncated checkpoint, or one whose grid overflows or outgrows the file, fails with an IOException",
+            true,
+            () -> {
+                final ErosionParameters parameters = parameters();
+                TestParameters.setParameter(parameters.getParameterTree(), "Strata Depth", 2);
+
+                final ErosionState state = terrain(parameters);
+
+                for (int t = 0; t < 3; ++t)
+                    state.evolve();
+
+                try {
+                    final Path path = Files.createTempFile("erosion", ".checkpoint");
+
+                    try {
+                        ErosionCheckpoint.capture(state).write(path);
+
+                        final byte[] valid = Files.readAllBytes(path);
+
+                        // The width and height follow the magic number and version
+                        return rejects(path, Arrays.copyOf(valid, valid.length / 2))
+                            && rejects(path, withGrid(valid, 1 << 16, 1 << 16))
+                            && rejects(path, withGrid(valid, 40000, 40000));
+                    } finally {
+                        Files.deleteIfExists(path);
+                    }
+                } catch (final IOException e) {
+                    return false;
+                }
+            });
+    }
+
+    private static boolean rejects(final Path path, final byte[] contents) throws IOException {
+        Files.write(path, contents);
+
+        try {
+            ErosionCheckpoint.read(path);
+            return false;
+        } catch (final IOException e) {
+            return true;
+        } catch (final RuntimeException | OutOfMemoryError e) {
+            return false;
+        }
+    }
+
+    private static byte[] withGrid(final byte[] valid, final int width, final int height) {
+        final byte[] contents = valid.clone();
+
+        ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN).putInt(8, width).putInt(12, height);
+
+        return contents;
+    }
+
+    private static boolean sameCells(final ScalarField2D expected, final ScalarField2D actual) {
+        for (int j = 0; j < expected.getHeight(); ++j)
+            for (int i = 0; i < expected.getWidth(); ++i)
+                if (Float.floatToIntBits(expected.get(i, j)) != Float.floatToIntBits(actual.get(i, j)))
+                    return false;
+
+        return true;
+    }
+
+    private static boolean sameLayers(final Stratigraphy expected, final Stratigraphy actual, final ScalarField2D layout) {
+        if (expected == null || actual == null)
+            return false;
+
+        for (int j = 0; j < layout.getHeight(); ++j)
+            for (int i = 0; i < layout.getWidth(); ++i) {
+                final int cell = j * layout.getWidth() + i;
+
+                if (expected.getLayerCount(cell) != actual.getLayerCount(cell))
+                    return false;
+
+                for (int layer = 0; layer < expected.getLayerCount(cell); ++layer)
+                    if (Float.floatToIntBits(expected.getThickness(cell, layer)) != Float.floatToIntBits(actual.getThickness(cell, layer))
+                        || expected.getAge(cell, layer) != actual.getAge(cell, layer)
+                        || expected.getType(cell, layer) != actual.getType(cell, layer))
+                        return false;
+            }
+
+        return true;
+    }
+
+    private static int deepestColumn(final Stratigraphy strata, final ScalarField2D layout) {
+        int deepest = 0;
+
+        for (int j = 0; j < layout.getHeight(); ++j)
+            for (int i = 0; i < layout.getWidth(); ++i)
+                deepest = Math.max(deepest, strata.getLayerCount(j * layout.getWidth() + i));
+
+        return deepest;
+    }
+
+    private static ErosionState roundTrip(final ErosionState state, final ErosionParameters parameters) {
+        try {
+            final Path path = Files.createTempFile("erosion", ".checkpoint");
+
+            try {
+                ErosionCheckpoint.capture(state).write(path);
+                return ErosionCheckpoint.read(path).restore(parameters);
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ErosionParameters parameters() {
+        final ErosionParameters parameters = new ErosionParameters();
+
+        TestParameters.setParameter(parameters.getParameterTree(), "Width", 120);
+        TestParameters.setParameter(parameters.getParameterTree(), "Height", 80);
+
+        return parameters;
+    }
+
+    private static ErosionState terrain(final ErosionParameters parameters) {
+        return ErosionState.fromHeightFunction(
+            parameters,
+            row -> col -> 10f + (float) (Math.sin(col * 0.05) * Math.cos(row * 0.07) + 0.3 * Math.sin(col * row * 0.001)));
+    }
+}
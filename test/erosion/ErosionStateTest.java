@@ -0,0 +1,894 @@
+package test.erosion;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import erosion.ErosionParameters;
+import erosion.ErosionPyramid;
+import erosion.ErosionState;
+import erosion.ErosionStatistics;
+import erosion.Stratigraphy;
+import util.data.grids.HalfFloat;
+import util.data.grids.ScalarField2D;
+import util.testing.TestParameters;
+import util.testing.UnitTest;
+
+public final class ErosionStateTest extends UnitTest {
+
+    private static final float TOLERANCE = 1e-3f;
+
+    // The mean difference from single precision, and the mass change relative to the total, allowed
+    // sediment and water stored as halves, whose roundings are not carried over
+    private static final double HALF_TOLERANCE = 2e-3;
+    private static final double HALF_MASS_TOLERANCE = 1e-5;
+
+    private ErosionStateTest() {
+        super("Erosion State Test");
+    }
+
+    public static void main(final String[] args) {
+        final ErosionStateTest unitTest = new ErosionStateTest();
+
+        unitTest.addTest(ErosionStateTest::stencilMatchesReference);
+        unitTest.addTest(ErosionStateTest::ticksAllocateNothing);
+        unitTest.addTest(ErosionStateTest::parallelMatchesSerial);
+        unitTest.addTest(ErosionStateTest::gatherMatchesScatter);
+        unitTest.addTest(ErosionStateTest::gatherConservesMass);
+        unitTest.addTest(ErosionStateTest::perturbIsReproducible);
+        unitTest.addTest(ErosionStateTest::fillConservesMass);
+        unitTest.addTest(ErosionStateTest::streamPowerConservesMass);
+        unitTest.addTest(ErosionStateTest::implicitReachesSteadyState);
+        unitTest.addTest(ErosionStateTest::dropletsConserveMass);
+        unitTest.addTest(ErosionStateTest::dropletsIgnoreThreads);
+        unitTest.addTest(ErosionStateTest::dropletBatchesSpreadOverThreads);
+        unitTest.addTest(ErosionStateTest::shallowWaterConservesMass);
+        unitTest.addTest(ErosionStateTest::shallowWaterIgnoresThreads);
+        unitTest.addTest(ErosionStateTest::pyramidConservesMass);
+        unitTest.addTest(ErosionStateTest::pyramidStepsMatchRefine);
+        unitTest.addTest(ErosionStateTest::pyramidRefinesSettledLevels);
+        unitTest.addTest(ErosionStateTest::pyramidScalesRatesToCellSize);
+        unitTest.addTest(ErosionStateTest::dimensionsFollowParameters);
+        unitTest.addTest(ErosionStateTest::settledTilesSleep);
+        unitTest.addTest(ErosionStateTest::blurConservesMassAcrossSleepingTiles);
+        unitTest.addTest(ErosionStateTest::sleepingTilesKeepStatistics);
+        unitTest.addTest(ErosionStateTest::halfPrecisionTracksSingle);
+        unitTest.addTest(ErosionStateTest::floatKernelsLeaveHalves);
+        unitTest.addTest(ErosionStateTest::compensatedSumsDriftLess);
+        unitTest.addTest(ErosionStateTest::cliffSlumpsToTalus);
+        unitTest.addTest(ErosionStateTest::strataFollowEveryPass);
+        unitTest.addTest(ErosionStateTest::everyModelErodesDepositsAtTheirRate);
+
+        unitTest.runTests();
+    }
+
+    private static boolean stencilMatchesReference() {
+        return UnitTest.checkValue(
+            "Stencil flow matches reference flow",
+            difference -> difference < TOLERANCE,
+            () -> {
+                final ErosionState reference = terrain();
+                final ErosionState stencil   = terrain();
+
+                for (int k = 0; k < 5; ++k) {
+                    reference.flow(0.1f, 0.9f, 0.5f);
+                    stencil.stencilFlow(0.1f, 0.9f, 0.5f);
+                }
+
+                return Math.max(
+                    maxDifference(reference.getHeights(), stencil.getHeights()),
+                    maxDifference(reference.getSediment(), stencil.getSediment()));
+            });
+    }
+
+    private static boolean ticksAllocateNothing() {
+        return UnitTest.expectValue(
+            "Once warmed up, ticks allocate nothing with any model but the reference flow on one thread",
+            0L,
+            () -> {
+                final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                final long thread = Thread.currentThread().getId();
+
+                // Model and flow engine ordinals, the reference engine allocating by design
+                final int[][] kernels = { { 0, 1 }, { 0, 2 }, { 1, 1 }, { 2, 1 }, { 3, 1 }, { 4, 1 } };
+                long allocated = 0L;
+
+                for (final int[] kernel : kernels) {
+                    final ErosionParameters parameters = parameters("Erosion Model", kernel[0]);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Flow Engine", kernel[1]);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Threads", 1);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Width", 64);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Height", 48);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Droplets", 2000);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Blur Strength", 0.1f);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Strata Depth", 4);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Compensated Sums", true);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Sleep Threshold", 1e-3f);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Statistics Interval", 1);
+
+                    // The first ticks fill the scratch pool and build the subsystems the model uses
+                    final ErosionState state = terrain(parameters);
+
+                    for (int t = 0; t < 3; ++t)
+                        state.evolve();
+
+                    final long before = threads.getThreadAllocatedBytes(thread);
+
+                    for (int t = 0; t < 5; ++t)
+                        state.evolve();
+
+                    allocated += threads.getThreadAllocatedBytes(thread) - before;
+                }
+
+                return allocated;
+            });
+    }
+
+    private static boolean parallelMatchesSerial() {
+        return UnitTest.expectValue(
+            "Parallel bands are bit-identical to a serial sweep",
+            true,
+            () -> {
+                final ErosionState serial   = terrain(parameters("Threads", 1));
+                final ErosionState parallel = terrain(parameters("Threads", 5));
+                final float[][] mask = new float[][] {
+                    new float[]{ 0.10f, 0.15f, 0.10f },
+                    new float[]{ 0.15f, 0.50f, 0.15f },
+                    new float[]{ 0.10f, 0.15f, 0.10f }
+                };
+
+                for (int k = 0; k < 5; ++k) {
+                    serial.stencilFlow(0.1f, 0.9f, 0.5f);
+                    serial.blur(mask);
+                    parallel.stencilFlow(0.1f, 0.9f, 0.5f);
+                    parallel.blur(mask);
+                }
+
+                return Arrays.equals(serial.getHeights().getValues(), parallel.getHeights().getValues())
+                    && Arrays.equals(serial.getSediment().getValues(), parallel.getSediment().getValues());
+            });
+    }
+
+    private static boolean gatherMatchesScatter() {
+        return UnitTest.checkValue(
+            "Gather flow matches scatter flow",
+            difference -> difference < TOLERANCE,
+            () -> {
+                final ErosionState scatter = terrain();
+                final ErosionState gather  = terrain();
+
+                for (int k = 0; k < 5; ++k) {
+                    scatter.stencilFlow(0.1f, 0.9f, 0.5f);
+                    gather.gatherFlow(0.1f, 0.9f, 0.5f);
+                }
+
+                return Math.max(
+                    maxDifference(scatter.getHeights(), gather.getHeights()),
+                    maxDifference(scatter.getSediment(), gather.getSediment()));
+            });
+    }
+
+    private static boolean gatherConservesMass() {
+        return UnitTest.checkValue(
+            "Gather flow conserves height plus sediment",
+            drift -> drift < 1e-6,
+            () -> {
+                final ErosionState state = terrain();
+                final double before = totalMass(state);
+
+                for (int k = 0; k < 20; ++k)
+                    state.gatherFlow(0.1f, 0.9f, 0.5f);
+
+                return Math.abs(totalMass(state) - before) / before;
+            });
+    }
+
+    private static boolean perturbIsReproducible() {
+        return UnitTest.expectValue(
+            "Perturbation depends only on the seed",
+            true,
+            () -> {
+                final ErosionState serial   = terrain(parameters("Threads", 1));
+                final ErosionState parallel = terrain(parameters("Threads", 3));
+                final ErosionState reseeded = terrain(parameters("Seed", 17));
+
+                serial.perturb(0.5f);
+                parallel.perturb(0.5f);
+                reseeded.perturb(0.5f);
+
+                return Arrays.equals(serial.getHeights().getValues(), parallel.getHeights().getValues())
+                    && !Arrays.equals(serial.getHeights().getValues(), reseeded.getHeights().getValues());
+            });
+    }
+
+    private static boolean fillConservesMass() {
+        return UnitTest.checkValue(
+            "Filling depressions conserves height plus sediment",
+            drift -> drift < 1e-6,
+            () -> {
+                final ErosionState state = terrain();
+
+                for (int k = 0; k < 5; ++k)
+                    state.stencilFlow(0.1f, 0.9f, 0.5f);
+
+                final double before = totalMass(state);
+
+                state.fillDepressions();
+
+                return Math.abs(totalMass(state) - before) / before;
+            });
+    }
+
+    private static boolean streamPowerConservesMass() {
+        return UnitTest.checkValue(
+            "Stream power erosion conserves height plus sediment",
+            drift -> drift < 1e-6,
+            () -> {
+                final ErosionState state = terrain();
+                final double before = totalMass(state);
+
+                for (int k = 0; k < 20; ++k)
+                    state.streamPower(0.01f, 0.9f, 0.5f, 1.0f);
+
+                return Math.abs(totalMass(state) - before) / before;
+            });
+    }
+
+    private static boolean implicitReachesSteadyState() {
+        return UnitTest.checkValue(
+            "Implicit stream power balances uplift within a few large steps",
+            rate -> rate < 0.1f * 0.001f,
+            () -> {
+                final ErosionState state = terrain();
+
+                for (int k = 0; k < 10; ++k)
+                    state.implicitStreamPower(0.1f, 0.5f, 1.0f, 1000f, 0.001f, 0.01f);
+
+                final float[] before = state.getHeights().getValues().clone();
+
+                state.implicitStreamPower(0.1f, 0.5f, 1.0f, 1000f, 0.001f, 0.01f);
+
+                final float[] after = state.getHeights().getValues();
+                float change = 0f;
+
+                for (int k = 0; k < after.length; ++k)
+                    change = Math.max(change, Math.abs(after[k] - before[k]));
+
+                return change / 1000f;
+            });
+    }
+
+    private static boolean dropletsConserveMass() {
+        return UnitTest.checkValue(
+            "Droplets conserve height plus sediment",
+            drift -> drift < 1e-6,
+            () -> {
+                final ErosionState state = terrain();
+                final double before = totalMass(state);
+
+                for (int k = 0; k < 3; ++k)
+                    state.droplets(50000, 30, 0.05f, 4f, 0.3f, 0.3f, 0.02f);
+
+                return Math.abs(totalMass(state) - before) / before;
+            });
+    }
+
+    private static boolean dropletsIgnoreThreads() {
+        return UnitTest.expectValue(
+            "Droplet batches are bit-identical whatever the number of threads",
+            true,
+            () -> {
+                final ErosionState serial   = terrain(parameters("Threads", 1));
+                final ErosionState parallel = terrain(parameters("Threads", 4));
+
+                for (int k = 0; k < 2; ++k) {
+                    serial.droplets(50000, 30, 0.05f, 4f, 0.3f, 0.3f, 0.02f);
+                    parallel.droplets(50000, 30, 0.05f, 4f, 0.3f, 0.3f, 0.02f);
+                }
+
+                return Arrays.equals(serial.getHeights().getValues(), parallel.getHeights().getValues())
+                    && Arrays.equals(serial.getSediment().getValues(), parallel.getSediment().getValues())
+                    && Arrays.equals(serial.getWater().getValues(), parallel.getWater().getValues());
+            });
+    }
+
+    private static boolean dropletBatchesSpreadOverThreads() {
+        return UnitTest.checkValue(
+            "Droplet batches run on more than one worker thread with more than half as many threads as batches",
+            workers -> workers > 1,
+            () -> {
+                final ErosionParameters parameters = parameters("Threads", 16);
+                TestParameters.setParameter(parameters.getParameterTree(), "Width", 120);
+                // Too few rows to split between the threads, so only the batches can reach the workers
+                TestParameters.setParameter(parameters.getParameterTree(), "Height", 24);
+
+                final ErosionState state = terrain(parameters);
+                final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+                // The first call starts the workers
+                state.droplets(50000, 30, 0.05f, 4f, 0.3f, 0.3f, 0.02f);
+
+                final Map<Long, Long> before = new HashMap<>();
+
+                for (final long thread : threads.getAllThreadIds())
+                    before.put(thread, threads.getThreadCpuTime(thread));
+
+                state.droplets(50000, 30, 0.05f, 4f, 0.3f, 0.3f, 0.02f);
+
+                int workers = 0;
+
+                for (final ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds()))
+                    if (thread != null
+                        && thread.getThreadName().startsWith("ForkJoinPool")
+                        && threads.getThreadCpuTime(thread.getThreadId()) > before.getOrDefault(thread.getThreadId(), 0L))
+                        ++workers;
+
+                state.close();
+
+                return workers;
+            });
+    }
+
+    private static boolean shallowWaterConservesMass() {
+        return UnitTest.checkValue(
+            "Shallow water conserves water and height plus sediment",
+            drift -> drift < 1e-6,
+            () -> {
+                final ErosionState state = terrain();
+
+                state.precipitate(0.5f, 0f);
+
+                final double before      = totalMass(state);
+                final double waterBefore = totalWater(state);
+
+                for (int k = 0; k < 20; ++k)
+                    state.shallowWater(0f, 0f, 0f, 4f, 0.1f, 0.1f);
+
+                return Math.max(
+                    Math.abs(totalMass(state) - before) / before,
+                    Math.abs(totalWater(state) - waterBefore) / waterBefore);
+            });
+    }
+
+    private static boolean shallowWaterIgnoresThreads() {
+        return UnitTest.expectValue(
+            "Shallow water is bit-identical whatever the number of threads",
+            true,
+            () -> {
+                final ErosionState serial   = terrain(parameters("Threads", 1));
+                final ErosionState parallel = terrain(parameters("Threads", 4));
+
+                for (int k = 0; k < 10; ++k) {
+                    serial.shallowWater(0.01f, 0f, 0.005f, 4f, 0.1f, 0.1f);
+                    parallel.shallowWater(0.01f, 0f, 0.005f, 4f, 0.1f, 0.1f);
+                }
+
+                return Arrays.equals(serial.getHeights().getValues(), parallel.getHeights().getValues())
+                    && Arrays.equals(serial.getSediment().getValues(), parallel.getSediment().getValues())
+                    && Arrays.equals(serial.getWater().getValues(), parallel.getWater().getValues());
+            });
+    }
+
+    private static boolean pyramidConservesMass() {
+        return UnitTest.checkValue(
+            "A pyramid conserves height plus sediment on its way to full resolution",
+            drift -> drift < 1e-4,
+            () -> {
+                final ErosionParameters parameters = new ErosionParameters();
+                final ErosionState state = terrain(parameters);
+                final double before = totalMass(state);
+
+                ErosionPyramid.refine(state, parameters, 3, 5, 0f);
+
+                return state.getTick() == 5 ? Math.abs(totalMass(state) - before) / before : Double.MAX_VALUE;
+            });
+    }
+
+    private static boolean pyramidStepsMatchRefine() {
+        return UnitTest.checkValue(
+            "A pyramid refined a step at a time takes several steps and matches one refined at once",
+            steps -> steps > 1,
+            () -> {
+                final ErosionParameters parameters = new ErosionParameters();
+                final ErosionState whole   = terrain(parameters);
+                final ErosionState stepped = terrain(parameters);
+
+                ErosionPyramid.refine(whole, parameters, 3, 5, 0f);
+
+                final ErosionPyramid pyramid = new ErosionPyramid(stepped, parameters, 3, 5, 0f);
+                int steps = 0;
+
+                while (!pyramid.isDone()) {
+                    pyramid.step();
+                    ++steps;
+                }
+
+                return Arrays.equals(whole.getHeights().getValues(), stepped.getHeights().getValues())
+                    && Arrays.equals(whole.getSediment().getValues(), stepped.getSediment().getValues())
+                    && stepped.getTick() == 5
+                    ? steps
+                    : -1;
+            });
+    }
+
+    private static boolean pyramidRefinesSettledLevels() {
+        return UnitTest.checkValue(
+            "A pyramid refines every level once its heights change by less than the tolerance per tick",
+            settled -> settled,
+            () -> {
+                final ErosionParameters parameters = diffusing();
+                final ErosionState state = terrain(parameters);
+                final ErosionPyramid pyramid = new ErosionPyramid(state, parameters, 2, 2000, 1e-4f);
+                int descents = 0;
+
+                while (!pyramid.isDone()) {
+                    final int level = pyramid.getLevel();
+
+                    pyramid.step();
+
+                    if (pyramid.getLevel() != level)
+                        ++descents;
+                }
+
+                // The full resolution stops well before the most ticks, once it has settled
+                return descents == 2 && state.getTick() < 2000 && pyramid.getChange() < 1e-4f;
+            });
+    }
+
+    private static boolean pyramidScalesRatesToCellSize() {
+        return UnitTest.checkValue(
+            "Hillslope diffusion through a pyramid matches diffusion at full resolution for as many ticks",
+            error -> error < 0.1,
+            () -> {
+                final ErosionParameters parameters = diffusing();
+                final ErosionState initial = terrain(parameters);
+                final ErosionState full    = terrain(parameters);
+                final ErosionState refined = terrain(parameters);
+
+                for (int t = 0; t < 100; ++t)
+                    full.evolve();
+
+                ErosionPyramid.refine(refined, parameters, 1, 50, 0f);
+
+                // Unscaled, the coarse level diffuses four times as fast and the error is about the change itself
+                return meanDifference(full.getHeights(), refined.getHeights())
+                    / meanDifference(initial.getHeights(), full.getHeights());
+            });
+    }
+
+    /**
+     * @return parameters for smooth terrain worn down by hillslope diffusion alone
+     */
+    private static ErosionParameters diffusing() {
+        final ErosionParameters parameters = parameters("Erosion Model", 2);
+        TestParameters.setParameter(parameters.getParameterTree(), "Width", 128);
+        TestParameters.setParameter(parameters.getParameterTree(), "Height", 96);
+        TestParameters.setParameter(parameters.getParameterTree(), "Erodibility", 0f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Thermal Rate", 0f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Uplift", 0f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusivity", 0.05f);
+        return parameters;
+    }
+
+    private static boolean dimensionsFollowParameters() {
+        return UnitTest.checkValue(
+            "A state takes its grid size from the parameters and evolves at that size",
+            drift -> drift < 1e-4,
+            () -> {
+                final ErosionParameters parameters = parameters("Width", 96);
+                TestParameters.setParameter(parameters.getParameterTree(), "Height", 40);
+                final ErosionState state = terrain(parameters);
+                final double before = totalMass(state);
+
+                for (int t = 0; t < 10; ++t)
+                    state.evolve();
+
+                return state.getWidth() == 96 && state.getHeights().getHeight() == 40
+                    ? Math.abs(totalMass(state) - before) / before
+                    : Double.MAX_VALUE;
+            });
+    }
+
+    private static boolean settledTilesSleep() {
+        return UnitTest.checkValue(
+            "Tiles of flat terrain sleep while the hills beside them erode, and mass is conserved",
+            drift -> drift < 1e-6,
+            () -> {
+                final ErosionState state = ErosionState.fromHeightFunction(
+                    parameters("Sleep Threshold", 1e-5f),
+                    row -> col -> col < 150 && row < 150 ? 10f + (float) (Math.sin(col * 0.05) * Math.cos(row * 0.07)) : 10f);
+                final double before = totalMass(state);
+
+                for (int t = 0; t < 20; ++t)
+                    state.evolve();
+
+                return state.getTiles().getAwakeCount() < state.getTiles().getCount() / 2
+                    ? Math.abs(totalMass(state) - before) / before
+                    : Double.MAX_VALUE;
+            });
+    }
+
+    private static boolean blurConservesMassAcrossSleepingTiles() {
+        return UnitTest.checkValue(
+            "Blurring hills beside sleeping tiles of gently curved terrain conserves mass",
+            drift -> drift < 2e-7,
+            () -> {
+                final ErosionParameters parameters = parameters("Sleep Threshold", 1e-5f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Erodibility", 0f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Sediment Transport", 0f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Blur Strength", 0.2f);
+
+                // The long wave barely changes under the blur, so it sleeps, and the bump keeps its tiles awake
+                final ErosionState state = ErosionState.fromHeightFunction(
+                    parameters,
+                    row -> col -> 10f + 0.5f * (float) Math.cos(2.0 * Math.PI * col / 700)
+                        + (col < 100 && row < 100 ? (float) (Math.sin(col * 0.1) * Math.cos(row * 0.1)) : 0f));
+                final double before = totalMass(state);
+
+                // Material crossing into sleeping tiles wakes them, so they sleep early on only
+                int fewestAwake = Integer.MAX_VALUE;
+
+                for (int t = 0; t < 20; ++t) {
+                    state.evolve();
+                    fewestAwake = Math.min(fewestAwake, state.getTiles().getAwakeCount());
+                }
+
+                return fewestAwake < state.getTiles().getCount() / 2
+                    ? Math.abs(totalMass(state) - before) / before
+                    : Double.MAX_VALUE;
+            });
+    }
+
+    private static boolean sleepingTilesKeepStatistics() {
+        return UnitTest.checkValue(
+            "Statistics sampled while most tiles sleep match a sweep over the whole fields",
+            error -> error < 1e-12,
+            () -> {
+                final ErosionParameters parameters = parameters("Sleep Threshold", 1e-5f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Statistics Interval", 3);
+
+                final ErosionState state = ErosionState.fromHeightFunction(
+                    parameters,
+                    row -> col -> col < 150 && row < 150 ? 10f + (float) (Math.sin(col * 0.05) * Math.cos(row * 0.07)) : 10f);
+                int fewestAwake = Integer.MAX_VALUE;
+                double error = 0.0;
+
+                for (int t = 0; t < 30; ++t) {
+                    state.evolve();
+                    fewestAwake = Math.min(fewestAwake, state.getTiles().getAwakeCount());
+
+                    if (state.getTick() % 3 != 0)
+                        continue;
+
+                    final ErosionStatistics sample = state.getStatistics().asSum().forgetLeft().orElse(null);
+
+                    if (sample == null
+                        || sample.getMinHeight() != minimum(state.getHeights())
+                        || sample.getMaxSediment() != maximum(state.getSediment()))
+                        return Double.MAX_VALUE;
+
+                    error = Math.max(error, Math.abs(sample.getHeightSum() - total(state.getHeights())) / total(state.getHeights()));
+                    error = Math.max(error, Math.abs(sample.getSedimentSum() - total(state.getSediment())) / total(state.getHeights()));
+                }
+
+                return fewestAwake < state.getTiles().getCount() / 2 ? error : Double.MAX_VALUE;
+            });
+    }
+
+    private static boolean halfPrecisionTracksSingle() {
+        return UnitTest.checkValue(
+            "Sediment and water stored as halves conserve mass and stay close to single precision with every kernel that reads them",
+            error -> error < HALF_TOLERANCE,
+            () -> {
+                // Model and flow engine ordinals of the kernels that read and write halves
+                final int[][] kernels = { { 0, 1 }, { 0, 2 }, { 1, 1 }, { 3, 1 } };
+                double error = 0.0;
+
+                for (final int[] kernel : kernels) {
+                    final ErosionState single = precise(kernel, 0);
+                    final ErosionState half   = precise(kernel, 1);
+                    final double before = totalMass(half);
+
+                    for (int t = 0; t < 20; ++t) {
+                        single.evolve();
+                        half.evolve();
+                    }
+
+                    if (!isHalves(half.getSediment()) || !isHalves(half.getWater()))
+                        return Double.MAX_VALUE;
+
+                    if (Math.abs(totalMass(half) - before) / before > HALF_MASS_TOLERANCE)
+                        return Double.MAX_VALUE;
+
+                    error = Math.max(error, meanDifference(single.getHeights(), half.getHeights()));
+                    error = Math.max(error, meanDifference(single.getSediment(), half.getSediment()));
+                    error = Math.max(error, meanDifference(single.getWater(), half.getWater()));
+                }
+
+                return error;
+            });
+    }
+
+    private static boolean floatKernelsLeaveHalves() {
+        return UnitTest.expectValue(
+            "Kernels that cannot read halves store the sediment and water as floats, matching single precision",
+            0f,
+            () -> {
+                // The reference flow engine and the shallow water model
+                final int[][] kernels = { { 0, 0 }, { 4, 1 } };
+                float difference = 0f;
+
+                for (final int[] kernel : kernels) {
+                    final ErosionState single = precise(kernel, 0);
+                    final ErosionState half   = precise(kernel, 1);
+
+                    for (int t = 0; t < 10; ++t) {
+                        single.evolve();
+                        half.evolve();
+                    }
+
+                    difference = Math.max(difference, maxDifference(single.getHeights(), half.getHeights()));
+                    difference = Math.max(difference, maxDifference(single.getSediment(), half.getSediment()));
+                    difference = Math.max(difference, maxDifference(single.getWater(), half.getWater()));
+                }
+
+                return difference;
+            });
+    }
+
+    private static ErosionState precise(final int[] kernel, final int precision) {
+        final ErosionParameters parameters = parameters("Erosion Model", kernel[0]);
+        TestParameters.setParameter(parameters.getParameterTree(), "Flow Engine", kernel[1]);
+        TestParameters.setParameter(parameters.getParameterTree(), "Width", 64);
+        TestParameters.setParameter(parameters.getParameterTree(), "Height", 48);
+        // More droplets than this pile sediment up without bound on so small a grid
+        TestParameters.setParameter(parameters.getParameterTree(), "Droplets", 50);
+        TestParameters.setParameter(parameters.getParameterTree(), "Field Precision", precision);
+
+        return terrain(parameters);
+    }
+
+    private static boolean isHalves(final ScalarField2D field) {
+        for (int j = 0; j < field.getHeight(); ++j)
+            for (int i = 0; i < field.getWidth(); ++i)
+                if (HalfFloat.round(field.get(i, j)) != field.get(i, j))
+                    return false;
+
+        return true;
+    }
+
+    private static boolean compensatedSumsDriftLess() {
+        return UnitTest.expectValue(
+            "Compensated sums drift less from the initial mass than plain sums",
+            true,
+            () -> {
+                final ErosionState plain       = terrain();
+                final ErosionState compensated = terrain(parameters("Compensated Sums", true));
+                final double before = totalMass(plain);
+
+                for (int t = 0; t < 100; ++t) {
+                    plain.evolve();
+                    compensated.evolve();
+                }
+
+                return Math.abs(totalMass(compensated) - before) < Math.abs(totalMass(plain) - before);
+            });
+    }
+
+    private static boolean cliffSlumpsToTalus() {
+        return UnitTest.checkValue(
+            "A cliff slumps until no drop across it exceeds the talus slope, conserving mass",
+            drop -> drop < 1.05,
+            () -> {
+                final ErosionParameters parameters = new ErosionParameters();
+
+                TestParameters.setParameter(parameters.getParameterTree(), "Width", 64);
+                TestParameters.setParameter(parameters.getParameterTree(), "Height", 16);
+                TestParameters.setParameter(parameters.getParameterTree(), "Erodibility", 0f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Sediment Transport", 0f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Talus Slope", 1f);
+                TestParameters.setParameter(parameters.getParameterTree(), "Thermal Rate", 0.5f);
+
+                final ErosionState state = ErosionState.fromHeightFunction(parameters, row -> col -> col < 32 ? 10f : 0f);
+                final double before = totalMass(state);
+
+                for (int t = 0; t < 500; ++t)
+                    state.evolve();
+
+                if (Math.abs(totalMass(state) - before) / before > 1e-5)
+                    return Double.MAX_VALUE;
+
+                double drop = 0.0;
+
+                for (int j = 1; j < 15; ++j)
+                    for (int i = 16; i < 48; ++i)
+                        drop = Math.max(drop, Math.abs(state.getHeights().get(i, j) - state.getHeights().get(i + 1, j)));
+
+                return drop;
+            });
+    }
+
+    private static boolean strataFollowEveryPass() {
+        return UnitTest.checkValue(
+            "The strata take up what the blur, the noise and hillslope diffusion lay down, but not the uplift",
+            rise -> rise < 1e-4,
+            () -> {
+                final ErosionParameters smoothed = parameters("Strata Depth", 4);
+                TestParameters.setParameter(smoothed.getParameterTree(), "Erodibility", 0f);
+                TestParameters.setParameter(smoothed.getParameterTree(), "Sediment Transport", 0f);
+                TestParameters.setParameter(smoothed.getParameterTree(), "Blur Strength", 0.2f);
+                TestParameters.setParameter(smoothed.getParameterTree(), "Noise Strength", 0.05f);
+
+                final ErosionParameters uplifted = parameters("Strata Depth", 4);
+                TestParameters.setParameter(uplifted.getParameterTree(), "Erosion Model", 2);
+                TestParameters.setParameter(uplifted.getParameterTree(), "Uplift", 0.01f);
+                TestParameters.setParameter(uplifted.getParameterTree(), "Diffusivity", 0.5f);
+                TestParameters.setParameter(uplifted.getParameterTree(), "Erodibility", 0f);
+
+                final ErosionState[] states = { terrain(smoothed), terrain(uplifted) };
+                final float[] initial = states[0].getHeights().getValues().clone();
+                final int ticks = 20;
+
+                for (int t = 0; t < ticks; ++t)
+                    for (final ErosionState state : states)
+                        state.evolve();
+
+                // Deposits and erosion within them leave the bedrock where it was, and erosion past them lowers it
+                final float[] raised = { 0f, uplifted.getUplift() * uplifted.getTimeStep() * ticks };
+                float rise = Float.NEGATIVE_INFINITY;
+
+                for (int s = 0; s < states.length; ++s) {
+                    final Stratigraphy strata = states[s].getStrata().match(nothing -> null, kept -> kept);
+                    final ScalarField2D heights = states[s].getHeights();
+                    boolean laid = false;
+
+                    if (strata == null)
+                        return Float.MAX_VALUE;
+
+                    for (int j = 0; j < heights.getHeight(); ++j)
+                        for (int i = 0; i < heights.getWidth(); ++i) {
+                            final int cell   = heights.index(i, j);
+                            final int column = j * heights.getWidth() + i;
+
+                            rise = Math.max(rise, heights.getValues()[cell] - strata.getTotalThickness(column) - initial[cell] - raised[s]);
+                            laid |= strata.getLayerCount(column) > 0;
+                        }
+
+                    if (!laid)
+                        return Float.MAX_VALUE;
+                }
+
+                return rise;
+            });
+    }
+
+    private static boolean everyModelErodesDepositsAtTheirRate() {
+        return UnitTest.checkValue(
+            "Every erosion model and flow engine erodes deposits at their own erodibility",
+            wrong -> wrong == 0,
+            () -> {
+                // Model and flow engine ordinals, the flow engines only mattering to the flow model
+                final int[][] kernels = { { 0, 0 }, { 0, 1 }, { 0, 2 }, { 1, 1 }, { 2, 1 }, { 3, 1 }, { 4, 1 } };
+                int wrong = 0;
+
+                for (final int[] kernel : kernels) {
+                    final ErosionState plain   = eroded(kernel, 0, 1f);
+                    final ErosionState same    = eroded(kernel, 4, 1f);
+                    final ErosionState resists = eroded(kernel, 4, 0f);
+
+                    if (maxDifference(plain.getHeights(), same.getHeights()) != 0f
+                        || maxDifference(plain.getHeights(), resists.getHeights()) == 0f)
+                        ++wrong;
+                }
+
+                return wrong;
+            });
+    }
+
+    private static ErosionState eroded(final int[] kernel, final int strataDepth, final float depositErodibility) {
+        final ErosionParameters parameters = parameters("Erosion Model", kernel[0]);
+        TestParameters.setParameter(parameters.getParameterTree(), "Flow Engine", kernel[1]);
+        TestParameters.setParameter(parameters.getParameterTree(), "Width", 64);
+        TestParameters.setParameter(parameters.getParameterTree(), "Height", 48);
+        // About as many droplets per cell as the default grid gets
+        TestParameters.setParameter(parameters.getParameterTree(), "Droplets", 2000);
+        TestParameters.setParameter(parameters.getParameterTree(), "Strata Depth", strataDepth);
+        TestParameters.setParameter(parameters.getParameterTree(), "Deposit Erodibility", depositErodibility);
+
+        final ErosionState state = terrain(parameters);
+
+        for (int t = 0; t < 10; ++t)
+            state.evolve();
+
+        return state;
+    }
+
+    private static double totalWater(final ErosionState state) {
+        double total = 0.0;
+
+        for (int j = 0; j < state.getWater().getHeight(); ++j)
+            for (int i = 0; i < state.getWater().getWidth(); ++i)
+                total += state.getWater().get(i, j);
+
+        return total;
+    }
+
+    private static double totalMass(final ErosionState state) {
+        double total = 0.0;
+
+        for (int j = 0; j < state.getHeights().getHeight(); ++j)
+            for (int i = 0; i < state.getHeights().getWidth(); ++i)
+                total += state.getHeights().get(i, j) + state.getSediment().get(i, j);
+
+        return total;
+    }
+
+    private static ErosionState terrain() {
+        return terrain(new ErosionParameters());
+    }
+
+    private static ErosionState terrain(final ErosionParameters parameters) {
+        return ErosionState.fromHeightFunction(
+            parameters,
+            row -> col -> 10f + (float) (Math.sin(col * 0.05) * Math.cos(row * 0.07) + 0.3 * Math.sin(col * row * 0.001)));
+    }
+
+    private static <T> ErosionParameters parameters(final String name, final T value) {
+        final ErosionParameters parameters = new ErosionParameters();
+        TestParameters.setParameter(parameters.getParameterTree(), name, value);
+        return parameters;
+    }
+
+    private static double total(final ScalarField2D field) {
+        double total = 0.0;
+
+        for (int j = 0; j < field.getHeight(); ++j)
+            for (int i = 0; i < field.getWidth(); ++i)
+                total += field.get(i, j);
+
+        return total;
+    }
+
+    private static float minimum(final ScalarField2D field) {
+        float minimum = Float.POSITIVE_INFINITY;
+
+        for (int j = 0; j < field.getHeight(); ++j)
+            for (int i = 0; i < field.getWidth(); ++i)
+                minimum = Math.min(minimum, field.get(i, j));
+
+        return minimum;
+    }
+
+    private static float maximum(final ScalarField2D field) {
+        float maximum = Float.NEGATIVE_INFINITY;
+
+        for (int j = 0; j < field.getHeight(); ++j)
+            for (int i = 0; i < field.getWidth(); ++i)
+                maximum = Math.max(maximum, field.get(i, j));
+
+        return maximum;
+    }
+
+    private static double meanDifference(final ScalarField2D a, final ScalarField2D b) {
+        double total = 0.0;
+
+        for (int j = 0; j < a.getHeight(); ++j)
+            for (int i = 0; i < a.getWidth(); ++i)
+                total += Math.abs(a.get(i, j) - b.get(i, j));
+
+        return total / ((double) a.getWidth() * a.getHeight());
+    }
+
+    private static float maxDifference(final ScalarField2D a, final ScalarField2D b) {
+        float max = 0f;
+
+        for (int j = 0; j < a.getHeight(); ++j)
+            for (int i = 0; i < a.getWidth(); ++i)
+                max = Math.max(max, Math.abs(a.get(i, j) - b.get(i, j)));
+
+        return max;
+    }
+}
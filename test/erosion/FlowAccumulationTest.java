@@ -0,0 +1,72 @@
+package test.erosion;
+
+import java.util.Arrays;
+
+import erosion.FlowAccumulation;
+import util.concurrent.RowBandScheduler;
+import util.data.grids.ScalarField2D;
+import util.testing.UnitTest;
+
+public final class FlowAccumulationTest extends UnitTest {
+
+    private static final int SIZE = 64;
+
+    private FlowAccumulationTest() {
+        super("Flow Accumulation Test");
+    }
+
+    public static void main(final String[] args) {
+        final FlowAccumulationTest unitTest = new FlowAccumulationTest();
+
+        unitTest.addTest(FlowAccumulationTest::coneDrainsToCentre);
+        unitTest.addTest(FlowAccumulationTest::incrementalMatchesFull);
+
+        unitTest.runTests();
+    }
+
+    private static boolean coneDrainsToCentre() {
+        return UnitTest.expectValue(
+            "Every cell of a cone drains through its lowest point",
+            SIZE * SIZE,
+            () -> {
+                final ScalarField2D heights = new ScalarField2D(SIZE, SIZE, 1);
+
+                for (int j = 0; j < SIZE; ++j)
+                    for (int i = 0; i < SIZE; ++i)
+                        heights.set(i, j, (float) Math.hypot(i - SIZE / 2, j - SIZE / 2));
+
+                final FlowAccumulation drainage = new FlowAccumulation(SIZE, SIZE, 1, new RowBandScheduler(1));
+                drainage.compute(heights);
+
+                return drainage.getAreas()[heights.index(SIZE / 2, SIZE / 2)];
+            });
+    }
+
+    private static boolean incrementalMatchesFull() {
+        return UnitTest.expectValue(
+            "Moving areas after a small change matches recomputing them",
+            true,
+            () -> {
+                final ScalarField2D heights = new ScalarField2D(SIZE, SIZE, 1);
+
+                for (int j = 0; j < SIZE; ++j)
+                    for (int i = 0; i < SIZE; ++i)
+                        heights.set(i, j, (float) (Math.sin(i * 0.3) * Math.cos(j * 0.2) + 0.01 * i));
+
+                final FlowAccumulation incremental = new FlowAccumulation(SIZE, SIZE, 1, new RowBandScheduler(2));
+                final FlowAccumulation full        = new FlowAccumulation(SIZE, SIZE, 1, new RowBandScheduler(1));
+
+                incremental.compute(heights);
+
+                for (int k = 0; k < 3; ++k)
+                    heights.set(10 + 17 * k, 20 + 11 * k, -2f + k);
+
+                incremental.update(heights);
+                full.compute(heights);
+
+                return incremental.wasIncremental()
+                    && Arrays.equals(incremental.getReceivers(), full.getReceivers())
+                    && Arrays.equals(incremental.getAreas(), full.getAreas());
+            });
+    }
+}
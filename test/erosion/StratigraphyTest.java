@@ -0,0 +1,86 @@
+package test.erosion;
+
+import erosion.Stratigraphy;
+import util.testing.UnitTest;
+
+public final class StratigraphyTest extends UnitTest {
+
+    private static final int DEPTH = 4;
+    private static final int EPOCH = 10;
+
+    private StratigraphyTest() {
+        super("Stratigraphy Test");
+    }
+
+    public static void main(final String[] args) {
+        final StratigraphyTest unitTest = new StratigraphyTest();
+
+        unitTest.addTest(StratigraphyTest::epochJoinsDeposits);
+        unitTest.addTest(StratigraphyTest::overflowKeepsOrder);
+        unitTest.addTest(StratigraphyTest::erosionReachesBedrock);
+
+        unitTest.runTests();
+    }
+
+    private static boolean epochJoinsDeposits() {
+        return UnitTest.expectValue(
+            "Deposits of one epoch join a single layer and the next epoch starts another",
+            2,
+            () -> {
+                final Stratigraphy strata = strata();
+
+                strata.deposit(0, 1f, Stratigraphy.DEPOSIT, 3);
+                strata.deposit(0, 1f, Stratigraphy.DEPOSIT, 9);
+                strata.deposit(0, 1f, Stratigraphy.DEPOSIT, 10);
+
+                return strata.getThickness(0, 1) == 2f ? strata.getLayerCount(0) : -1;
+            });
+    }
+
+    private static boolean overflowKeepsOrder() {
+        return UnitTest.expectValue(
+            "Layers pushed out of a full column come back in order as it is eroded",
+            true,
+            () -> {
+                final Stratigraphy strata = strata();
+                final int layers = 3 * DEPTH;
+
+                for (int age = 0; age < layers; ++age)
+                    strata.deposit(1, 1f + age, Stratigraphy.DEPOSIT, age * EPOCH);
+
+                if (strata.getLayerCount(1) != layers || strata.getAge(1, layers - 1) != 0)
+                    return false;
+
+                for (int age = layers - 1; age >= 0; --age) {
+                    if (strata.getAge(1, 0) != age * EPOCH)
+                        return false;
+
+                    strata.erode(1, 1f + age);
+                }
+
+                return strata.getLayerCount(1) == 0 && strata.getLayerCount(0) == 0;
+            });
+    }
+
+    private static boolean erosionReachesBedrock() {
+        return UnitTest.expectValue(
+            "Eroding past every layer exposes the bedrock and its erodibility",
+            1f,
+            () -> {
+                final Stratigraphy strata = strata();
+
+                strata.deposit(2, 0.5f, Stratigraphy.DEPOSIT, 0);
+
+                if (strata.getErodibility(2) != 3f)
+                    return -1f;
+
+                strata.erode(2, 2f);
+
+                return strata.getType(2, 0) == Stratigraphy.BEDROCK ? strata.getErodibility(2) : -1f;
+            });
+    }
+
+    private static Stratigraphy strata() {
+        return new Stratigraphy(4, DEPTH, EPOCH, new float[] { 1f, 3f });
+    }
+}
@@ -0,0 +1,102 @@
+package test.fluids.fluid2d;
+
+import java.util.Random;
+
+import fluids.fluid2d.ConjugateGradient;
+import util.testing.UnitTest;
+
+public final class ConjugateGradientTest extends UnitTest {
+
+    private static final int   WIDTH     = 61;
+    private static final int   HEIGHT    = 45;
+    private static final float TOLERANCE = 1e-4f;
+
+    private ConjugateGradientTest() {
+        super("Conjugate Gradient Test");
+    }
+
+    public static void main(final String[] args) {
+        final ConjugateGradientTest unitTest = new ConjugateGradientTest();
+
+        unitTest.addTest(ConjugateGradientTest::pressureReachesTolerance);
+        unitTest.addTest(ConjugateGradientTest::negatedBoundaryReachesTolerance);
+        unitTest.addTest(ConjugateGradientTest::stopsAtIterationCap);
+
+        unitTest.runTests();
+    }
+
+    private static boolean pressureReachesTolerance() {
+        return UnitTest.expectValue(
+            "Solving for the pressure brings the residual below the tolerance",
+            true,
+            () -> {
+                final ConjugateGradient solver = solve(4f, 1f, 0, 1000);
+
+                return solver.getResidual() <= TOLERANCE && residual(solver, 4f, 1f, 0) <= 2 * TOLERANCE;
+            });
+    }
+
+    private static boolean negatedBoundaryReachesTolerance() {
+        return UnitTest.expectValue(
+            "Diffusing a velocity component negated across the walls brings the residual below the tolerance",
+            true,
+            () -> {
+                final ConjugateGradient solver = solve(1f + 4f * 3f, 3f, 1, 1000);
+
+                return solver.getResidual() <= TOLERANCE && residual(solver, 1f + 4f * 3f, 3f, 1) <= 2 * TOLERANCE;
+            });
+    }
+
+    private static boolean stopsAtIterationCap() {
+        return UnitTest.expectValue(
+            "A solve runs no more iterations than it is allowed",
+            3,
+            () -> solve(4f, 1f, 0, 3).getIterations());
+    }
+
+    private static ConjugateGradient solve(final float centre, final float neighbour, final int boundary, final int maxIterations) {
+        final ConjugateGradient solver = new ConjugateGradient(WIDTH, HEIGHT);
+        final float[]           rhs    = solver.getRightHandSide();
+        final Random            random = new Random(11);
+
+        for (int j = 1; j < HEIGHT - 1; ++j)
+            for (int i = 1; i < WIDTH - 1; ++i)
+                rhs[j * WIDTH + i] = (float) random.nextGaussian();
+
+        solver.solve(centre, neighbour, boundary, TOLERANCE, maxIterations);
+
+        return solver;
+    }
+
+    /**
+     * Recomputes the relative residual independently, mirroring the solution across the boundary.
+     */
+    private static double residual(final ConjugateGradient solver, final float centre, final float neighbour, final int boundary) {
+        final float[] f = solver.getRightHandSide();
+        final float[] u = solver.getSolution().clone();
+
+        for (int j = 1; j < HEIGHT - 1; ++j) {
+            u[j * WIDTH]           = (boundary == 1 ? -1f : 1f) * u[j * WIDTH + 1];
+            u[(j + 1) * WIDTH - 1] = (boundary == 1 ? -1f : 1f) * u[(j + 1) * WIDTH - 2];
+        }
+
+        for (int i = 1; i < WIDTH - 1; ++i) {
+            u[i]                        = (boundary == 2 ? -1f : 1f) * u[WIDTH + i];
+            u[(HEIGHT - 1) * WIDTH + i] = (boundary == 2 ? -1f : 1f) * u[(HEIGHT - 2) * WIDTH + i];
+        }
+
+        double squares = 0.0;
+        double norm    = 0.0;
+
+        for (int j = 1; j < HEIGHT - 1; ++j)
+            for (int i = 1; i < WIDTH - 1; ++i) {
+                final int    c = j * WIDTH + i;
+                final double r = f[c] - (centre * u[c] - neighbour * (u[c - 1] + u[c + 1] + u[c - WIDTH] + u[c + WIDTH]));
+
+                squares += r * r;
+                norm    += (double) f[c] * f[c];
+            }
+
+        return Math.sqrt(squares / norm);
+    }
+}
@@ -0,0 +1,157 @@
+package test.fluids.fluid2d;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import fluids.fluid2d.Fluid2DParameters;
+import fluids.fluid2d.Fluid2DState;
+import util.testing.TestParameters;
+import util.testing.UnitTest;
+
+public final class Fluid2DStateTest extends UnitTest {
+
+    // Wide enough to hold the inflow, which is forced between the columns 200 and 300
+    private static final int WIDTH  = 320;
+    private static final int HEIGHT = 64;
+
+    private Fluid2DStateTest() {
+        super("Fluid 2D State Test");
+    }
+
+    public static void main(final String[] args) {
+        final Fluid2DStateTest unitTest = new Fluid2DStateTest();
+
+        unitTest.addTest(Fluid2DStateTest::redBlackIndependentOfThreads);
+        unitTest.addTest(Fluid2DStateTest::publishedFrameOutlivesNextStep);
+        unitTest.addTest(Fluid2DStateTest::stepsAllocateNothing);
+        unitTest.addTest(Fluid2DStateTest::multigridReportsResidual);
+        unitTest.addTest(Fluid2DStateTest::conjugateGradientReportsResidual);
+
+        unitTest.runTests();
+    }
+
+    private static boolean redBlackIndependentOfThreads() {
+        return UnitTest.expectValue(
+            "Red-black sweeps give the same fluid on one thread as on three",
+            true,
+            () -> {
+                final Fluid2DState serial   = evolved(redBlack(1));
+                final Fluid2DState parallel = evolved(redBlack(3));
+
+                return Arrays.deepEquals(serial.getDensity(), parallel.getDensity())
+                    && Arrays.deepEquals(serial.getVelocity().first(), parallel.getVelocity().first())
+                    && Arrays.deepEquals(serial.getVelocity().second(), parallel.getVelocity().second());
+            });
+    }
+
+    private static boolean publishedFrameOutlivesNextStep() {
+        return UnitTest.expectValue(
+            "The density handed to the renderer is left untouched by the next step",
+            true,
+            () -> {
+                final Fluid2DState state = evolved(new Fluid2DParameters());
+
+                final float[][] shown  = state.getDensity();
+                final float[][] before = Arrays.stream(shown).map(float[]::clone).toArray(float[][]::new);
+
+                state.evolve();
+
+                return Arrays.deepEquals(shown, before) && !Arrays.deepEquals(state.getDensity(), before);
+            });
+    }
+
+    private static boolean stepsAllocateNothing() {
+        return UnitTest.expectValue(
+            "Once warmed up, steps allocate nothing with any solver on one thread",
+            0L,
+            () -> {
+                final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                final long thread = Thread.currentThread().getId();
+
+                long allocated = 0L;
+
+                for (int solvers = 0; solvers < 4; ++solvers) {
+                    final Fluid2DParameters parameters = new Fluid2DParameters();
+
+                    TestParameters.setParameter(parameters.getParameterTree(), "Pressure Solver", solvers);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Diffusion Solver", Math.min(solvers, 2));
+                    TestParameters.setParameter(parameters.getParameterTree(), "Viscosity", 0.01f);
+                    TestParameters.setParameter(parameters.getParameterTree(), "Threads", 1);
+
+                    // The first steps create the solvers
+                    final Fluid2DState state = evolved(parameters);
+
+                    final long before = threads.getThreadAllocatedBytes(thread);
+
+                    for (int k = 0; k < 3; ++k)
+                        state.evolve();
+
+                    allocated += threads.getThreadAllocatedBytes(thread) - before;
+                }
+
+                return allocated;
+            });
+    }
+
+    private static Fluid2DParameters redBlack(final int threads) {
+        final Fluid2DParameters parameters = new Fluid2DParameters();
+
+        TestParameters.setParameter(parameters.getParameterTree(), "Pressure Solver", 3);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusion Solver", 2);
+        TestParameters.setParameter(parameters.getParameterTree(), "Viscosity", 0.01f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusion", 0.001f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Threads", threads);
+
+        return parameters;
+    }
+
+    private static boolean multigridReportsResidual() {
+        return UnitTest.expectValue(
+            "Multigrid pressure solves report the cycles they ran and a residual within the tolerance",
+            true,
+            () -> {
+                final Fluid2DState state = evolved(solvers(1, 1));
+
+                return state.getPressureIterations() > 0
+                    && Float.isFinite(state.getPressureResidual())
+                    && state.getPressureResidual() <= new Fluid2DParameters().getPressureTolerance();
+            });
+    }
+
+    private static boolean conjugateGradientReportsResidual() {
+        return UnitTest.expectValue(
+            "Conjugate gradient solves report the iterations they ran and a residual within the tolerance",
+            true,
+            () -> {
+                final Fluid2DParameters defaults = new Fluid2DParameters();
+                final Fluid2DState      state    = evolved(solvers(2, 1));
+
+                return state.getPressureIterations() > 0
+                    && Float.isFinite(state.getPressureResidual())
+                    && state.getPressureResidual() <= defaults.getPressureTolerance()
+                    && state.getDiffusionIterations() > 0
+                    && Float.isFinite(state.getDiffusionResidual())
+                    && state.getDiffusionResidual() <= defaults.getDiffusionTolerance();
+            });
+    }
+
+    private static Fluid2DParameters solvers(final int pressure, final int diffusion) {
+        final Fluid2DParameters parameters = new Fluid2DParameters();
+
+        TestParameters.setParameter(parameters.getParameterTree(), "Pressure Solver", pressure);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusion Solver", diffusion);
+        TestParameters.setParameter(parameters.getParameterTree(), "Viscosity", 0.01f);
+        TestParameters.setParameter(parameters.getParameterTree(), "Diffusion", 0.001f);
+
+        return parameters;
+    }
+
+    private static Fluid2DState evolved(final Fluid2DParameters parameters) {
+        final Fluid2DState state = new Fluid2DState(WIDTH, HEIGHT, parameters);
+
+        for (int k = 0; k < 5; ++k)
+            state.evolve();
+
+        return state;
+    }
+}
@@ -0,0 +1,106 @@
+package test.fluids.fluid2d;
+
+import java.util.Random;
+
+import fluids.fluid2d.Multigrid;
+import util.testing.UnitTest;
+
+public final class MultigridTest extends UnitTest {
+
+    private static final float TOLERANCE = 1e-4f;
+
+    // Near one-dimensional grids lose more to rounding, so they are held to the fluid's default
+    private static final float ELONGATED_TOLERANCE = 1e-3f;
+
+    private MultigridTest() {
+        super("Multigrid Test");
+    }
+
+    public static void main(final String[] args) {
+        final MultigridTest unitTest = new MultigridTest();
+
+        unitTest.addTest(MultigridTest::reachesTolerance);
+        unitTest.addTest(MultigridTest::cyclesIndependentOfSize);
+        unitTest.addTest(MultigridTest::cyclesIndependentOfShape);
+
+        unitTest.runTests();
+    }
+
+    private static boolean reachesTolerance() {
+        return UnitTest.expectValue(
+            "A solve on an uneven grid brings the residual below the tolerance",
+            true,
+            () -> {
+                final Multigrid multigrid = solve(67, 42);
+
+                return multigrid.getResidual() <= TOLERANCE && residual(multigrid, 67, 42) <= 2 * TOLERANCE;
+            });
+    }
+
+    private static boolean cyclesIndependentOfSize() {
+        return UnitTest.expectValue(
+            "A grid sixty-four times larger takes at most one more cycle",
+            true,
+            () -> solve(258, 258).getCycles() <= solve(34, 34).getCycles() + 1);
+    }
+
+    private static boolean cyclesIndependentOfShape() {
+        return UnitTest.expectValue(
+            "Elongated and odd grids take at most one more cycle than a square one",
+            true,
+            () -> {
+                final int square = solve(258, 258, ELONGATED_TOLERANCE).getCycles();
+
+                final int[][] sizes = { { 1026, 18 }, { 18, 1026 }, { 1027, 19 }, { 501, 501 }, { 500, 500 }, { 1000, 4 }, { 130, 7 } };
+
+                for (final int[] size : sizes) {
+                    final Multigrid multigrid = solve(size[0], size[1], ELONGATED_TOLERANCE);
+
+                    if (multigrid.getCycles() > square + 1 || residual(multigrid, size[0], size[1]) > 2 * ELONGATED_TOLERANCE)
+                        return false;
+                }
+
+                return true;
+            });
+    }
+
+    private static Multigrid solve(final int width, final int height) {
+        return solve(width, height, TOLERANCE);
+    }
+
+    private static Multigrid solve(final int width, final int height, final float tolerance) {
+        final Multigrid multigrid = new Multigrid(width, height);
+        final float[]   rhs       = multigrid.getRightHandSide();
+        final Random    random    = new Random(7);
+
+        for (int j = 1; j < height - 1; ++j)
+            for (int i = 1; i < width - 1; ++i)
+                rhs[j * width + i] = (float) random.nextGaussian();
+
+        multigrid.solve(tolerance, 50);
+
+        return multigrid;
+    }
+
+    /**
+     * Recomputes the relative residual independently, against the right-hand side less its mean.
+     */
+    private static double residual(final Multigrid multigrid, final int width, final int height) {
+        final float[] f = multigrid.getRightHandSide();
+        final float[] u = multigrid.getSolution();
+
+        double squares = 0.0;
+        double norm    = 0.0;
+
+        for (int j = 1; j < height - 1; ++j)
+            for (int i = 1; i < width - 1; ++i) {
+                final int    c = j * width + i;
+                final double r = f[c] - (4.0 * u[c] - u[c - 1] - u[c + 1] - u[c - width] - u[c + width]);
+
+                squares += r * r;
+                norm    += (double) f[c] * f[c];
+            }
+
+        return Math.sqrt(squares / norm);
+    }
+}
@@ -0,0 +1,89 @@
+package test.util.data.grids;
+
+import java.util.Random;
+
+import util.data.grids.HalfField2D;
+import util.data.grids.HalfFloat;
+import util.data.grids.ScalarField2D;
+import util.testing.UnitTest;
+
+public final class HalfFloatTest extends UnitTest {
+
+    private HalfFloatTest() {
+        super("Half Float Test");
+    }
+
+    public static void main(final String[] args) {
+        final HalfFloatTest unitTest = new HalfFloatTest();
+
+        unitTest.addTest(HalfFloatTest::everyHalfRoundTrips);
+        unitTest.addTest(HalfFloatTest::floatsRoundToNearest);
+        unitTest.addTest(HalfFloatTest::fieldRoundTrips);
+
+        unitTest.runTests();
+    }
+
+    private static boolean everyHalfRoundTrips() {
+        return UnitTest.expectValue(
+            "Every half other than NaN converts to a float and back unchanged",
+            true,
+            () -> {
+                for (int bits = 0; bits <= 0xFFFF; ++bits) {
+                    final short half  = (short) bits;
+                    final float value = HalfFloat.toFloat(half);
+
+                    if (Float.isNaN(value) ? (bits & 0x7C00) != 0x7C00 : HalfFloat.toHalf(value) != half)
+                        return false;
+                }
+
+                return true;
+            });
+    }
+
+    private static boolean floatsRoundToNearest() {
+        return UnitTest.expectValue(
+            "Floats round to the nearer of the halves on either side of them",
+            true,
+            () -> {
+                final Random random = new Random(7);
+
+                for (int n = 0; n < 100000; ++n) {
+                    final float value   = (float) ((random.nextDouble() - 0.5) * Math.pow(2.0, random.nextInt(40) - 25));
+                    final float rounded = HalfFloat.round(value);
+                    final float below   = HalfFloat.toFloat((short) (HalfFloat.toHalf(rounded) - 1));
+                    final float above   = HalfFloat.toFloat((short) (HalfFloat.toHalf(rounded) + 1));
+
+                    if (Math.abs(value - rounded) > Math.abs(value - below) || Math.abs(value - rounded) > Math.abs(value - above))
+                        return false;
+                }
+
+                return true;
+            });
+    }
+
+    private static boolean fieldRoundTrips() {
+        return UnitTest.expectValue(
+            "A field stored in half precision loads back rounded to half precision",
+            true,
+            () -> {
+                final ScalarField2D field = new ScalarField2D(5, 4, 1);
+                final HalfField2D   half  = new HalfField2D(5, 4, 1);
+
+                for (int j = 0; j < 4; ++j)
+                    for (int i = 0; i < 5; ++i)
+                        field.set(i, j, 0.1f * i - 0.37f * j);
+
+                half.store(field);
+
+                final ScalarField2D loaded = new ScalarField2D(5, 4, 1);
+                half.load(loaded);
+
+                for (int j = 0; j < 4; ++j)
+                    for (int i = 0; i < 5; ++i)
+                        if (loaded.get(i, j) != HalfFloat.round(field.get(i, j)) || half.get(i, j) != loaded.get(i, j))
+                            return false;
+
+                return true;
+            });
+    }
+}
@@ -0,0 +1,79 @@
+package test.util.math;
+
+import util.math.CounterRandom;
+import util.testing.UnitTest;
+
+public final class CounterRandomTest extends UnitTest {
+
+    private static final int SAMPLES = 100000;
+
+    private CounterRandomTest() {
+        super("Counter Random Test");
+    }
+
+    public static void main(final String[] args) {
+        final CounterRandomTest unitTest = new CounterRandomTest();
+
+        unitTest.addTest(CounterRandomTest::reproducible);
+        unitTest.addTest(CounterRandomTest::seedsDiffer);
+        unitTest.addTest(CounterRandomTest::unitInterval);
+        unitTest.addTest(CounterRandomTest::uniformMean);
+        unitTest.addTest(CounterRandomTest::splitDiffers);
+
+        unitTest.runTests();
+    }
+
+    private static boolean reproducible() {
+        return UnitTest.expectValue(
+            "Same seed, stream and counter give the same value",
+            new CounterRandom(42).uniform(7, 1234),
+            () -> new CounterRandom(42).uniform(7, 1234));
+    }
+
+    private static boolean seedsDiffer() {
+        return UnitTest.checkValue(
+            "Different seeds give different values",
+            v -> v != new CounterRandom(42).uniform(7, 1234),
+            () -> new CounterRandom(43).uniform(7, 1234));
+    }
+
+    private static boolean unitInterval() {
+        return UnitTest.expectValue(
+            "Uniform values lie in [0, 1)",
+            true,
+            () -> {
+                final CounterRandom random = new CounterRandom(1);
+
+                for (int k = 0; k < SAMPLES; ++k) {
+                    final float value = random.uniform(k % 13, k);
+
+                    if (value < 0f || value >= 1f)
+                        return false;
+                }
+
+                return true;
+            });
+    }
+
+    private static boolean uniformMean() {
+        return UnitTest.checkValue(
+            "Uniform values average to one half",
+            mean -> Math.abs(mean - 0.5) < 0.01,
+            () -> {
+                final CounterRandom random = new CounterRandom(2);
+                double sum = 0.0;
+
+                for (int k = 0; k < SAMPLES; ++k)
+                    sum += random.uniform(3, k);
+
+                return sum / SAMPLES;
+            });
+    }
+
+    private static boolean splitDiffers() {
+        return UnitTest.checkValue(
+            "Split generators differ from their parent",
+            v -> v != new CounterRandom(5).uniform(0, 0),
+            () -> new CounterRandom(5).split(1).uniform(0, 0));
+    }
+}